@@ -0,0 +1,154 @@
+package com.team.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * 基准测试用的数据：like 模式的形状，以及按 DatabaseImpl.load 要求的目录结构生成的小型数据集。
+ *
+ * 数据集（固定种子，结果可重复）：
+ *  table0：无分区表；
+ *  table1：${depth} 级分区表，分区键 p0..p{depth-1}，每级 ${fanOut} 个值 "00".."{fanOut-1}"；
+ * 两张表的行数相同，每行 10 列：
+ *  column0  6 位数字，[0, 1000000) 均匀分布，用于控制比较条件的选择率；
+ *  column1  4 位年份 + "-" + 2 位月份；
+ *  column2  年份 + 随机单词，用于 like 条件；
+ *  其余列   随机单词。
+ */
+public final class BenchData {
+
+    /* ====================================== Fields ====================================== */
+
+    static final String[] WORDS = {
+            "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel",
+            "india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa"
+    };
+
+    /**
+     * like 模式的形状
+     */
+    public enum PatternShape {
+        PREFIX {
+            @Override
+            String pattern(String token) {
+                return token + "%";
+            }
+        },
+        SUFFIX {
+            @Override
+            String pattern(String token) {
+                return "%" + token;
+            }
+        },
+        CONTAINS {
+            @Override
+            String pattern(String token) {
+                return "%" + token + "%";
+            }
+        },
+        GENERAL {
+            @Override
+            String pattern(String token) {
+                return "%" + token.charAt(0) + "_" + token.substring(Math.min(2, token.length())) + "%";
+            }
+        };
+
+        abstract String pattern(String token);
+    }
+
+    private BenchData() {
+    }
+
+    /* ====================================== Package ====================================== */
+
+    /**
+     * 使比较条件 "column0 > value" 的选择率约为 ${selectivity} 的比较值。
+     */
+    static
+    String compareValueFor(double selectivity) {
+        return String.format("%06d", (int) Math.round(1_000_000 * (1 - selectivity)));
+    }
+
+    /**
+     * 生成数据集。
+     *
+     * @param rows 每张表的总行数，平均分布到各个最终分区
+     */
+    static
+    File createDatabase(int depth, int fanOut, int rows, long seed) throws IOException {
+        File dbDir = Files.createTempDirectory("bench-db").toFile();
+        Random random = new Random(seed);
+        writeRows(new File(dbDir, "table0/part-0"), rows, random);
+
+        int leaves = (int) Math.pow(fanOut, depth);
+        for (int leaf = 0; leaf < leaves; leaf++) {
+            StringBuilder path = new StringBuilder("table1");
+            for (int level = 0, rest = leaf; level < depth; level++, rest /= fanOut) {
+                path.append("/p").append(level).append('=').append(String.format("%02d", rest % fanOut));
+            }
+            writeRows(new File(dbDir, path.append("/part-0").toString()), Math.max(1, rows / leaves), random);
+        }
+        return dbDir;
+    }
+
+    /**
+     * 生成一个 ${rows} 行的临时数据文件，行格式与数据集相同。
+     */
+    static
+    File createFile(int rows, long seed) throws IOException {
+        File file = Files.createTempFile("bench-rows", ".txt").toFile();
+        writeRows(file, rows, new Random(seed));
+        return file;
+    }
+
+    /**
+     * 递归删除目录。
+     */
+    static
+    void delete(File dir) throws IOException {
+        if(dir == null || !dir.exists()) {
+            return;
+        }
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private static
+    void writeRows(File file, int rows, Random random) throws IOException {
+        if(!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Can't create directory: " + file.getParentFile());
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder line = new StringBuilder(128);
+            for (int r = 0; r < rows; r++) {
+                int year = 2000 + random.nextInt(20);
+                line.setLength(0);
+                line.append(String.format("%06d", random.nextInt(1_000_000)))
+                        .append('|').append(year).append('-').append(String.format("%02d", 1 + random.nextInt(12)))
+                        .append('|').append(year).append(WORDS[random.nextInt(WORDS.length)]);
+                for (int c = 3; c < 10; c++) {
+                    line.append('|').append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                writer.write(line.append('\n').toString());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.team.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口：接受所有 JMH 命令行参数，并总是启用 GC 分析器，输出每次操作的分配字节数和 GC 次数。
+ *
+ * Eg.
+ *  java -jar target/benchmarks.jar                       运行所有基准
+ *  java -jar target/benchmarks.jar LikeBenchmark -p shape=PREFIX
+ */
+public class BenchmarkRunner {
+
+    public static
+    void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if(commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+        if(commandLineOptions.shouldList()) {
+            new Runner(commandLineOptions).list();
+            return;
+        }
+        Options options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
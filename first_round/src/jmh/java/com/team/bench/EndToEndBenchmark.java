@@ -0,0 +1,126 @@
+package com.team.bench;
+
+import com.team.db.Database;
+import com.team.db.DatabaseConfig;
+import com.team.db.impl.DatabaseImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端：加载生成的数据集并执行一批查询。
+ *  - loadAndQuery：每次操作重新加载数据库（包括列式转换后的段复用）再执行整批查询；
+ *  - queryBatch：数据库只加载一次，每次操作执行整批查询（批量接口）；
+ *  - querySequential：同上，逐条调用 matchesCount。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final int QUERIES = 200;
+
+    @Param({"2"})
+    public int depth;
+
+    @Param({"200000"})
+    public int rows;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    @Param({"TEXT", "COLUMN"})
+    public TableScanBenchmark.Storage storage;
+
+    private File dbDir;
+
+    private File storeDir;
+
+    private DatabaseConfig config;
+
+    private Database database;
+
+    private List<String> params;
+
+    /* ====================================== Setup ====================================== */
+
+    @Setup
+    public void setup() throws IOException {
+        dbDir = BenchData.createDatabase(depth, 4, rows, 42);
+        config = new DatabaseConfig().setParallelism(parallelism);
+        if(storage == TableScanBenchmark.Storage.COLUMN) {
+            storeDir = Files.createTempDirectory("bench-store").toFile();
+            config.setStoreDir(storeDir);
+        }
+        database = DatabaseImpl.load(dbDir.getPath(), config);
+        params = queryBatch(new Random(7));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchData.delete(dbDir);
+        BenchData.delete(storeDir);
+    }
+
+    /* ====================================== Benchmarks ====================================== */
+
+    @Benchmark
+    public int[] loadAndQuery() {
+        return DatabaseImpl.load(dbDir.getPath(), config).matchesCounts(params);
+    }
+
+    @Benchmark
+    public int[] queryBatch() {
+        return database.matchesCounts(params);
+    }
+
+    @Benchmark
+    public int querySequential() {
+        int sum = 0;
+        for (String param : params) {
+            sum += database.matchesCount(param);
+        }
+        return sum;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 覆盖列/分区键各种组合的一批查询。
+     */
+    private
+    List<String> queryBatch(Random random) {
+        String[] compareTypes = {">", "<", "=", "!="};
+        String[] likeTypes = {"ANY_LIKE", "ALL_LIKE", "NONE_LIKE"};
+        List<String> batch = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            String table = "table" + random.nextInt(2);
+            boolean partitionCompare = table.equals("table1") && random.nextBoolean();
+            boolean partitionLike = table.equals("table1") && random.nextBoolean();
+            String cmp = partitionCompare
+                    ? "p" + random.nextInt(depth) + " " + compareTypes[random.nextInt(4)]
+                            + " '" + String.format("%02d", random.nextInt(4)) + "'"
+                    : "column0 " + compareTypes[random.nextInt(4)]
+                            + " '" + BenchData.compareValueFor(random.nextDouble()) + "'";
+            String like = partitionLike
+                    ? "p" + random.nextInt(depth) + " " + likeTypes[random.nextInt(3)]
+                            + " ['0" + random.nextInt(4) + "']"
+                    : "column2 " + likeTypes[random.nextInt(3)]
+                            + " ['" + (2000 + random.nextInt(20)) + "%','%" + BenchData.WORDS[random.nextInt(16)] + "']";
+            batch.add(table + " " + cmp + " " + like);
+        }
+        return batch;
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.team.bench;
+
+import com.team.db.QueryParam;
+import com.team.db.like.LikeMatcher;
+import com.team.util.StringUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * like 匹配：原始的正则实现（StringUtil.likeMatchesStringToRegex + anyLike/allLike/noneLike）
+ * 与 LikeMatcher 在不同模式形状、模式个数、值长度和命中率下的对比。
+ *
+ * 每次操作匹配 ${VALUES} 个值。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LikeBenchmark {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final int VALUES = 1024;
+
+    @Param({"PREFIX", "SUFFIX", "CONTAINS", "GENERAL"})
+    public BenchData.PatternShape shape;
+
+    @Param({"1", "4", "16"})
+    public int patternCount;
+
+    @Param({"16", "128"})
+    public int valueLength;
+
+    /**
+     * 包含某个模式片段的值所占的比例
+     */
+    @Param({"0.01", "0.5"})
+    public double selectivity;
+
+    private String[] likeParams;
+
+    private String[] values;
+
+    private Pattern[] patterns;
+
+    private LikeMatcher anyMatcher;
+
+    private LikeMatcher allMatcher;
+
+    private LikeMatcher noneMatcher;
+
+    /* ====================================== Setup ====================================== */
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        String[] tokens = new String[patternCount];
+        likeParams = new String[patternCount];
+        for (int i = 0; i < patternCount; i++) {
+            tokens[i] = randomString(random, 4);
+            likeParams[i] = shape.pattern(tokens[i]);
+        }
+
+        values = new String[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            String value = randomString(random, valueLength);
+            if(random.nextDouble() < selectivity) {
+                String token = tokens[random.nextInt(patternCount)];
+                int at = shape == BenchData.PatternShape.PREFIX ? 0
+                        : shape == BenchData.PatternShape.SUFFIX ? valueLength - token.length()
+                        : random.nextInt(valueLength - token.length() + 1);
+                value = value.substring(0, at) + token + value.substring(at + token.length());
+            }
+            values[i] = value;
+        }
+
+        patterns = new Pattern[patternCount];
+        for (int i = 0; i < patternCount; i++) {
+            patterns[i] = Pattern.compile(StringUtil.likeMatchesStringToRegex(likeParams[i]));
+        }
+        anyMatcher = LikeMatcher.compile(QueryParam.LikeType.anyLike, likeParams);
+        allMatcher = LikeMatcher.compile(QueryParam.LikeType.allLike, likeParams);
+        noneMatcher = LikeMatcher.compile(QueryParam.LikeType.noneLike, likeParams);
+    }
+
+    /* ====================================== Benchmarks ====================================== */
+
+    @Benchmark
+    public void likeToRegex(Blackhole blackhole) {
+        for (String likeParam : likeParams) {
+            blackhole.consume(Pattern.compile(StringUtil.likeMatchesStringToRegex(likeParam)));
+        }
+    }
+
+    @Benchmark
+    public int regexAnyLike() {
+        int matched = 0;
+        for (String value : values) {
+            if(StringUtil.anyLike(value, patterns)) {
+                ++matched;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int regexAllLike() {
+        int matched = 0;
+        for (String value : values) {
+            if(StringUtil.allLike(value, patterns)) {
+                ++matched;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int regexNoneLike() {
+        int matched = 0;
+        for (String value : values) {
+            if(StringUtil.noneLike(value, patterns)) {
+                ++matched;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int matcherAnyLike() {
+        return count(anyMatcher);
+    }
+
+    @Benchmark
+    public int matcherAllLike() {
+        return count(allMatcher);
+    }
+
+    @Benchmark
+    public int matcherNoneLike() {
+        return count(noneMatcher);
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private
+    int count(LikeMatcher matcher) {
+        int matched = 0;
+        for (String value : values) {
+            if(matcher.matches(value)) {
+                ++matched;
+            }
+        }
+        return matched;
+    }
+
+    private static
+    String randomString(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+}
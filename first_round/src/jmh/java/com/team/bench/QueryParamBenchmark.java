@@ -0,0 +1,47 @@
+package com.team.bench;
+
+import com.team.db.QueryParam;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询参数解析：QueryParam.valueOf（分词、去引号、编译 like 模式）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryParamBenchmark {
+
+    /**
+     * like 参数个数
+     */
+    @Param({"1", "4", "16"})
+    public int likeParamCount;
+
+    @Param({"PREFIX", "SUFFIX", "CONTAINS", "GENERAL"})
+    public BenchData.PatternShape shape;
+
+    private String param;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder("table0 column0 > '200000' column2 ANY_LIKE [");
+        for (int i = 0; i < likeParamCount; i++) {
+            if(i > 0) {
+                builder.append(',');
+            }
+            builder.append('\'').append(shape.pattern(String.valueOf(2000 + i))).append('\'');
+        }
+        param = builder.append(']').toString();
+    }
+
+    @Benchmark
+    public QueryParam valueOf() {
+        return QueryParam.valueOf(param);
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.team.bench;
+
+import com.team.db.DatabaseConfig;
+import com.team.db.QueryParam;
+import com.team.db.Table;
+import com.team.db.impl.DatabaseImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TableImpl.matchesCount 的各个分支：
+ *  - unpartitioned：无分区表，两个条件都在列上，逐行扫描；
+ *  - partitionedColumns：分区表，两个条件都在列上，遍历分区树后扫描所有最终分区；
+ *  - partitionedMixed：分区表，比较条件在列上、like 条件在分区键上，先裁剪分区再扫描；
+ *  - partitionedBoth：分区表，两个条件都在分区键上，不扫描数据，只累加分区行数。
+ *
+ * 结果缓存默认关闭，每次操作都真正执行查询。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableScanBenchmark {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final int FAN_OUT = 4;
+
+    public enum Storage {
+        /**
+         * 直接扫描文本文件
+         */
+        TEXT,
+        /**
+         * 加载时转换为列式段
+         */
+        COLUMN
+    }
+
+    @Param({"1", "2", "3"})
+    public int depth;
+
+    @Param({"100000"})
+    public int rows;
+
+    /**
+     * 列上比较条件的选择率
+     */
+    @Param({"0.01", "0.5"})
+    public double selectivity;
+
+    @Param({"TEXT", "COLUMN"})
+    public Storage storage;
+
+    private File dbDir;
+
+    private File storeDir;
+
+    private Table table0;
+
+    private Table table1;
+
+    private QueryParam unpartitioned;
+
+    private QueryParam partitionedColumns;
+
+    private QueryParam partitionedMixed;
+
+    private QueryParam partitionedBoth;
+
+    /* ====================================== Setup ====================================== */
+
+    @Setup
+    public void setup() throws IOException {
+        dbDir = BenchData.createDatabase(depth, FAN_OUT, rows, 42);
+        DatabaseConfig config = new DatabaseConfig();
+        if(storage == Storage.COLUMN) {
+            storeDir = Files.createTempDirectory("bench-store").toFile();
+            config.setStoreDir(storeDir);
+        }
+        DatabaseImpl database = (DatabaseImpl) DatabaseImpl.load(dbDir.getPath(), config);
+        table0 = database.getTables().get("table0");
+        table1 = database.getTables().get("table1");
+
+        String cmpValue = BenchData.compareValueFor(selectivity);
+        String lastKey = "p" + (depth - 1);
+        unpartitioned = QueryParam.valueOf(
+                "table0 column0 > '" + cmpValue + "' column2 ANY_LIKE ['2001%','2005%']");
+        partitionedColumns = QueryParam.valueOf(
+                "table1 column0 > '" + cmpValue + "' column2 ANY_LIKE ['2001%','2005%']");
+        partitionedMixed = QueryParam.valueOf(
+                "table1 column0 > '" + cmpValue + "' " + lastKey + " ANY_LIKE ['00','02']");
+        partitionedBoth = QueryParam.valueOf(
+                "table1 p0 > '00' " + lastKey + " NONE_LIKE ['01']");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchData.delete(dbDir);
+        BenchData.delete(storeDir);
+    }
+
+    /* ====================================== Benchmarks ====================================== */
+
+    @Benchmark
+    public int unpartitioned() {
+        return table0.matchesCount(unpartitioned);
+    }
+
+    @Benchmark
+    public int partitionedColumns() {
+        return table1.matchesCount(partitionedColumns);
+    }
+
+    @Benchmark
+    public int partitionedMixed() {
+        return table1.matchesCount(partitionedMixed);
+    }
+
+    @Benchmark
+    public int partitionedBoth() {
+        return table1.matchesCount(partitionedBoth);
+    }
+
+}
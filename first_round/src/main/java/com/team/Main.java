@@ -1,9 +1,13 @@
 package com.team;
 
 import com.team.db.Database;
+import com.team.db.DatabaseConfig;
 import com.team.db.impl.DatabaseImpl;
+import com.team.db.metrics.MetricsRegistry;
+import com.team.db.service.BatchRunner;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -21,6 +25,16 @@ public class Main {
     public static final boolean LOCAL = true;
 //    public static final boolean LOCAL = false;
 
+    /**
+     * 查询结果缓存的最大条目数
+     */
+    private static final int RESULT_CACHE_SIZE = 10_000;
+
+    /**
+     * 比较条件行号位图缓存的内存预算
+     */
+    private static final long PREDICATE_CACHE_BYTES = 256L << 20;
+
     public static void main(String[] args) throws IOException {
         if(LOCAL) {
             localTest();
@@ -32,34 +46,41 @@ public class Main {
     private static
     void localTest() throws IOException {
         String databaseDir = "/data/database";
+        String storeDir = "/data/store";
         String queryParamsFilePath = "/media/flyan/Office/学习/比赛/阿里云数据湖-元信息发现与分析/初赛/Project/params.txt";
         String answerFilePath = "/media/flyan/Office/学习/比赛/阿里云数据湖-元信息发现与分析/初赛/Project/out.txt";
 
         long startNs = System.nanoTime();
         Database db;
-        if( (db = DatabaseImpl.load(databaseDir)) == null ) {
+        if( (db = DatabaseImpl.load(databaseDir, new DatabaseConfig()
+                .setStoreDir(new File(storeDir))
+                .setCatalogFile(new File(storeDir, "catalog.bin"))
+                .setParallelism(Runtime.getRuntime().availableProcessors())
+                .setResultCacheSize(RESULT_CACHE_SIZE)
+                .setPredicateCacheBytes(PREDICATE_CACHE_BYTES)
+                .setMetricsEnabled(true))) == null ) {
             System.out.println("Database is null.");
             System.exit(-1);
         }
         System.out.println(db);
 
-        File answerFile = new File(answerFilePath);
-        if(!answerFile.exists()) {
-            answerFile.createNewFile();
-        }
-        BufferedWriter writer = new BufferedWriter(new FileWriter(answerFile));
-        BufferedReader reader = new BufferedReader(new FileReader(new File(queryParamsFilePath)));
+        /* 查询参数按 UTF-8 解码，与数据文件的字节比较一致。 */
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(queryParamsFilePath), StandardCharsets.UTF_8));
         List<String> params = reader.lines().collect(Collectors.toList());
         reader.close();
-        for (int i = 0; i < params.size() - 1; i++) {
-            writer.write(String.valueOf(db.matchesCount(params.get(i))));
-            writer.newLine();
-            writer.flush();
-        }
-        writer.write(String.valueOf(db.matchesCount(params.get(params.size() - 1))));
-        writer.flush();
-        writer.close();
+        /* 并行批量查询：按块并行执行，块内同表的查询共享扫描，答案按输入顺序边算边写。 */
+        BatchRunner.Report report = new BatchRunner(db).run(params, new File(answerFilePath));
+        System.out.println(report);
         System.out.println("Cost Time(ms): " + TimeUnit.NANOSECONDS.toMillis((System.nanoTime() - startNs)));
+
+        /* 查询指标：JSON 和 Prometheus 文本格式各一份，放在答案文件旁边。 */
+        MetricsRegistry metrics = ((DatabaseImpl) db).getMetrics();
+        metrics.writeJson(new File(answerFilePath + ".metrics.json"));
+        metrics.writePrometheus(new File(answerFilePath + ".prom"));
+        System.out.println(metrics);
+        /* 查询期间记录的文件行数写回目录快照 */
+        ((DatabaseImpl) db).close();
     }
 
     private static void onlineStart() throws IOException {
@@ -69,28 +90,21 @@ public class Main {
         String answerFilePath = workspaceDir.getParent() + File.separator + "out.txt";
 
         Database db;
-        if( (db = DatabaseImpl.load(databaseDir)) == null ) {
+        if( (db = DatabaseImpl.load(databaseDir, new DatabaseConfig()
+                .setParallelism(Runtime.getRuntime().availableProcessors())
+                .setResultCacheSize(RESULT_CACHE_SIZE)
+                .setPredicateCacheBytes(PREDICATE_CACHE_BYTES))) == null ) {
             System.out.println("Database is null.");
             System.exit(-1);
         }
 
-        File answerFile = new File(answerFilePath);
-        if(!answerFile.exists()) {
-            answerFile.createNewFile();
-        }
-        BufferedWriter writer = new BufferedWriter(new FileWriter(answerFile));
-        BufferedReader reader = new BufferedReader(new FileReader(new File(queryParamsFilePath)));
+        /* 查询参数按 UTF-8 解码，与数据文件的字节比较一致。 */
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(queryParamsFilePath), StandardCharsets.UTF_8));
         List<String> params = reader.lines().collect(Collectors.toList());
         reader.close();
-        StringBuilder ansBuilder = new StringBuilder(1024);
-        for (int i = 0; i < params.size() - 1; i++) {
-            ansBuilder.append(String.valueOf(db.matchesCount(params.get(i))))
-                    .append("\n");
-        }
-        ansBuilder.append(String.valueOf(db.matchesCount(params.get(params.size() - 1))));
-        writer.write(ansBuilder.toString());
-        writer.flush();
-        writer.close();
+        /* 并行批量查询：按块并行执行，块内同表的查询共享扫描，答案按输入顺序边算边写。 */
+        new BatchRunner(db).run(params, new File(answerFilePath));
     }
 
 }
@@ -0,0 +1,82 @@
+package com.team.db;
+
+import java.io.File;
+
+/**
+ * 一个数据文件：加载目录时（或从目录快照中）记录的大小和修改时间，查询时使用记录的值，不再访问文件系统。
+ *
+ * length() 和 lastModified() 仍是 File 的行为（访问文件系统），记录的值通过 recordedLength()
+ * 和 recordedModified() 取得，两者不同说明文件在加载之后被改写（见 isCurrent）。
+ */
+public class DataFile extends File {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long length;
+
+    private final long lastModified;
+
+    /**
+     * 文件的行数，-1 表示未知，首次统计后记录
+     */
+    private volatile long rowCount;
+
+    public DataFile(File file) {
+        this(file.getPath(), file.length(), file.lastModified(), -1);
+    }
+
+    public DataFile(String path, long length, long lastModified, long rowCount) {
+        super(path);
+        this.length = length;
+        this.lastModified = lastModified;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * 加载时记录的文件大小
+     */
+    public long recordedLength() {
+        return length;
+    }
+
+    /**
+     * 加载时记录的修改时间
+     */
+    public long recordedModified() {
+        return lastModified;
+    }
+
+    /**
+     * 文件的大小和修改时间是否仍与记录的相同（需要一次 stat）。
+     * 原地改写文件不改变所在目录的修改时间，只能这样发现。
+     */
+    public
+    boolean isCurrent() {
+        return lastModified() == lastModified && length() == length;
+    }
+
+    /**
+     * 文件的大小：数据文件取记录的值，不访问文件系统。
+     */
+    public static
+    long lengthOf(File file) {
+        return file instanceof DataFile ? ((DataFile) file).length : file.length();
+    }
+
+    /**
+     * 文件的修改时间：数据文件取记录的值，不访问文件系统。
+     */
+    public static
+    long modifiedOf(File file) {
+        return file instanceof DataFile ? ((DataFile) file).lastModified : file.lastModified();
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+}
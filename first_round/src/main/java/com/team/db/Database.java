@@ -4,8 +4,48 @@ import java.util.List;
 
 public interface Database {
 
+    /**
+     * 查询满足条件的所有行，结果全部物化在内存中。结果可能很大时使用 rows 或 query(param, limit, sink)。
+     */
     List<String> query(String param);
 
+    /**
+     * 流式查询：返回满足条件的行的迭代器，迭代时才逐个扫描单元，任意时刻只持有一个单元的扫描器和一行结果。
+     * 用完必须关闭，提前关闭即停止扫描。
+     *
+     * @param limit 最多返回的行数，小于 0 表示不限制，达到后立即停止扫描
+     */
+    RowIterator rows(String param, long limit);
+
+    /**
+     * 推送式的流式查询：满足条件的行依次交给 ${sink}，sink 返回 false 或达到 ${limit} 行时停止扫描。
+     *
+     * @param limit 最多交给 ${sink} 的行数，小于 0 表示不限制
+     * @return 交给 ${sink} 的行数
+     */
+    default long query(String param, long limit, RowSink sink) {
+        long count = 0;
+        try (RowIterator rows = rows(param, limit)) {
+            while (rows.hasNext()) {
+                ++count;
+                if(!sink.accept(rows.next())) {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
     int matchesCount(String param);
 
+    /**
+     * 只规划不执行：返回选择的执行路径、谓词顺序、裁剪的分区数以及估计的行数，用于诊断慢查询。
+     */
+    QueryPlan explain(String param);
+
+    /**
+     * 批量查询：相同的查询只计算一次，同一张表的查询共享一次扫描，结果与 ${params} 顺序一致。
+     */
+    int[] matchesCounts(List<String> params);
+
 }
@@ -0,0 +1,236 @@
+package com.team.db;
+
+import com.team.db.cache.ResultCache;
+
+import java.io.File;
+
+/**
+ * 数据库加载配置。
+ *
+ * 默认配置与原始行为一致：直接扫描文本数据文件。
+ */
+public class DatabaseConfig {
+
+    /**
+     * 列式存储目录，为 null 表示不进行列式转换，直接扫描文本文件。
+     */
+    private File storeDir;
+
+    /**
+     * 列式段驻留内存的预算（字节），0 表示不限制：所有段以内存映射方式打开，由页缓存管理。
+     * 大于 0 时段按分区在首次访问时读入堆外内存，超出预算时淘汰最久未访问的分区。
+     */
+    private long storeMemoryBytes = 0;
+
+    /**
+     * 目录快照文件，为 null 表示不使用快照，每次启动都遍历表目录。
+     */
+    private File catalogFile;
+
+    /**
+     * 列统计目录，为 null 表示不持久化列统计。每张表一个统计文件，加载时读取，analyze() 后写入。
+     */
+    private File statsDir;
+
+    /**
+     * 单个查询的扫描并行度，1 表示单线程扫描。
+     */
+    private int parallelism = 1;
+
+    /**
+     * 延迟加载：表的分区树和分区索引在首次查询该表时才加载，启动时间不再随分区总数增长。
+     */
+    private boolean lazyLoad = false;
+
+    /**
+     * 解析缓存的最大条目数：最近解析过的查询串直接复用解析结果（包括编译好的 like 匹配器），0 表示不缓存。
+     */
+    private int parseCacheSize = 1024;
+
+    /**
+     * 查询结果缓存的最大条目数，0 表示不缓存。
+     */
+    private int resultCacheSize = 0;
+
+    /**
+     * 查询结果缓存的最大总开销（估计的字节数）。
+     */
+    private long resultCacheBytes = 64L << 20;
+
+    private ResultCache.Policy resultCachePolicy = ResultCache.Policy.TINY_LFU;
+
+    /**
+     * 后台检查表文件是否变化的间隔（毫秒），变化后表会重新加载，缓存的结果失效。
+     * 不论是否配置了缓存都生效：表的分区布局只加载一次，增删或改写的文件要由检查发现。
+     * 0 表示不在后台检查，由调用者在数据变化后调用 DatabaseImpl.refresh()。
+     */
+    private long resultCacheValidateMillis = 1000;
+
+    /**
+     * 比较条件行号位图缓存的内存预算（字节），0 表示不缓存。
+     */
+    private long predicateCacheBytes = 0;
+
+    /**
+     * 是否记录查询指标（各阶段耗时、扫描量、延迟直方图），关闭时没有任何开销。
+     */
+    private boolean metricsEnabled = false;
+
+    public File getStoreDir() {
+        return storeDir;
+    }
+
+    public DatabaseConfig setStoreDir(File storeDir) {
+        this.storeDir = storeDir;
+        return this;
+    }
+
+    public long getStoreMemoryBytes() {
+        return storeMemoryBytes;
+    }
+
+    public DatabaseConfig setStoreMemoryBytes(long storeMemoryBytes) {
+        if(storeMemoryBytes < 0) {
+            throw new IllegalArgumentException("storeMemoryBytes: " + storeMemoryBytes);
+        }
+        this.storeMemoryBytes = storeMemoryBytes;
+        return this;
+    }
+
+    public File getCatalogFile() {
+        return catalogFile;
+    }
+
+    public DatabaseConfig setCatalogFile(File catalogFile) {
+        this.catalogFile = catalogFile;
+        return this;
+    }
+
+    public File getStatsDir() {
+        return statsDir;
+    }
+
+    public DatabaseConfig setStatsDir(File statsDir) {
+        this.statsDir = statsDir;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public DatabaseConfig setParallelism(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public boolean isLazyLoad() {
+        return lazyLoad;
+    }
+
+    public DatabaseConfig setLazyLoad(boolean lazyLoad) {
+        this.lazyLoad = lazyLoad;
+        return this;
+    }
+
+    public int getParseCacheSize() {
+        return parseCacheSize;
+    }
+
+    public DatabaseConfig setParseCacheSize(int parseCacheSize) {
+        if(parseCacheSize < 0) {
+            throw new IllegalArgumentException("parseCacheSize: " + parseCacheSize);
+        }
+        this.parseCacheSize = parseCacheSize;
+        return this;
+    }
+
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    public DatabaseConfig setResultCacheSize(int resultCacheSize) {
+        if(resultCacheSize < 0) {
+            throw new IllegalArgumentException("resultCacheSize: " + resultCacheSize);
+        }
+        this.resultCacheSize = resultCacheSize;
+        return this;
+    }
+
+    public long getResultCacheBytes() {
+        return resultCacheBytes;
+    }
+
+    public DatabaseConfig setResultCacheBytes(long resultCacheBytes) {
+        if(resultCacheBytes < 1) {
+            throw new IllegalArgumentException("resultCacheBytes: " + resultCacheBytes);
+        }
+        this.resultCacheBytes = resultCacheBytes;
+        return this;
+    }
+
+    public ResultCache.Policy getResultCachePolicy() {
+        return resultCachePolicy;
+    }
+
+    public DatabaseConfig setResultCachePolicy(ResultCache.Policy resultCachePolicy) {
+        this.resultCachePolicy = resultCachePolicy;
+        return this;
+    }
+
+    public long getResultCacheValidateMillis() {
+        return resultCacheValidateMillis;
+    }
+
+    public DatabaseConfig setResultCacheValidateMillis(long resultCacheValidateMillis) {
+        if(resultCacheValidateMillis < 0) {
+            throw new IllegalArgumentException("resultCacheValidateMillis: " + resultCacheValidateMillis);
+        }
+        this.resultCacheValidateMillis = resultCacheValidateMillis;
+        return this;
+    }
+
+    public long getPredicateCacheBytes() {
+        return predicateCacheBytes;
+    }
+
+    public DatabaseConfig setPredicateCacheBytes(long predicateCacheBytes) {
+        if(predicateCacheBytes < 0) {
+            throw new IllegalArgumentException("predicateCacheBytes: " + predicateCacheBytes);
+        }
+        this.predicateCacheBytes = predicateCacheBytes;
+        return this;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public DatabaseConfig setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseConfig{" +
+                "storeDir=" + storeDir +
+                ", storeMemoryBytes=" + storeMemoryBytes +
+                ", catalogFile=" + catalogFile +
+                ", statsDir=" + statsDir +
+                ", parallelism=" + parallelism +
+                ", lazyLoad=" + lazyLoad +
+                ", parseCacheSize=" + parseCacheSize +
+                ", resultCacheSize=" + resultCacheSize +
+                ", resultCacheBytes=" + resultCacheBytes +
+                ", resultCachePolicy=" + resultCachePolicy +
+                ", resultCacheValidateMillis=" + resultCacheValidateMillis +
+                ", predicateCacheBytes=" + predicateCacheBytes +
+                ", metricsEnabled=" + metricsEnabled +
+                '}';
+    }
+
+}
@@ -1,6 +1,12 @@
 package com.team.db;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -28,12 +34,29 @@ public class Partition {
      */
     private final List<Partition> subpartitions;
 
+    /**
+     * 该分区目录下的数据文件（非目录），加载时列出一次。
+     */
+    private final List<DataFile> dataFiles;
+
+    /**
+     * 加载时分区目录的修改时间，用于校验目录快照是否过期。
+     */
+    private final long lastModified;
+
     public Partition(File partitionDirFile, List<Partition> subpartitions) {
+        this(partitionDirFile, subpartitions, new ArrayList<>(), partitionDirFile.lastModified());
+        listDirectory(partitionDirFile, null, dataFiles);
+    }
+
+    public Partition(File partitionDirFile, List<Partition> subpartitions, List<DataFile> dataFiles, long lastModified) {
         this.partitionDirFile = partitionDirFile;
         String[] nv = partitionDirFile.getName().split("=");
         partitionName = nv[0];
         value = nv[1];
         this.subpartitions = subpartitions;
+        this.dataFiles = dataFiles;
+        this.lastModified = lastModified;
     }
 
     @Override
@@ -59,6 +82,14 @@ public class Partition {
         return subpartitions;
     }
 
+    public List<DataFile> getDataFiles() {
+        return dataFiles;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
     /**
      * 本分区是否有子分区。
      */
@@ -66,4 +97,27 @@ public class Partition {
         return !subpartitions.isEmpty();
     }
 
+    /**
+     * 列出目录：子目录加入 ${subdirs}（可以为 null），数据文件连同大小和修改时间加入 ${dataFiles}，
+     * 每个目录项只读取一次属性。目录不存在时什么也不做。
+     */
+    public static
+    void listDirectory(File dir, List<File> subdirs, List<DataFile> dataFiles) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir.toPath())) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                if(attributes.isDirectory()) {
+                    if(subdirs != null) {
+                        subdirs.add(entry.toFile());
+                    }
+                } else {
+                    dataFiles.add(new DataFile(entry.toString(), attributes.size(),
+                            attributes.lastModifiedTime().toMillis(), -1));
+                }
+            }
+        } catch (IOException e) {
+            /* 目录不存在或不可读，视为空目录 */
+        }
+    }
+
 }
@@ -1,9 +1,15 @@
 package com.team.db;
 
+import com.team.db.like.LikeMatcher;
+import com.team.db.like.LikePattern;
+
 import java.util.*;
 
 /**
  * 分区索引，用于快速获取到分区数据。
+ *
+ * 除了按层的索引，每个分区名称还有一个按分区值排序的值索引：
+ * 比较条件通过二分查找得到一个连续区间（!= 为区间之外），前缀 like 通过区间查找得到候选值。
  */
 public class PartitionIndex {
 
@@ -11,7 +17,19 @@ public class PartitionIndex {
 
     private final List<List<Partition>> partitionDepth = new ArrayList<>();
 
+    /**
+     * 分区名称 -> 按分区值排序的值索引
+     */
+    private final Map<String, ValueIndex> valueIndexes = new HashMap<>();
+
+    /**
+     * 出现在多个层级的分区名称
+     */
+    private final Set<String> multiDepthNames = new HashSet<>();
+
     public PartitionIndex(List<Partition> rootPartitions) {
+        Map<String, TreeMap<String, List<Partition>>> sortedValues = new HashMap<>();
+        Map<String, Integer> firstDepths = new HashMap<>();
         Queue<Partition> Q = new LinkedList<>(rootPartitions);
         int depth = 0;
         while (!Q.isEmpty()) {
@@ -25,11 +43,20 @@ public class PartitionIndex {
                     Q.addAll(partition.getSubpartitions());
                 }
                 currDepthPartitions.add(partition);
+
+                sortedValues.computeIfAbsent(currDepthPartitionName, name -> new TreeMap<>())
+                        .computeIfAbsent(partition.getValue(), value -> new ArrayList<>())
+                        .add(partition);
+                Integer firstDepth = firstDepths.putIfAbsent(currDepthPartitionName, depth);
+                if(firstDepth != null && firstDepth != depth) {
+                    multiDepthNames.add(currDepthPartitionName);
+                }
             }
             partitionDepthMap.put(currDepthPartitionName, depth);
             partitionDepth.add(currDepthPartitions);
             ++depth;    /* 层数 + 1 */
         }
+        sortedValues.forEach((name, values) -> valueIndexes.put(name, new ValueIndex(values)));
     }
 
     @Override
@@ -60,4 +87,171 @@ public class PartitionIndex {
         return partitionDepth.size();
     }
 
+    /**
+     * 分区名称是否只出现在同一层。此时该名称的各个分区的子树互不相交。
+     */
+    public
+    boolean isSingleDepth(String partitionName) {
+        return valueIndexes.containsKey(partitionName) && !multiDepthNames.contains(partitionName);
+    }
+
+    /**
+     * 获取分区值满足比较条件的所有分区，通过二分查找得到连续区间。
+     * 不存在的分区名称返回空列表。
+     */
+    public
+    List<Partition> findPartitions(String partitionName, QueryParam.CompareType cmpType, String cmpValue) {
+        ValueIndex index = valueIndexes.get(partitionName);
+        List<Partition> found = new ArrayList<>();
+        if(index == null) {
+            return found;
+        }
+        int n = index.values.length;
+        switch (cmpType) {
+            case equals:
+                index.collect(index.lowerBound(cmpValue), index.upperBound(cmpValue), found);
+                break;
+            case notEquals:
+                index.collect(0, index.lowerBound(cmpValue), found);
+                index.collect(index.upperBound(cmpValue), n, found);
+                break;
+            case greater:
+                index.collect(index.upperBound(cmpValue), n, found);
+                break;
+            case less:
+                index.collect(0, index.lowerBound(cmpValue), found);
+                break;
+        }
+        return found;
+    }
+
+    /**
+     * 获取分区值满足 like 条件的所有分区，每个不同的分区值最多求值一次：
+     *  - ANY_LIKE 的模式串都是精确值或前缀时，只在这些模式串对应的区间内查找；
+     *  - ALL_LIKE 有精确值或前缀模式串时，只在其区间内查找；
+     *  - 其余情况对所有分区值求值。
+     */
+    public
+    List<Partition> findPartitions(String partitionName, LikeMatcher likeMatcher) {
+        ValueIndex index = valueIndexes.get(partitionName);
+        List<Partition> found = new ArrayList<>();
+        if(index == null) {
+            return found;
+        }
+
+        List<int[]> ranges = new ArrayList<>();
+        QueryParam.LikeType likeType = likeMatcher.getLikeType();
+        if(likeType != QueryParam.LikeType.noneLike) {
+            for (LikePattern pattern : likeMatcher.getPatterns()) {
+                int[] range = index.patternRange(pattern);
+                if(likeType == QueryParam.LikeType.allLike && range != null) {
+                    ranges.clear();
+                    ranges.add(range);
+                    break;
+                }
+                if(likeType == QueryParam.LikeType.anyLike) {
+                    if(range == null) {
+                        ranges.clear();
+                        break;
+                    }
+                    ranges.add(range);
+                }
+            }
+        }
+        if(ranges.isEmpty()) {
+            ranges.add(new int[]{0, index.values.length});
+        }
+
+        /* 区间可能重叠（如 '2%' 与 '20%'），每个值只取一次。 */
+        boolean[] visited = new boolean[index.values.length];
+        for (int[] range : ranges) {
+            for (int i = range[0]; i < range[1]; i++) {
+                if(!visited[i]) {
+                    visited[i] = true;
+                    if(likeMatcher.matches(index.values[i])) {
+                        found.addAll(index.partitions.get(i));
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 一个分区名称的值索引：有序的不同分区值，以及每个值对应的分区。
+     */
+    private static class ValueIndex {
+
+        private final String[] values;
+
+        private final List<List<Partition>> partitions;
+
+        ValueIndex(TreeMap<String, List<Partition>> sortedValues) {
+            values = sortedValues.keySet().toArray(new String[0]);
+            partitions = new ArrayList<>(sortedValues.values());
+        }
+
+        /**
+         * 第一个不小于 ${key} 的值的下标。
+         */
+        int lowerBound(String key) {
+            int lo = 0, hi = values.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(values[mid].compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 第一个大于 ${key} 的值的下标。
+         */
+        int upperBound(String key) {
+            int lo = 0, hi = values.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(values[mid].compareTo(key) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 精确值和前缀模式串对应的值区间 [from, to)，其他模式串返回 null。
+         * 以某前缀开头的值在有序数组中是连续的。
+         */
+        int[] patternRange(LikePattern pattern) {
+            String literal = pattern.getLiteral();
+            switch (pattern.getKind()) {
+                case EXACT:
+                    return new int[]{lowerBound(literal), upperBound(literal)};
+                case PREFIX:
+                    int from = lowerBound(literal);
+                    int to = from;
+                    while (to < values.length && values[to].startsWith(literal)) {
+                        ++to;
+                    }
+                    return new int[]{from, to};
+                default:
+                    return null;
+            }
+        }
+
+        void collect(int from, int to, List<Partition> found) {
+            for (int i = from; i < to; i++) {
+                found.addAll(partitions.get(i));
+            }
+        }
+
+    }
+
 }
@@ -1,15 +1,18 @@
 package com.team.db;
 
 
-import com.team.util.StringUtil;
+import com.team.db.like.LikeMatcher;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.regex.Pattern;
+import java.util.Objects;
+import java.util.TreeSet;
 
 /**
- * 查询参数。
+ * 查询参数，解析后不可变，可以在线程之间共享和缓存。
  *
  * 输入格式： table0 column0 > '200000' column2 ANY_LIKE ['2017%','2018%','2019%']
+ * 引号内可以包含空格和逗号，转义规则见 QueryTokenizer。列名在解析时一次性解析为列序号。
  */
 public class QueryParam {
 
@@ -25,6 +28,11 @@ public class QueryParam {
      */
     private final String compareColumn;
 
+    /**
+     * 比较列的列序号，-1 表示比较列是分区键
+     */
+    private final int compareOrdinal;
+
     /**
      * 操作符：取值范围'>','<','=','!='，表示${比较列}需要满足一定的筛选条件，注意统一满足字符串的比较语义
      */
@@ -35,11 +43,21 @@ public class QueryParam {
      */
     private final String compareValue;
 
+    /**
+     * UTF-8 编码的比较值，扫描时直接与数据的字节比较
+     */
+    private final byte[] compareKey;
+
     /**
      * like匹配列：字符串，用来做like语义的列名（一定存在）
      */
     private final String likeColumn;
 
+    /**
+     * like 匹配列的列序号，-1 表示 like 匹配列是分区键
+     */
+    private final int likeOrdinal;
+
     /**
      * like类型：字符串，
      *  - 'ALL_LIKE'表示所有模式串都能匹配才成功;
@@ -53,32 +71,72 @@ public class QueryParam {
      */
     private final String[] likeParams;
 
+    /**
+     * 编译后的 like 匹配器，解析时编译一次
+     */
+    private final LikeMatcher likeMatcher;
+
+    /**
+     * 去重并排序后的 like 匹配值，三种 like 类型都与模式串的顺序和重复无关，用于判断查询是否相同
+     */
+    private final String[] normalizedLikeParams;
+
     private QueryParam(String table, String compareColumn, CompareType compareType, String compareValue,
                       String likeColumn, LikeType likeType, String[] likeParams) {
         this.table = table;
         this.compareColumn = compareColumn;
+        this.compareOrdinal = ordinalOf(compareColumn);
         this.compareType = compareType;
         this.compareValue = compareValue;
+        this.compareKey = compareValue.getBytes(StandardCharsets.UTF_8);
         this.likeColumn = likeColumn;
+        this.likeOrdinal = ordinalOf(likeColumn);
         this.likeType = likeType;
         this.likeParams = likeParams;
+        this.likeMatcher = LikeMatcher.compile(likeType, likeParams);
+        this.normalizedLikeParams = new TreeSet<>(Arrays.asList(likeParams)).toArray(new String[0]);
     }
 
+    /**
+     * 单遍解析查询串，格式错误时抛出 IllegalArgumentException。
+     *
+     * @return ${param} 为 null 或空串时返回 null
+     */
     public static
     QueryParam valueOf(String param) {
         if(param == null || param.isEmpty()) {
             return null;
         }
-        String[] paramSplit = param.split(" ");
+        QueryTokenizer tokenizer = new QueryTokenizer(param);
+        String table = tokenizer.word();
+        String compareColumn = tokenizer.word();
+        CompareType compareType = tokenizer.compareType();
+        String compareValue = tokenizer.quoted(false);
+        String likeColumn = tokenizer.word();
+        LikeType likeType = tokenizer.likeType();
+        String[] likeParams = tokenizer.quotedList();
+        tokenizer.end();
+        return new QueryParam(table, compareColumn, compareType, compareValue, likeColumn, likeType, likeParams);
+    }
 
-        return new QueryParam(
-                paramSplit[0],
-                paramSplit[1],
-                CompareType.getTypeByString(paramSplit[2]),
-                StringUtil.standardValueString(paramSplit[3]),
-                paramSplit[4],
-                LikeType.getTypeByString(paramSplit[5]),
-                StringUtil.arrayStringToArray(paramSplit[6]));
+    /**
+     * 列名对应的列序号：columnN 得到 N，分区键（不是 column 加数字的形式）得到 -1。
+     */
+    public static
+    int ordinalOf(String column) {
+        int prefix = "column".length();
+        if(!column.startsWith("column") || column.length() == prefix || column.length() > prefix + 9) {
+            return -1;
+        }
+        int ordinal = 0;
+        for (int i = prefix; i < column.length(); i++) {
+            char c = column.charAt(i);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+            ordinal = ordinal * 10 + (c - '0');
+        }
+        return ordinal;
     }
 
     @Override
@@ -94,6 +152,53 @@ public class QueryParam {
                 '}';
     }
 
+    /**
+     * 还原为输入格式，Eg. table0 column0 > '200000' column2 ANY_LIKE ['2017%','2018%']
+     * 值中的引号（以及比较值中的反斜杠）重新转义，结果可以再次解析为相等的查询。
+     */
+    public
+    String toQueryString() {
+        StringBuilder builder = new StringBuilder(64)
+                .append(table).append(' ')
+                .append(compareColumn).append(' ').append(compareType).append(' ');
+        appendQuoted(builder, compareValue, false).append(' ')
+                .append(likeColumn).append(' ').append(likeType).append(" [");
+        for (int i = 0; i < likeParams.length; i++) {
+            if(i > 0) {
+                builder.append(',');
+            }
+            appendQuoted(builder, likeParams[i], true);
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * 规范化后相同的查询相等：like 匹配值的顺序和重复不影响结果。
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        QueryParam that = (QueryParam) o;
+        return table.equals(that.table) &&
+                compareColumn.equals(that.compareColumn) &&
+                compareType == that.compareType &&
+                compareValue.equals(that.compareValue) &&
+                likeColumn.equals(that.likeColumn) &&
+                likeType == that.likeType &&
+                Arrays.equals(normalizedLikeParams, that.normalizedLikeParams);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(table, compareColumn, compareType, compareValue, likeColumn, likeType);
+        return 31 * result + Arrays.hashCode(normalizedLikeParams);
+    }
+
     public String getTable() {
         return table;
     }
@@ -102,6 +207,13 @@ public class QueryParam {
         return compareColumn;
     }
 
+    /**
+     * 比较列的列序号，比较列是分区键时返回 -1。
+     */
+    public int getCompareOrdinal() {
+        return compareOrdinal;
+    }
+
     public CompareType getCompareType() {
         return compareType;
     }
@@ -110,10 +222,24 @@ public class QueryParam {
         return compareValue;
     }
 
+    /**
+     * UTF-8 编码的比较值，解析时编码一次，调用者不得修改。
+     */
+    public byte[] getCompareKey() {
+        return compareKey;
+    }
+
     public String getLikeColumn() {
         return likeColumn;
     }
 
+    /**
+     * like 匹配列的列序号，like 匹配列是分区键时返回 -1。
+     */
+    public int getLikeOrdinal() {
+        return likeOrdinal;
+    }
+
     public LikeType getLikeType() {
         return likeType;
     }
@@ -123,14 +249,28 @@ public class QueryParam {
     }
 
     /**
-     * 获取 like 参数对应的正则表达式对象数组。
+     * 获取 like 参数对应的匹配器。
      */
-    public Pattern[] getLikePatterns() {
-        Pattern[] patterns = new Pattern[likeParams.length];
-        for (int i = 0; i < likeParams.length; i++) {
-            patterns[i] = Pattern.compile(StringUtil.likeMatchesStringToRegex(likeParams[i]), Pattern.DOTALL);
+    public LikeMatcher getLikeMatcher() {
+        return likeMatcher;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 以引号括起追加值，转义引号；比较值还需转义反斜杠，like 模式串中的反斜杠本身就是模式的转义。
+     */
+    private static
+    StringBuilder appendQuoted(StringBuilder builder, String value, boolean likePattern) {
+        builder.append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '\'' || (c == '\\' && !likePattern)) {
+                builder.append('\\');
+            }
+            builder.append(c);
         }
-        return patterns;
+        return builder.append('\'');
     }
 
     /* ====================================== Supports ====================================== */
@@ -0,0 +1,358 @@
+package com.team.db;
+
+import com.team.db.metrics.QueryMetrics;
+
+import java.util.Locale;
+
+/**
+ * 查询计划的描述，由 Database.explain 返回，用于诊断慢查询。
+ *
+ * 包括选择的执行路径、谓词的求值顺序、是否并行扫描，分区裁剪和区域统计的结果，
+ * 以及基于表的行采样估计的选择率、扫描行数和结果行数。
+ * 分区和文件的计数是规划得到的准确值，行数和选择率是估计值。
+ */
+public final class QueryPlan {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 列上两个谓词的求值顺序
+     */
+    public enum PredicateOrder {
+        /**
+         * 先比较，通过的行再判断 like
+         */
+        COMPARE_FIRST,
+        /**
+         * 先 like，通过的行再比较
+         */
+        LIKE_FIRST,
+        /**
+         * 没有统计信息，每个扫描单元采样后自行决定
+         */
+        ADAPTIVE
+    }
+
+    private final String query;
+
+    private final QueryMetrics.PlanPath planPath;
+
+    private final PredicateOrder predicateOrder;
+
+    private final boolean parallel;
+
+    private final boolean resultCached;
+
+    /**
+     * 列上比较条件的估计选择率，比较条件在分区上时为 -1
+     */
+    private final double compareSelectivity;
+
+    /**
+     * 列上 like 条件的估计选择率，like 条件在分区上时为 -1
+     */
+    private final double likeSelectivity;
+
+    /**
+     * 两种顺序下每行的估计代价
+     */
+    private final double compareFirstCost;
+
+    private final double likeFirstCost;
+
+    private final long partitionsVisited;
+
+    private final long partitionsPruned;
+
+    private final long filesScanned;
+
+    private final long filesSkipped;
+
+    private final int scanUnits;
+
+    /**
+     * 需要扫描的估计行数
+     */
+    private final long estimatedScanRows;
+
+    /**
+     * 不需要扫描即确定满足的行数（准确值）
+     */
+    private final long rowsMatchedWithoutScan;
+
+    /**
+     * 估计的结果行数
+     */
+    private final long estimatedRows;
+
+    private final int sampleRows;
+
+    private QueryPlan(Builder builder) {
+        this.query = builder.query;
+        this.planPath = builder.planPath;
+        this.predicateOrder = builder.predicateOrder;
+        this.parallel = builder.parallel;
+        this.resultCached = builder.resultCached;
+        this.compareSelectivity = builder.compareSelectivity;
+        this.likeSelectivity = builder.likeSelectivity;
+        this.compareFirstCost = builder.compareFirstCost;
+        this.likeFirstCost = builder.likeFirstCost;
+        this.partitionsVisited = builder.partitionsVisited;
+        this.partitionsPruned = builder.partitionsPruned;
+        this.filesScanned = builder.filesScanned;
+        this.filesSkipped = builder.filesSkipped;
+        this.scanUnits = builder.scanUnits;
+        this.estimatedScanRows = builder.estimatedScanRows;
+        this.rowsMatchedWithoutScan = builder.rowsMatchedWithoutScan;
+        this.estimatedRows = builder.estimatedRows;
+        this.sampleRows = builder.sampleRows;
+    }
+
+    /**
+     * 多行的可读文本，Eg.
+     * <pre>
+     * EXPLAIN table1 column0 > '200000' column2 ANY_LIKE ['2017%']
+     *   path:       PARTITION_SCAN (parallel, 12 units)
+     *   partitions: visited 40, pruned 6
+     *   files:      scan 12, resolved by zone map 3
+     *   predicates: LIKE_FIRST (compare 0.9312, like 0.0417; cost/row compare-first 1.33, like-first 8.04)
+     *   rows:       scan ~480000, matched without scan 1200, estimated result ~19800 (sample 256)
+     * </pre>
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(512)
+                .append("EXPLAIN ").append(query).append('\n')
+                .append("  path:       ").append(planPath)
+                .append(" (").append(parallel ? "parallel" : "serial").append(", ")
+                .append(scanUnits).append(scanUnits == 1 ? " unit)" : " units)");
+        if(resultCached) {
+            builder.append(", result cached");
+        }
+        builder.append('\n')
+                .append("  partitions: visited ").append(partitionsVisited)
+                .append(", pruned ").append(partitionsPruned).append('\n')
+                .append("  files:      scan ").append(filesScanned)
+                .append(", resolved by zone map ").append(filesSkipped).append('\n')
+                .append("  predicates: ").append(predicateOrder == null ? "-" : predicateOrder.toString())
+                .append(" (compare ").append(format(compareSelectivity))
+                .append(", like ").append(format(likeSelectivity));
+        if(compareFirstCost > 0) {
+            builder.append(String.format(Locale.ROOT, "; cost/row compare-first %.2f, like-first %.2f",
+                    compareFirstCost, likeFirstCost));
+        }
+        return builder.append(")\n")
+                .append("  rows:       scan ~").append(estimatedScanRows)
+                .append(", matched without scan ").append(rowsMatchedWithoutScan)
+                .append(", estimated result ~").append(estimatedRows)
+                .append(" (sample ").append(sampleRows).append(")\n")
+                .toString();
+    }
+
+    /**
+     * 标记为结果已缓存的副本：执行时直接取缓存的结果，计划的其余部分仍描述未命中时的执行方式。
+     */
+    public
+    QueryPlan cached() {
+        Builder builder = new Builder(query);
+        builder.planPath = planPath;
+        builder.predicateOrder = predicateOrder;
+        builder.parallel = parallel;
+        builder.resultCached = true;
+        builder.compareSelectivity = compareSelectivity;
+        builder.likeSelectivity = likeSelectivity;
+        builder.compareFirstCost = compareFirstCost;
+        builder.likeFirstCost = likeFirstCost;
+        builder.partitionsVisited = partitionsVisited;
+        builder.partitionsPruned = partitionsPruned;
+        builder.filesScanned = filesScanned;
+        builder.filesSkipped = filesSkipped;
+        builder.scanUnits = scanUnits;
+        builder.estimatedScanRows = estimatedScanRows;
+        builder.rowsMatchedWithoutScan = rowsMatchedWithoutScan;
+        builder.estimatedRows = estimatedRows;
+        builder.sampleRows = sampleRows;
+        return builder.build();
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public QueryMetrics.PlanPath getPlanPath() {
+        return planPath;
+    }
+
+    public PredicateOrder getPredicateOrder() {
+        return predicateOrder;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public boolean isResultCached() {
+        return resultCached;
+    }
+
+    public double getCompareSelectivity() {
+        return compareSelectivity;
+    }
+
+    public double getLikeSelectivity() {
+        return likeSelectivity;
+    }
+
+    public double getCompareFirstCost() {
+        return compareFirstCost;
+    }
+
+    public double getLikeFirstCost() {
+        return likeFirstCost;
+    }
+
+    public long getPartitionsVisited() {
+        return partitionsVisited;
+    }
+
+    public long getPartitionsPruned() {
+        return partitionsPruned;
+    }
+
+    public long getFilesScanned() {
+        return filesScanned;
+    }
+
+    public long getFilesSkipped() {
+        return filesSkipped;
+    }
+
+    public int getScanUnits() {
+        return scanUnits;
+    }
+
+    public long getEstimatedScanRows() {
+        return estimatedScanRows;
+    }
+
+    public long getRowsMatchedWithoutScan() {
+        return rowsMatchedWithoutScan;
+    }
+
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public int getSampleRows() {
+        return sampleRows;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private static
+    String format(double selectivity) {
+        return selectivity < 0 ? "on partition" : String.format(Locale.ROOT, "%.4f", selectivity);
+    }
+
+    /* ====================================== Supports ====================================== */
+
+    /**
+     * 由表在规划时逐项填写。
+     */
+    public static final class Builder {
+
+        private final String query;
+
+        private QueryMetrics.PlanPath planPath;
+
+        private PredicateOrder predicateOrder;
+
+        private boolean parallel;
+
+        private boolean resultCached;
+
+        private double compareSelectivity = -1;
+
+        private double likeSelectivity = -1;
+
+        private double compareFirstCost;
+
+        private double likeFirstCost;
+
+        private long partitionsVisited;
+
+        private long partitionsPruned;
+
+        private long filesScanned;
+
+        private long filesSkipped;
+
+        private int scanUnits;
+
+        private long estimatedScanRows;
+
+        private long rowsMatchedWithoutScan;
+
+        private long estimatedRows;
+
+        private int sampleRows;
+
+        public Builder(String query) {
+            this.query = query;
+        }
+
+        public Builder setPlanPath(QueryMetrics.PlanPath planPath) {
+            this.planPath = planPath;
+            return this;
+        }
+
+        public Builder setPredicateOrder(PredicateOrder predicateOrder) {
+            this.predicateOrder = predicateOrder;
+            return this;
+        }
+
+        public Builder setParallel(boolean parallel) {
+            this.parallel = parallel;
+            return this;
+        }
+
+        public Builder setSelectivity(double compareSelectivity, double likeSelectivity) {
+            this.compareSelectivity = compareSelectivity;
+            this.likeSelectivity = likeSelectivity;
+            return this;
+        }
+
+        public Builder setCost(double compareFirstCost, double likeFirstCost) {
+            this.compareFirstCost = compareFirstCost;
+            this.likeFirstCost = likeFirstCost;
+            return this;
+        }
+
+        /**
+         * 分区和文件的计数取自规划时记录的指标。
+         */
+        public Builder setCounts(QueryMetrics metrics) {
+            this.partitionsVisited = metrics.getPartitionsVisited();
+            this.partitionsPruned = metrics.getPartitionsPruned();
+            this.filesScanned = metrics.getFilesScanned();
+            this.filesSkipped = metrics.getFilesSkipped();
+            return this;
+        }
+
+        public Builder setRows(int scanUnits, long estimatedScanRows, long rowsMatchedWithoutScan,
+                               long estimatedRows, int sampleRows) {
+            this.scanUnits = scanUnits;
+            this.estimatedScanRows = estimatedScanRows;
+            this.rowsMatchedWithoutScan = rowsMatchedWithoutScan;
+            this.estimatedRows = estimatedRows;
+            this.sampleRows = sampleRows;
+            return this;
+        }
+
+        public QueryPlan build() {
+            return new QueryPlan(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.team.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 查询参数的单遍分词器：在原始查询串上从左到右只扫描一次，依次切出各个字段。
+ *
+ * 格式：table cmpColumn op 'cmpValue' likeColumn LIKE_TYPE ['like1','like2',...]
+ *  - 字段之间以一个或多个空白（空格、制表符、回车换行）分隔，列表的方括号和逗号两侧允许空白；
+ *  - 引号内可以包含空格、逗号和方括号，\' 表示单引号；
+ *  - 比较值中 \\ 表示反斜杠；like 模式串中的 \%、\_、\\ 原样保留，由 LikePattern 解释。
+ *
+ * 没有转义的值直接取原串的子串，操作符和 like 类型原地比较，不产生其他中间对象。
+ * 格式错误时抛出 IllegalArgumentException，指出出错的位置。
+ */
+final class QueryTokenizer {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final QueryParam.CompareType[] COMPARE_TYPES = QueryParam.CompareType.values();
+
+    private static final QueryParam.LikeType[] LIKE_TYPES = QueryParam.LikeType.values();
+
+    private final String input;
+
+    private final int length;
+
+    /**
+     * 下一个未读取的字符
+     */
+    private int pos;
+
+    QueryTokenizer(String input) {
+        this.input = input;
+        this.length = input.length();
+    }
+
+    /* ====================================== Package ====================================== */
+
+    /**
+     * 下一个不含空格的字段，如表名和列名。
+     */
+    String word() {
+        skipSpaces();
+        int start = pos;
+        while (pos < length && !isSpace(input.charAt(pos))) {
+            ++pos;
+        }
+        if(pos == start) {
+            throw error("name");
+        }
+        return input.substring(start, pos);
+    }
+
+    QueryParam.CompareType compareType() {
+        skipSpaces();
+        /* "!=" 以 '!' 开头，不会被 "=" 误匹配 */
+        for (QueryParam.CompareType compareType : COMPARE_TYPES) {
+            if(keyword(compareType.toString())) {
+                return compareType;
+            }
+        }
+        throw error("'>', '<', '=' or '!='");
+    }
+
+    QueryParam.LikeType likeType() {
+        skipSpaces();
+        for (QueryParam.LikeType likeType : LIKE_TYPES) {
+            if(keyword(likeType.toString())) {
+                return likeType;
+            }
+        }
+        throw error("ALL_LIKE, ANY_LIKE or NONE_LIKE");
+    }
+
+    /**
+     * 引号括起的值，去掉引号并处理转义。
+     *
+     * @param likePattern 为 true 时只处理 \'，其余转义原样保留给 like 模式串
+     */
+    String quoted(boolean likePattern) {
+        skipSpaces();
+        if(pos >= length || input.charAt(pos) != '\'') {
+            throw error("opening quote");
+        }
+        int start = ++pos, from = start;
+        StringBuilder builder = null;
+        for (int i = start; i < length; i++) {
+            char c = input.charAt(i);
+            if(c == '\'') {
+                pos = i + 1;
+                return builder == null ? input.substring(start, i) : builder.append(input, from, i).toString();
+            }
+            if(c == '\\' && i + 1 < length) {
+                char next = input.charAt(i + 1);
+                if(next == '\'' || (next == '\\' && !likePattern)) {
+                    if(builder == null) {
+                        builder = new StringBuilder(i - start + 16);
+                    }
+                    builder.append(input, from, i).append(next);
+                    from = ++i + 1;
+                } else if(next == '\\') {
+                    ++i;            /* like 模式串的 \\ 整体保留，之后的引号仍是结束引号 */
+                }
+            }
+        }
+        pos = length;
+        throw error("closing quote");
+    }
+
+    /**
+     * 方括号括起、逗号分隔的一组引号值（like 模式串），至少一个。
+     */
+    String[] quotedList() {
+        skipSpaces();
+        if(pos >= length || input.charAt(pos) != '[') {
+            throw error("'['");
+        }
+        ++pos;
+        List<String> values = new ArrayList<>(4);
+        while (true) {
+            values.add(quoted(true));
+            skipSpaces();
+            char c = pos < length ? input.charAt(pos) : 0;
+            ++pos;
+            if(c == ']') {
+                return values.toArray(new String[0]);
+            }
+            if(c != ',') {
+                --pos;
+                throw error("',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * 检查查询串已经读完（允许末尾的空白）。
+     */
+    void end() {
+        skipSpaces();
+        if(pos < length) {
+            throw error("end of query");
+        }
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private
+    void skipSpaces() {
+        while (pos < length && isSpace(input.charAt(pos))) {
+            ++pos;
+        }
+    }
+
+    private static
+    boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * 当前位置是否是完整的 ${keyword}（之后是空白或结尾），是则跳过。
+     */
+    private
+    boolean keyword(String keyword) {
+        int end = pos + keyword.length();
+        if(input.startsWith(keyword, pos) && (end == length || isSpace(input.charAt(end)))) {
+            pos = end;
+            return true;
+        }
+        return false;
+    }
+
+    private
+    IllegalArgumentException error(String expected) {
+        return new IllegalArgumentException("Malformed query at " + pos + ", expected " + expected + ": " + input);
+    }
+
+}
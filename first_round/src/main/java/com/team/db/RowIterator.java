@@ -0,0 +1,23 @@
+package com.team.db;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * 流式查询的结果：按扫描顺序逐行返回满足条件的行，迭代时才扫描数据，不物化结果。
+ *
+ * 行是数据文件中的一行文本（不含换行符），分区键的值不在行中；
+ * 已转换为列式段的文件由各列的值以 '|' 重新拼接，短行补齐的空列也会输出。
+ *
+ * 用完必须关闭以释放打开的文件：迭代完所有行或达到行数上限时自动关闭，提前关闭即停止扫描。
+ * 非线程安全。
+ */
+public interface RowIterator extends Iterator<String>, Closeable {
+
+    /**
+     * 停止扫描并释放打开的文件，可重复调用。
+     */
+    @Override
+    void close();
+
+}
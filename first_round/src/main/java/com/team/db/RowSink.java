@@ -0,0 +1,14 @@
+package com.team.db;
+
+/**
+ * 推送式的流式查询结果：满足条件的行在扫描时依次交给 accept，行的格式见 RowIterator。
+ */
+@FunctionalInterface
+public interface RowSink {
+
+    /**
+     * @return false 表示不再需要更多的行，扫描随即停止
+     */
+    boolean accept(String row);
+
+}
@@ -1,8 +1,36 @@
 package com.team.db;
 
 
+import com.team.db.metrics.QueryMetrics;
+
+import java.util.List;
+
 public interface Table {
 
     int matchesCount(QueryParam queryParam);
 
+    /**
+     * 同 matchesCount，同时把执行指标记录到 ${metrics} 中，为 null 时不记录。
+     */
+    default int matchesCount(QueryParam queryParam, QueryMetrics metrics) {
+        return matchesCount(queryParam);
+    }
+
+    /**
+     * 流式查询满足条件的行，迭代时才扫描数据，见 Database.rows。
+     *
+     * @param limit 最多返回的行数，小于 0 表示不限制
+     */
+    RowIterator rows(QueryParam queryParam, long limit);
+
+    /**
+     * 只规划不执行，返回查询计划的描述。
+     */
+    QueryPlan explain(QueryParam queryParam);
+
+    /**
+     * 批量查询：一次扫描表数据回答所有查询，结果与 ${queryParams} 顺序一致。
+     */
+    int[] matchesCounts(List<QueryParam> queryParams);
+
 }
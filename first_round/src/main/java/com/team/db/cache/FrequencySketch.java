@@ -0,0 +1,91 @@
+package com.team.db.cache;
+
+/**
+ * TinyLFU 的访问频率估计：4 行的 Count-Min Sketch，每个计数器 4 位（上限 15）。
+ *
+ * 每记录 ${sampleSize} 次访问，所有计数器减半，使频率随时间衰减，旧的热点最终会被淘汰。
+ */
+final class FrequencySketch {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final int DEPTH = 4;
+
+    private static final int MAX_COUNT = 15;
+
+    private static final int[] SEEDS = {0x97cb3127, 0xb1c3e549, 0x6a09e667, 0xbb67ae85};
+
+    /**
+     * 每个 long 存放 16 个 4 位计数器
+     */
+    private final long[] table;
+
+    private final int mask;
+
+    private final int sampleSize;
+
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int counters = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 24)) * 2 - 1) * DEPTH;
+        table = new long[Math.max(1, counters / 16)];
+        mask = counters - 1;
+        sampleSize = 10 * Math.max(1, maximumSize);
+    }
+
+    /* ====================================== Package ====================================== */
+
+    /**
+     * 估计的访问频率。
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, counter(indexOf(hash, i)));
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问。
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            if(counter(index) < MAX_COUNT) {
+                table[index >>> 4] += 1L << ((index & 15) << 2);
+                added = true;
+            }
+        }
+        if(added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private
+    int counter(int index) {
+        return (int) (table[index >>> 4] >>> ((index & 15) << 2)) & 0xF;
+    }
+
+    private
+    int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    /**
+     * 所有计数器减半。
+     */
+    private
+    void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+        }
+        additions /= 2;
+    }
+
+}
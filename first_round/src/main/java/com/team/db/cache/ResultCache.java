@@ -0,0 +1,244 @@
+package com.team.db.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * 有界的查询结果缓存，同时受条目数和总开销（如估计的内存字节数）限制。
+ *
+ * 淘汰策略：
+ *  - LRU：淘汰最久未访问的条目；
+ *  - TINY_LFU：W-TinyLFU，新条目先进入约占 1% 的窗口 LRU，被挤出窗口时与主区的淘汰候选比较访问频率
+ *    （由 {@link FrequencySketch} 估计），频率更高者留下。能抵抗大量只出现一次的查询冲掉热点查询。
+ *
+ * 所有方法都是同步的。
+ */
+public class ResultCache<K, V> {
+
+    /* ====================================== Fields ====================================== */
+
+    public enum Policy {
+        LRU,
+        TINY_LFU
+    }
+
+    private final Policy policy;
+
+    private final int maximumSize;
+
+    private final long maximumWeight;
+
+    private final ToLongBiFunction<K, V> weigher;
+
+    /**
+     * TINY_LFU 的窗口区，LRU 时不使用
+     */
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int windowSize;
+
+    /**
+     * 主区，按访问顺序排列，头部为淘汰候选
+     */
+    private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    private long weight;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    /**
+     * @param maximumSize 最大条目数
+     * @param maximumWeight 最大总开销
+     * @param weigher 条目（键和值）开销的估计
+     */
+    public ResultCache(Policy policy, int maximumSize, long maximumWeight, ToLongBiFunction<K, V> weigher) {
+        if(maximumSize < 1 || maximumWeight < 1) {
+            throw new IllegalArgumentException("maximumSize: " + maximumSize + ", maximumWeight: " + maximumWeight);
+        }
+        this.policy = policy;
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.windowSize = policy == Policy.TINY_LFU ? Math.max(1, maximumSize / 100) : 0;
+        this.sketch = policy == Policy.TINY_LFU ? new FrequencySketch(maximumSize) : null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResultCache{" +
+                "policy=" + policy +
+                ", size=" + size() +
+                ", weight=" + weight +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 获取缓存的值，不存在时返回 null。
+     */
+    public synchronized
+    V get(K key) {
+        if(sketch != null) {
+            sketch.increment(key.hashCode());
+        }
+        Entry<V> entry = main.get(key);
+        if(entry == null) {
+            entry = window.get(key);
+        }
+        if(entry == null) {
+            ++missCount;
+            return null;
+        }
+        ++hitCount;
+        return entry.value;
+    }
+
+    /**
+     * 是否缓存了 ${key}，不计入命中统计，也不影响淘汰顺序。
+     */
+    public synchronized
+    boolean containsKey(K key) {
+        return main.containsKey(key) || window.containsKey(key);
+    }
+
+    public synchronized
+    void put(K key, V value) {
+        long entryWeight = weigher.applyAsLong(key, value);
+        if(entryWeight > maximumWeight) {
+            return;
+        }
+        remove(key);
+        weight += entryWeight;
+        if(policy == Policy.LRU) {
+            main.put(key, new Entry<>(value, entryWeight));
+            while (main.size() > maximumSize || weight > maximumWeight) {
+                evict(main);
+            }
+            return;
+        }
+
+        window.put(key, new Entry<>(value, entryWeight));
+        while (window.size() > windowSize) {
+            admit();
+        }
+        while (weight > maximumWeight) {
+            evict(main.isEmpty() ? window : main);
+        }
+    }
+
+    /**
+     * 删除 ${key} 的条目。
+     */
+    public synchronized
+    void invalidate(K key) {
+        remove(key);
+    }
+
+    /**
+     * 删除所有满足条件的条目，用于数据变化后的失效。
+     */
+    public synchronized
+    void invalidateIf(Predicate<K> predicate) {
+        invalidateIf(window, predicate);
+        invalidateIf(main, predicate);
+    }
+
+    public synchronized
+    int size() {
+        return window.size() + main.size();
+    }
+
+    public synchronized
+    long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized
+    long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized
+    long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 窗口最久未访问的条目尝试进入主区：主区已满时与主区的淘汰候选比较频率，输的一方被淘汰。
+     */
+    private
+    void admit() {
+        Map.Entry<K, Entry<V>> candidate = window.entrySet().iterator().next();
+        window.remove(candidate.getKey());
+        if(main.size() >= maximumSize - windowSize) {
+            if(main.isEmpty() || sketch.frequency(candidate.getKey().hashCode())
+                    <= sketch.frequency(main.keySet().iterator().next().hashCode())) {
+                weight -= candidate.getValue().weight;
+                ++evictionCount;
+                return;
+            }
+            evict(main);
+        }
+        main.put(candidate.getKey(), candidate.getValue());
+    }
+
+    private
+    void invalidateIf(LinkedHashMap<K, Entry<V>> region, Predicate<K> predicate) {
+        Iterator<Map.Entry<K, Entry<V>>> it = region.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = it.next();
+            if(predicate.test(entry.getKey())) {
+                weight -= entry.getValue().weight;
+                it.remove();
+            }
+        }
+    }
+
+    private
+    void evict(LinkedHashMap<K, Entry<V>> region) {
+        Iterator<Entry<V>> it = region.values().iterator();
+        weight -= it.next().weight;
+        it.remove();
+        ++evictionCount;
+    }
+
+    private
+    void remove(K key) {
+        Entry<V> old = main.remove(key);
+        if(old == null) {
+            old = window.remove(key);
+        }
+        if(old != null) {
+            weight -= old.weight;
+        }
+    }
+
+    private static class Entry<V> {
+
+        final V value;
+
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.team.db.cache;
+
+import java.util.Arrays;
+
+/**
+ * 压缩的行号位图（Roaring 风格）：行号按高 16 位分块，每块一个容器：
+ *  - 数组容器：块内不超过 4096 个行号时，存放有序的低 16 位；
+ *  - 位图容器：超过 4096 个时，存放 65536 位的位图（8KB）。
+ *
+ * 稀疏和稠密的结果都能紧凑存放。构建后不可变，可以被多个线程同时读取。
+ */
+public class RowBitmap {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final int ARRAY_MAX = 4096;
+
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    /**
+     * 每个容器的高 16 位，升序
+     */
+    private final char[] keys;
+
+    /**
+     * 数组容器为 char[]，位图容器为 long[]
+     */
+    private final Object[] containers;
+
+    private final int cardinality;
+
+    private RowBitmap(char[] keys, Object[] containers, int cardinality) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinality = cardinality;
+    }
+
+    @Override
+    public String toString() {
+        return "RowBitmap{" +
+                "containers=" + keys.length +
+                ", cardinality=" + cardinality +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    public
+    int getCardinality() {
+        return cardinality;
+    }
+
+    /**
+     * 估计占用的字节数。
+     */
+    public
+    long sizeInBytes() {
+        long size = 32 + 2L * keys.length + 8L * containers.length;
+        for (Object container : containers) {
+            size += 16 + (container instanceof long[] ? 8L * BITMAP_WORDS : 2L * ((char[]) container).length);
+        }
+        return size;
+    }
+
+    /**
+     * 按升序遍历行号的游标，用法：for (int row = cursor.next(); row >= 0; row = cursor.next())
+     */
+    public
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    public class Cursor {
+
+        private int index;
+
+        /**
+         * 数组容器中的下一个位置，或位图容器中的下一个位
+         */
+        private int position;
+
+        /**
+         * 下一个行号，没有时返回 -1。
+         */
+        public
+        int next() {
+            while (index < containers.length) {
+                Object container = containers[index];
+                int high = keys[index] << 16;
+                if(container instanceof char[]) {
+                    char[] array = (char[]) container;
+                    if(position < array.length) {
+                        return high | array[position++];
+                    }
+                } else {
+                    long[] bitmap = (long[]) container;
+                    while (position < BITMAP_WORDS << 6) {
+                        int word = position >>> 6;
+                        long bits = bitmap[word] & (-1L << (position & 63));
+                        if(bits != 0) {
+                            int bit = (word << 6) + Long.numberOfTrailingZeros(bits);
+                            position = bit + 1;
+                            return high | bit;
+                        }
+                        position = (word + 1) << 6;
+                    }
+                }
+                ++index;
+                position = 0;
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * 按升序添加行号构建位图。
+     */
+    public static class Builder {
+
+        private char[] keys = new char[4];
+
+        private Object[] containers = new Object[4];
+
+        private int size;
+
+        private int cardinality;
+
+        /**
+         * 当前块：数组形式，超过 ${ARRAY_MAX} 时转为位图
+         */
+        private char[] array = new char[16];
+
+        private int arraySize;
+
+        private long[] bitmap;
+
+        private int currentKey = -1;
+
+        /**
+         * 添加一个行号，必须大于之前添加的所有行号。
+         */
+        public
+        void add(int row) {
+            int key = row >>> 16;
+            if(key != currentKey) {
+                flush();
+                currentKey = key;
+            }
+            char low = (char) row;
+            if(bitmap != null) {
+                bitmap[low >>> 6] |= 1L << low;
+            } else if(arraySize < ARRAY_MAX) {
+                if(arraySize == array.length) {
+                    array = Arrays.copyOf(array, array.length * 2);
+                }
+                array[arraySize++] = low;
+            } else {
+                bitmap = new long[BITMAP_WORDS];
+                for (int i = 0; i < arraySize; i++) {
+                    bitmap[array[i] >>> 6] |= 1L << array[i];
+                }
+                bitmap[low >>> 6] |= 1L << low;
+            }
+            ++cardinality;
+        }
+
+        public
+        RowBitmap build() {
+            flush();
+            return new RowBitmap(Arrays.copyOf(keys, size), Arrays.copyOf(containers, size), cardinality);
+        }
+
+        private
+        void flush() {
+            if(currentKey < 0) {
+                return;
+            }
+            if(size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            keys[size] = (char) currentKey;
+            containers[size] = bitmap != null ? bitmap : Arrays.copyOf(array, arraySize);
+            ++size;
+            bitmap = null;
+            arraySize = 0;
+            currentKey = -1;
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.team.db.impl;
+
+import com.team.db.DataFile;
+import com.team.db.QueryPlan;
+
+/**
+ * 查询规划的代价模型：每行谓词的相对代价、扫描单元的行数估计，以及并行扫描的门槛。
+ *
+ * 两个谓词短路求值，先求值的谓词对每行求值，后求值的只对前者通过的行求值，
+ * 因此每行的期望代价为 cost(A) + pass(A) * cost(B)，选择率来自表的行采样。
+ */
+final class CostModel {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 文本上每行比较的相对代价（UTF-8 字节比较）
+     */
+    static final double TEXT_COMPARE_COST = 1;
+
+    /**
+     * 文本上每行 like 的相对代价（解码 + 匹配）
+     */
+    static final double TEXT_LIKE_COST = 8;
+
+    /**
+     * 列式段上每行比较的相对代价（编码区间判断）
+     */
+    static final double SEGMENT_COMPARE_COST = 1;
+
+    /**
+     * 列式段上每行 like 的相对代价（按编码查结果数组，每个字典值只匹配一次）
+     */
+    static final double SEGMENT_LIKE_COST = 1.5;
+
+    /**
+     * 估计扫描行数不足该值时不并行扫描，fork/join 的调度开销超过收益
+     */
+    static final long PARALLEL_MIN_ROWS = 1L << 16;
+
+    /**
+     * 无法估计平均行长时假定的行长（字节）
+     */
+    private static final double DEFAULT_ROW_BYTES = 64;
+
+    private CostModel() {
+    }
+
+    /* ====================================== Package ====================================== */
+
+    /**
+     * 每行的期望代价：先求值代价为 ${firstCost}、通过率为 ${firstPass} 的谓词，再求值代价为 ${secondCost} 的谓词。
+     */
+    static
+    double costPerRow(double firstCost, double firstPass, double secondCost) {
+        return firstCost + firstPass * secondCost;
+    }
+
+    /**
+     * 按两种顺序的期望代价选择求值顺序，代价相同时先比较。
+     */
+    static
+    QueryPlan.PredicateOrder chooseOrder(double compareFirstCost, double likeFirstCost) {
+        return compareFirstCost <= likeFirstCost
+                ? QueryPlan.PredicateOrder.COMPARE_FIRST : QueryPlan.PredicateOrder.LIKE_FIRST;
+    }
+
+    /**
+     * 扫描单元的行数：列式段取行号区间；文本文件整体扫描且已知行数时取准确值，否则按平均行长估计。
+     *
+     * @param avgRowBytes 文本文件的平均行长，0 表示未知
+     */
+    static
+    long unitRows(FileRange unit, double avgRowBytes) {
+        if(unit.segment != null) {
+            return Math.max(0, Math.min(unit.to, unit.segment.getRowCount()) - unit.from);
+        }
+        long length = DataFile.lengthOf(unit.file);
+        if(unit.from == 0 && unit.to >= length && unit.file instanceof DataFile
+                && ((DataFile) unit.file).getRowCount() >= 0) {
+            return ((DataFile) unit.file).getRowCount();
+        }
+        long bytes = Math.max(0, Math.min(unit.to, length) - unit.from);
+        return (long) Math.ceil(bytes / (avgRowBytes > 0 ? avgRowBytes : DEFAULT_ROW_BYTES));
+    }
+
+}
@@ -1,13 +1,38 @@
 package com.team.db.impl;
 
 import com.team.db.Database;
+import com.team.db.DatabaseConfig;
 import com.team.db.QueryParam;
+import com.team.db.QueryPlan;
+import com.team.db.RowIterator;
 import com.team.db.Table;
-import com.team.Main;
+import com.team.db.cache.ResultCache;
+import com.team.db.cache.RowBitmap;
+import com.team.db.metrics.MetricsRegistry;
+import com.team.db.metrics.QueryMetrics;
+import com.team.db.stats.TableStatistics;
+import com.team.db.store.CatalogSnapshot;
+import com.team.db.store.ColumnStore;
+import com.team.util.ThreadUtil;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 线程安全：加载完成后可以由多个线程同时查询（见 QueryService）。
+ *  - 表和分区的行数缓存为 ConcurrentHashMap，表的文件布局和抽样用 volatile 延迟构建；
+ *  - 结果缓存、位图缓存和解析缓存内部同步，列式段由 ColumnStore 共享并在内存预算内换入换出；
+ *  - 文本文件每次扫描单独映射，扫描器和游标只属于一次查询；
+ *  - 表文件的变化由后台线程发现：重新加载好的表整体替换旧表，并递增该表的版本号，
+ *    查询线程只读取表和版本号，从不在查询路径上遍历目录或等待重新加载。
+ */
 public class DatabaseImpl implements Database {
 
     /* ====================================== Fields ====================================== */
@@ -22,15 +47,209 @@ public class DatabaseImpl implements Database {
      */
     private final Map<String, Table> tables;
 
-    private DatabaseImpl(File dbDirFile, Map<String, Table> tables) {
+    private final ColumnStore columnStore;
+
+    private final ForkJoinPool scanPool;
+
+    /**
+     * 查询结果缓存，为 null 表示不缓存。键为规范化后的查询参数。
+     */
+    private final ResultCache<QueryParam, Integer> resultCache;
+
+    /**
+     * 比较条件的行号位图缓存，为 null 表示不缓存。
+     */
+    private final ResultCache<PredicateKey, RowBitmap> predicateCache;
+
+    private final long validateMillis;
+
+    private final boolean lazyLoad;
+
+    /**
+     * 目录快照文件，为 null 表示不使用快照
+     */
+    private final File catalogFile;
+
+    /**
+     * 查询串 -> 解析结果，为 null 表示不缓存
+     */
+    private final ResultCache<String, QueryParam> parseCache;
+
+    /**
+     * 查询指标，为 null 表示不记录
+     */
+    private final MetricsRegistry metrics;
+
+    /**
+     * 列统计目录，为 null 表示不持久化列统计
+     */
+    private final File statsDir;
+
+    /**
+     * 表名 -> 表的版本，用于发现表文件的变化
+     */
+    private final Map<String, TableVersion> tableVersions = new ConcurrentHashMap<>();
+
+    /**
+     * 定期检查表文件变化的后台线程，没有表或检查间隔为 0 时为 null
+     */
+    private final ScheduledExecutorService refresher;
+
+    private DatabaseImpl(File dbDirFile, Map<String, Table> tables, ColumnStore columnStore,
+                         ForkJoinPool scanPool, ResultCache<PredicateKey, RowBitmap> predicateCache,
+                         DatabaseConfig config) {
         this.dbDirFile = dbDirFile;
         this.tables = tables;
+        this.columnStore = columnStore;
+        this.scanPool = scanPool;
+        this.resultCache = config.getResultCacheSize() == 0 ? null : new ResultCache<>(
+                config.getResultCachePolicy(), config.getResultCacheSize(), config.getResultCacheBytes(),
+                (queryParam, count) -> weigh(queryParam));
+        this.predicateCache = predicateCache;
+        this.parseCache = config.getParseCacheSize() == 0 ? null : new ResultCache<>(
+                ResultCache.Policy.LRU, config.getParseCacheSize(), Long.MAX_VALUE, (param, queryParam) -> 1);
+        this.validateMillis = config.getResultCacheValidateMillis();
+        this.lazyLoad = config.isLazyLoad();
+        this.catalogFile = config.getCatalogFile();
+        this.metrics = config.isMetricsEnabled() ? new MetricsRegistry() : null;
+        this.statsDir = config.getStatsDir();
+        /*
+         * 表的基线就是加载时记录的分区布局（或目录快照），不需要再遍历表目录。
+         * 不论是否配置了缓存都检查：分区布局只加载一次，不检查就看不到增删或改写的文件。
+         */
+        for (String tableName : tables.keySet()) {
+            tableVersions.put(tableName, new TableVersion());
+        }
+        if(!tableVersions.isEmpty() && validateMillis > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(ThreadUtil.daemonThreads("table-refresher-"));
+            refresher.scheduleWithFixedDelay(() -> {
+                try {
+                    refresh();
+                } catch (Throwable e) {
+                    /* 异常会取消周期任务，记录后等待下一次检查 */
+                    e.printStackTrace();
+                }
+            }, validateMillis, validateMillis, TimeUnit.MILLISECONDS);
+        } else {
+            refresher = null;
+        }
     }
 
     public Map<String, Table> getTables() {
         return tables;
     }
 
+    /**
+     * 把所有表当前的分区树和文件列表写入目录快照。延迟加载且尚未加载的表写回读入的条目，
+     * 没有条目的会先被加载。
+     */
+    public
+    void saveCatalog() throws IOException {
+        if(catalogFile == null) {
+            return;
+        }
+        List<CatalogSnapshot.TableEntry> entries = new ArrayList<>(tables.size());
+        for (Table table : tables.values()) {
+            entries.add(((TableImpl) table).snapshot());
+        }
+        CatalogSnapshot.write(catalogFile, entries);
+    }
+
+    /**
+     * 检查所有表的文件是否变化：变化的表重新加载后整体替换旧表，递增该表的版本号，
+     * 并使该表所有缓存的结果和比较条件位图失效。
+     *
+     * 由后台线程每隔 ${validateMillis} 调用一次，也可以在已知数据变化后直接调用；
+     * 查询不等待检查，检查和重新加载期间仍使用旧表。
+     */
+    public synchronized
+    void refresh() {
+        for (Map.Entry<String, TableVersion> entry : tableVersions.entrySet()) {
+            String tableName = entry.getKey();
+            TableVersion version = entry.getValue();
+            TableImpl table = (TableImpl) tables.get(tableName);
+            if(table.isCurrent()) {
+                continue;
+            }
+            /* 列统计只用于估计，沿用到下次 analyze() 时增量更新。 */
+            TableImpl reloaded = new TableImpl(table.getTableDirFile(), columnStore, scanPool, predicateCache,
+                    null, lazyLoad);
+            reloaded.setStatistics(table.getStatistics());
+            tables.put(tableName, reloaded);
+            /* 先递增版本号再失效：失效之后才写入的旧结果会被写入者发现并删除。 */
+            ++version.generation;
+            if(resultCache != null) {
+                resultCache.invalidateIf(queryParam -> queryParam.getTable().equals(tableName));
+            }
+            if(predicateCache != null) {
+                predicateCache.invalidateIf(key -> key.getTable().equals(tableName));
+            }
+        }
+    }
+
+    /**
+     * 停止检查表文件变化的后台线程；快照中缺少查询期间才得到的内容（延迟加载的布局、重新加载的表、
+     * 统计得到的文件行数）时重写目录快照，下次启动不必重新遍历和计数。
+     */
+    public
+    void close() {
+        if(refresher != null) {
+            refresher.shutdownNow();
+        }
+        if(catalogFile != null && tables.values().stream().anyMatch(table -> ((TableImpl) table).isCatalogChanged())) {
+            try {
+                saveCatalog();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 收集所有表的列统计（ANALYZE）：每张表只重新扫描数据有变化的单元，配置了统计目录时写入统计文件。
+     */
+    public
+    void analyze() throws IOException {
+        for (Map.Entry<String, Table> entry : tables.entrySet()) {
+            TableStatistics statistics = ((TableImpl) entry.getValue()).analyze();
+            if(statsDir != null) {
+                statistics.write(statsFile(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * 查询指标，未开启时返回 null。
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public ColumnStore getColumnStore() {
+        return columnStore;
+    }
+
+    /**
+     * 查询结果缓存，用于获取命中 / 未命中计数，未开启时返回 null。
+     */
+    public ResultCache<QueryParam, Integer> getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * 比较条件的行号位图缓存，未开启时返回 null。
+     */
+    public ResultCache<PredicateKey, RowBitmap> getPredicateCache() {
+        return predicateCache;
+    }
+
+    /**
+     * 查询串的解析缓存，未开启时返回 null。
+     */
+    public ResultCache<String, QueryParam> getParseCache() {
+        return parseCache;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder(1024);
@@ -44,22 +263,105 @@ public class DatabaseImpl implements Database {
 
     @Override
     public List<String> query(String param) {
-        return new ArrayList<>(0);
+        List<String> rows = new ArrayList<>();
+        query(param, -1, rows::add);
+        return rows;
+    }
+
+    @Override
+    public RowIterator rows(String param, long limit) {
+        QueryParam queryParam = parse(param);
+        return tables.get(queryParam.getTable()).rows(queryParam, limit);
     }
 
     @Override
     public int matchesCount(String param) {
-        QueryParam queryParam = QueryParam.valueOf(param);
-        if(Main.LOCAL) {
-            System.out.println(queryParam);
-            System.out.println();
+        if(metrics == null) {
+            return matchesCount(parse(param), null);
         }
 
-        return tables.get(queryParam.getTable()).matchesCount(queryParam);
+        QueryMetrics queryMetrics = new QueryMetrics(param);
+        long startNs = System.nanoTime();
+        QueryParam queryParam = parse(param);
+        queryMetrics.setParseNanos(System.nanoTime() - startNs);
+        int count = matchesCount(queryParam, queryMetrics);
+        queryMetrics.setResult(count);
+        queryMetrics.setTotalNanos(System.nanoTime() - startNs);
+        metrics.record(queryMetrics);
+        return count;
+    }
+
+    @Override
+    public QueryPlan explain(String param) {
+        QueryParam queryParam = parse(param);
+        QueryPlan plan = tables.get(queryParam.getTable()).explain(queryParam);
+        return resultCache != null && resultCache.containsKey(queryParam) ? plan.cached() : plan;
+    }
+
+    @Override
+    public int[] matchesCounts(List<String> params) {
+        long startNs = metrics == null ? 0 : System.nanoTime();
+        /* 去重：规范化后相同的查询只计算一次。 */
+        Map<QueryParam, Integer> distinct = new LinkedHashMap<>();
+        int[] distinctIndex = new int[params.size()];
+        for (int i = 0; i < params.size(); i++) {
+            QueryParam queryParam = parse(params.get(i));
+            Integer index = distinct.get(queryParam);
+            if(index == null) {
+                distinct.put(queryParam, index = distinct.size());
+            }
+            distinctIndex[i] = index;
+        }
+        long parseNanos = metrics == null ? 0 : System.nanoTime() - startNs;
+
+        /* 按表分组，同一张表的查询共享一次扫描，已缓存的查询不再扫描。 */
+        int[] distinctCounts = new int[distinct.size()];
+        Map<String, List<QueryParam>> tableQueries = new LinkedHashMap<>();
+        Map<String, List<Integer>> tableQueryIndexes = new HashMap<>();
+        int index = 0;
+        for (QueryParam queryParam : distinct.keySet()) {
+            Integer cached;
+            if(resultCache != null) {
+                if((cached = resultCache.get(queryParam)) != null) {
+                    distinctCounts[index++] = cached;
+                    continue;
+                }
+            }
+            tableQueries.computeIfAbsent(queryParam.getTable(), k -> new ArrayList<>()).add(queryParam);
+            tableQueryIndexes.computeIfAbsent(queryParam.getTable(), k -> new ArrayList<>()).add(index++);
+        }
+
+        for (Map.Entry<String, List<QueryParam>> entry : tableQueries.entrySet()) {
+            TableVersion version = tableVersions.get(entry.getKey());
+            long generation = version == null ? 0 : version.generation;
+            int[] counts = tables.get(entry.getKey()).matchesCounts(entry.getValue());
+            List<Integer> indexes = tableQueryIndexes.get(entry.getKey());
+            for (int i = 0; i < counts.length; i++) {
+                distinctCounts[indexes.get(i)] = counts[i];
+                if(resultCache != null) {
+                    cacheResult(entry.getValue().get(i), counts[i], version, generation);
+                }
+            }
+        }
+
+        /* 按输入顺序返回。 */
+        int[] ans = new int[params.size()];
+        for (int i = 0; i < ans.length; i++) {
+            ans[i] = distinctCounts[distinctIndex[i]];
+        }
+        if(metrics != null) {
+            metrics.recordBatch(params.size(), parseNanos, System.nanoTime() - startNs);
+        }
+        return ans;
     }
 
     public static
     Database load(String dbDir) {
+        return load(dbDir, new DatabaseConfig());
+    }
+
+    public static
+    Database load(String dbDir, DatabaseConfig config) {
         /* 加载所有表 */
         File dbDirFile;
         if( !(dbDirFile = new File(dbDir)).exists() || !dbDirFile.isDirectory() ) {
@@ -68,17 +370,144 @@ public class DatabaseImpl implements Database {
 
         File[] tableDirFiles;
         if( (tableDirFiles = dbDirFile.listFiles()) == null || tableDirFiles.length == 0 ) {
-            return new DatabaseImpl(dbDirFile, Collections.emptyMap());
+            return new DatabaseImpl(dbDirFile, Collections.emptyMap(), null, null, null, config);
         }
 
-        Map<String, Table> tables = new HashMap<>(tableDirFiles.length);
+        /* 配置了列式存储目录时，加载时一次性将数据转换为列式段文件。 */
+        ColumnStore columnStore = config.getStoreDir() == null ? null
+                : new ColumnStore(config.getStoreDir(), config.getStoreMemoryBytes());
+        /* 所有表共享一个并行扫描线程池。 */
+        ForkJoinPool scanPool = config.getParallelism() > 1 ? new ForkJoinPool(config.getParallelism()) : null;
+        /* 所有表共享一个比较条件位图缓存，受内存预算限制。 */
+        ResultCache<PredicateKey, RowBitmap> predicateCache = config.getPredicateCacheBytes() == 0 ? null
+                : new ResultCache<>(ResultCache.Policy.LRU, Integer.MAX_VALUE, config.getPredicateCacheBytes(),
+                (key, rows) -> 128 + rows.sizeInBytes());
+
+        /* 有目录快照时，表的分区树和文件列表在校验有效后直接取自快照。 */
+        Map<String, CatalogSnapshot.TableEntry> catalog = config.getCatalogFile() == null
+                ? Collections.emptyMap() : CatalogSnapshot.read(config.getCatalogFile(), dbDirFile);
+
+        /* 配置了线程池时多张表并行加载，每张表内各分区子树也并行加载。 */
+        Map<String, Table> tables = new ConcurrentHashMap<>(tableDirFiles.length);
+        List<ForkJoinTask<?>> loadTasks = new ArrayList<>(tableDirFiles.length);
         for (File tableDirFile : tableDirFiles) {
             if(tableDirFile.isDirectory()) {
-                tables.put(tableDirFile.getName(), new TableImpl(tableDirFile));
+                Runnable loadTable = () -> tables.put(tableDirFile.getName(), new TableImpl(
+                        tableDirFile, columnStore, scanPool, predicateCache,
+                        catalog.get(tableDirFile.getName()), config.isLazyLoad()));
+                if(scanPool == null || config.isLazyLoad()) {
+                    loadTable.run();
+                } else {
+                    loadTasks.add(scanPool.submit(loadTable));
+                }
+            }
+        }
+        for (ForkJoinTask<?> loadTask : loadTasks) {
+            loadTask.join();
+        }
+
+        DatabaseImpl database = new DatabaseImpl(dbDirFile, tables, columnStore, scanPool, predicateCache, config);
+        /* 读取上次收集的列统计，供查询规划估计选择率。 */
+        if(config.getStatsDir() != null) {
+            for (Map.Entry<String, Table> entry : tables.entrySet()) {
+                ((TableImpl) entry.getValue()).setStatistics(TableStatistics.read(database.statsFile(entry.getKey())));
+            }
+        }
+        /* 快照缺失或有表的快照失效时重写快照；延迟加载的表在首次查询时才加载，由 close() 写入。 */
+        if(config.getCatalogFile() != null && !config.isLazyLoad() && (catalog.size() != tables.size()
+                || !tables.values().stream().allMatch(table -> ((TableImpl) table).isLoadedFromSnapshot()))) {
+            try {
+                database.saveCatalog();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return database;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 解析查询串：最近解析过的查询串直接复用不可变的解析结果，不再分词和编译 like 模式串。
+     */
+    private
+    QueryParam parse(String param) {
+        if(parseCache == null) {
+            return QueryParam.valueOf(param);
+        }
+        QueryParam queryParam = parseCache.get(param);
+        if(queryParam == null && (queryParam = QueryParam.valueOf(param)) != null) {
+            parseCache.put(param, queryParam);
+        }
+        return queryParam;
+    }
+
+    /**
+     * 执行一个已解析的查询：先查结果缓存，未命中时由表计算。
+     */
+    private
+    int matchesCount(QueryParam queryParam, QueryMetrics queryMetrics) {
+        TableVersion version = tableVersions.get(queryParam.getTable());
+        long generation = version == null ? 0 : version.generation;
+        Table table = tables.get(queryParam.getTable());
+        if(resultCache == null) {
+            return table.matchesCount(queryParam, queryMetrics);
+        }
+
+        Integer count = resultCache.get(queryParam);
+        if(count != null) {
+            if(queryMetrics != null) {
+                queryMetrics.setPlanPath(QueryMetrics.PlanPath.CACHED);
             }
+            return count;
         }
+        count = table.matchesCount(queryParam, queryMetrics);
+        cacheResult(queryParam, count, version, generation);
+        return count;
+    }
+
+    /**
+     * 缓存查询结果。计算期间表被重新加载（版本号变化）时删除刚写入的结果：
+     * 重新加载先递增版本号再失效缓存，因此无论写入发生在失效之前还是之后，旧结果都不会留在缓存中。
+     *
+     * @param generation 计算开始前读取的表版本号
+     */
+    private
+    void cacheResult(QueryParam queryParam, int count, TableVersion version, long generation) {
+        resultCache.put(queryParam, count);
+        if(version != null && version.generation != generation) {
+            resultCache.invalidate(queryParam);
+        }
+    }
+
+    /**
+     * 表的列统计文件。
+     */
+    private
+    File statsFile(String tableName) {
+        return new File(statsDir, tableName + ".stats");
+    }
+
+    /**
+     * 缓存条目的估计开销（字节）。
+     */
+    private static
+    long weigh(QueryParam queryParam) {
+        long chars = queryParam.getTable().length() + queryParam.getCompareColumn().length()
+                + queryParam.getCompareValue().length() + queryParam.getLikeColumn().length();
+        for (String likeParam : queryParam.getLikeParams()) {
+            chars += likeParam.length();
+        }
+        return 256 + 2 * chars + 512L * queryParam.getLikeParams().length;
+    }
+
+    /**
+     * 表的版本：版本号在每次重新加载后递增，查询线程只读取版本号。
+     */
+    private static class TableVersion {
+
+        volatile long generation;
 
-        return new DatabaseImpl(dbDirFile, tables);
     }
 
 }
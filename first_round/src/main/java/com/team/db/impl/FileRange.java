@@ -0,0 +1,42 @@
+package com.team.db.impl;
+
+import com.team.db.store.ColumnSegment;
+
+import java.io.File;
+
+/**
+ * 一个扫描单元：数据文件的一段。
+ *
+ * 文本文件按字节划分 [from, to)，边界按行对齐（由扫描器处理）；
+ * 已转换为列式段的文件按行号划分 [from, to)。
+ */
+class FileRange {
+
+    final File file;
+
+    /**
+     * 文件对应的列式段，为 null 表示扫描文本文件
+     */
+    final ColumnSegment segment;
+
+    final long from;
+
+    final long to;
+
+    FileRange(File file, ColumnSegment segment, long from, long to) {
+        this.file = file;
+        this.segment = segment;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public String toString() {
+        return "FileRange{" +
+                "file=" + file +
+                ", from=" + from +
+                ", to=" + to +
+                '}';
+    }
+
+}
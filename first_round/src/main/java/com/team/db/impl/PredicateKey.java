@@ -0,0 +1,89 @@
+package com.team.db.impl;
+
+import com.team.db.DataFile;
+import com.team.db.QueryParam;
+
+import java.util.Objects;
+
+/**
+ * 比较条件位图缓存的键：(表, 列, 操作符, 比较值) 在一个扫描单元上的结果。
+ *
+ * 行号在扫描单元内从 0 开始编号。扫描单元由数据文件和 [from, to) 唯一确定，
+ * 拆分大小固定，所以同一张表的行号是稳定的。
+ *
+ * 键中包含数据文件加载时的大小和修改时间：文件被改写后，即使旧表的扫描在失效之后才写入位图，
+ * 也不会被新表的查询命中。
+ */
+public class PredicateKey {
+
+    private final String table;
+
+    private final int column;
+
+    private final QueryParam.CompareType compareType;
+
+    private final String compareValue;
+
+    private final String file;
+
+    private final long fileLength;
+
+    private final long fileLastModified;
+
+    private final long from;
+
+    private final long to;
+
+    PredicateKey(String table, int column, QueryParam.CompareType compareType, String compareValue, FileRange unit) {
+        this.table = table;
+        this.column = column;
+        this.compareType = compareType;
+        this.compareValue = compareValue;
+        this.file = unit.file.getPath();
+        this.fileLength = DataFile.lengthOf(unit.file);
+        this.fileLastModified = DataFile.modifiedOf(unit.file);
+        this.from = unit.from;
+        this.to = unit.to;
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PredicateKey that = (PredicateKey) o;
+        return column == that.column &&
+                from == that.from &&
+                to == that.to &&
+                fileLength == that.fileLength &&
+                fileLastModified == that.fileLastModified &&
+                compareType == that.compareType &&
+                table.equals(that.table) &&
+                compareValue.equals(that.compareValue) &&
+                file.equals(that.file);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(table, column, compareType, compareValue, file, fileLength, fileLastModified, from, to);
+    }
+
+    @Override
+    public String toString() {
+        return "PredicateKey{" +
+                "table='" + table + '\'' +
+                ", column" + column + " " + compareType + " '" + compareValue + '\'' +
+                ", file='" + file + '\'' +
+                ", from=" + from +
+                ", to=" + to +
+                '}';
+    }
+
+}
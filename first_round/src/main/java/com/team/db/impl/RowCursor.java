@@ -0,0 +1,268 @@
+package com.team.db.impl;
+
+import com.team.db.QueryParam;
+import com.team.db.RowIterator;
+import com.team.db.like.LikeMatcher;
+import com.team.db.store.ColumnSegment;
+import com.team.db.store.DictionaryFilter;
+import com.team.db.store.MappedRowScanner;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 流式查询的游标：按顺序逐个打开扫描单元，每次 hasNext() 只向前扫描到下一个满足条件的行。
+ *
+ * 任意时刻只打开一个单元（文本文件的扫描器或列式段上的过滤器），只持有一行待返回的结果，
+ * 因此堆占用与结果的行数无关。达到行数上限或被关闭时立即关闭当前单元，剩余的单元不再打开。
+ *
+ * 谓词与计数路径相同：文本文件在 UTF-8 字节上比较、解码后 like，列式段上按字典值求值，
+ * 求值顺序由查询规划决定。
+ */
+final class RowCursor implements RowIterator {
+
+    /* ====================================== Fields ====================================== */
+
+    private final List<FileRange> units;
+
+    /**
+     * 比较列，-1 表示比较条件已在分区上判断
+     */
+    private final int cmpCol;
+
+    private final QueryParam.CompareType cmpType;
+
+    private final byte[] cmpKey;
+
+    /**
+     * like 匹配列，-1 表示 like 条件已在分区上判断
+     */
+    private final int likeCol;
+
+    private final LikeMatcher likeMatcher;
+
+    private final boolean likeFirst;
+
+    /**
+     * 最多返回的行数，小于 0 表示不限制
+     */
+    private final long limit;
+
+    /**
+     * 文本扫描器需要定位的列，以及比较列和 like 列在其中的位置
+     */
+    private final int[] columns;
+
+    private final int cmpSlot;
+
+    private final int likeSlot;
+
+    /**
+     * 下一个要打开的单元
+     */
+    private int unitIndex;
+
+    /**
+     * 当前打开的文本单元，为 null 表示当前单元不是文本文件
+     */
+    private MappedRowScanner scanner;
+
+    /**
+     * 当前打开的列式段单元及其过滤器、下一行和结束行
+     */
+    private ColumnSegment segment;
+
+    private DictionaryFilter filter;
+
+    private int row;
+
+    private int rowEnd;
+
+    /**
+     * 列式段上拼接行的缓冲
+     */
+    private final StringBuilder rowBuilder = new StringBuilder(128);
+
+    /**
+     * 已找到但还未返回的行
+     */
+    private String pending;
+
+    private long returned;
+
+    private boolean closed;
+
+    /**
+     * @param likeFirst 两个谓词都在列上时是否先判断 like 条件
+     */
+    RowCursor(List<FileRange> units, int cmpCol, QueryParam.CompareType cmpType, byte[] cmpKey,
+              int likeCol, LikeMatcher likeMatcher, boolean likeFirst, long limit) {
+        this.units = units;
+        this.cmpCol = cmpCol;
+        this.cmpType = cmpType;
+        this.cmpKey = cmpKey;
+        this.likeCol = likeCol;
+        this.likeMatcher = likeMatcher;
+        this.likeFirst = likeFirst;
+        this.limit = limit;
+        if(cmpCol >= 0 && likeCol >= 0) {
+            columns = new int[]{cmpCol, likeCol};
+            cmpSlot = 0;
+            likeSlot = 1;
+        } else if(cmpCol >= 0) {
+            columns = new int[]{cmpCol};
+            cmpSlot = 0;
+            likeSlot = -1;
+        } else if(likeCol >= 0) {
+            columns = new int[]{likeCol};
+            cmpSlot = -1;
+            likeSlot = 0;
+        } else {
+            columns = new int[]{0};
+            cmpSlot = -1;
+            likeSlot = -1;
+        }
+    }
+
+    /* ====================================== Public ====================================== */
+
+    @Override
+    public
+    boolean hasNext() {
+        if(pending != null) {
+            return true;
+        }
+        if(closed) {
+            return false;
+        }
+        if(limit >= 0 && returned >= limit) {
+            close();
+            return false;
+        }
+        pending = advance();
+        if(pending == null) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public
+    String next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String next = pending;
+        pending = null;
+        ++returned;
+        return next;
+    }
+
+    @Override
+    public
+    void close() {
+        closed = true;
+        segment = null;
+        filter = null;
+        closeScanner();
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 向前扫描到下一个满足条件的行，当前单元扫描完后打开下一个单元。
+     *
+     * @return 所有单元都扫描完时返回 null
+     */
+    private
+    String advance() {
+        while (true) {
+            if(segment != null) {
+                while (row < rowEnd) {
+                    int current = row++;
+                    if(filter.matches(current)) {
+                        return segmentRow(current);
+                    }
+                }
+                segment = null;
+                filter = null;
+            }
+            if(scanner != null) {
+                try {
+                    while (scanner.next()) {
+                        if(likeFirst ? likeMatches() && compareMatches() : compareMatches() && likeMatches()) {
+                            return scanner.decodeRow();
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                closeScanner();
+            }
+            if(unitIndex >= units.size()) {
+                return null;
+            }
+            open(units.get(unitIndex++));
+        }
+    }
+
+    private
+    void open(FileRange unit) {
+        if(unit.segment != null) {
+            DictionaryFilter unitFilter = new DictionaryFilter(unit.segment, cmpCol, cmpType, cmpKey,
+                    likeCol, likeMatcher, likeFirst);
+            if(!unitFilter.isEmpty()) {
+                segment = unit.segment;
+                filter = unitFilter;
+                row = (int) unit.from;
+                rowEnd = (int) Math.min(unit.to, unit.segment.getRowCount());
+            }
+            return;
+        }
+        try {
+            scanner = new MappedRowScanner(unit.file, unit.from, unit.to, columns);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private
+    boolean compareMatches() {
+        return cmpSlot < 0 || RowPipeline.compare(scanner, cmpSlot, cmpType, cmpKey);
+    }
+
+    private
+    boolean likeMatches() {
+        return likeSlot < 0 || likeMatcher.matches(scanner.decode(likeSlot));
+    }
+
+    /**
+     * 由列式段各列的值以 '|' 拼接出一行。
+     */
+    private
+    String segmentRow(int segmentRow) {
+        rowBuilder.setLength(0);
+        for (int c = 0; c < segment.getColumnCount(); c++) {
+            if(c > 0) {
+                rowBuilder.append('|');
+            }
+            rowBuilder.append(segment.getValue(c, segmentRow));
+        }
+        return rowBuilder.toString();
+    }
+
+    private
+    void closeScanner() {
+        if(scanner != null) {
+            try {
+                scanner.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            scanner = null;
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+package com.team.db.impl;
+
+import com.team.db.DataFile;
+import com.team.db.QueryParam;
+import com.team.db.QueryPlan;
+import com.team.db.cache.RowBitmap;
+import com.team.db.like.LikeMatcher;
+import com.team.db.metrics.QueryMetrics;
+import com.team.db.store.MappedRowScanner;
+
+import java.io.IOException;
+
+/**
+ * 文本扫描单元上的单遍谓词流水线：扫描 -> 比较过滤 -> like 过滤 -> 计数。
+ *
+ * 每行依次流经两个谓词，只保留一个计数器，不物化任何中间结果，
+ * 因此每个查询的堆占用是常量，与分区和文件的大小无关。
+ *
+ * 两个谓词的先后顺序通常由查询规划按表的行采样决定（见 CostModel）。没有统计信息时（ADAPTIVE），
+ * 前 ${SAMPLE_ROWS} 行对两个谓词都求值，统计各自的通过率，之后选择期望代价较小的顺序：
+ * 比较直接在 UTF-8 字节上进行，代价低；like 需要先解码列值，代价高。
+ */
+final class RowPipeline {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 用于估计通过率的采样行数
+     */
+    private static final int SAMPLE_ROWS = 1024;
+
+    private RowPipeline() {
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 统计文本扫描单元中满足条件的行数。
+     *
+     * @param cmpCol 为 -1 表示比较条件已在分区上判断
+     * @param likeCol 为 -1 表示 like 条件已在分区上判断
+     * @param order 两个谓词都在列上时的求值顺序
+     * @param metrics 查询指标，为 null 表示不记录
+     */
+    static
+    int count(FileRange unit, int cmpCol, QueryParam.CompareType cmpType, byte[] cmpKey,
+              int likeCol, LikeMatcher likeMatcher, QueryPlan.PredicateOrder order, QueryMetrics metrics) {
+        int[] columns;
+        int cmpSlot = -1, likeSlot = -1;
+        if(cmpCol >= 0 && likeCol >= 0) {
+            columns = new int[]{cmpCol, likeCol};
+            cmpSlot = 0;
+            likeSlot = 1;
+        } else if(cmpCol >= 0) {
+            columns = new int[]{cmpCol};
+            cmpSlot = 0;
+        } else if(likeCol >= 0) {
+            columns = new int[]{likeCol};
+            likeSlot = 0;
+        } else {
+            columns = new int[]{0};
+        }
+
+        /* 每个谓词求值和通过的行数只用局部计数器累加，扫描结束后才交给指标。 */
+        int matchedCount = 0, rows = 0;
+        int cmpEvaluated = 0, cmpPassed = 0, likeEvaluated = 0, likePassed = 0;
+        try (MappedRowScanner scanner = new MappedRowScanner(unit.file, unit.from, unit.to, columns)) {
+            if(cmpSlot < 0 || likeSlot < 0) {
+                /* 只有一个谓词，不需要排序。 */
+                while (scanner.next()) {
+                    ++rows;
+                    if(cmpSlot >= 0 ? compare(scanner, cmpSlot, cmpType, cmpKey)
+                            : likeSlot < 0 || likeMatcher.matches(scanner.decode(likeSlot))) {
+                        ++matchedCount;
+                    }
+                }
+                if(cmpSlot >= 0) {
+                    cmpEvaluated = rows;
+                    cmpPassed = matchedCount;
+                } else if(likeSlot >= 0) {
+                    likeEvaluated = rows;
+                    likePassed = matchedCount;
+                }
+            } else {
+                boolean more = scanner.next();
+                boolean likeFirst = order == QueryPlan.PredicateOrder.LIKE_FIRST;
+                if(order == QueryPlan.PredicateOrder.ADAPTIVE) {
+                    /* 采样阶段：两个谓词都求值，统计通过率。 */
+                    int sampled = 0, sampleCmpPassed = 0, sampleLikePassed = 0;
+                    for (; more && sampled < SAMPLE_ROWS; more = scanner.next()) {
+                        boolean cmpMatched = compare(scanner, cmpSlot, cmpType, cmpKey);
+                        boolean likeMatched = likeMatcher.matches(scanner.decode(likeSlot));
+                        ++sampled;
+                        if(cmpMatched) {
+                            ++sampleCmpPassed;
+                        }
+                        if(likeMatched) {
+                            ++sampleLikePassed;
+                        }
+                        if(cmpMatched && likeMatched) {
+                            ++matchedCount;
+                        }
+                    }
+                    rows = cmpEvaluated = likeEvaluated = sampled;
+                    cmpPassed = sampleCmpPassed;
+                    likePassed = sampleLikePassed;
+                    if(sampled > 0) {
+                        likeFirst = CostModel.chooseOrder(
+                                CostModel.costPerRow(CostModel.TEXT_COMPARE_COST,
+                                        (double) sampleCmpPassed / sampled, CostModel.TEXT_LIKE_COST),
+                                CostModel.costPerRow(CostModel.TEXT_LIKE_COST,
+                                        (double) sampleLikePassed / sampled, CostModel.TEXT_COMPARE_COST))
+                                == QueryPlan.PredicateOrder.LIKE_FIRST;
+                    }
+                }
+
+                if(more) {
+                    /* 剩余的行流过排好序的谓词（当前行已由 next() 定位）。 */
+                    int rest = 0, firstPassed = 0, sampleMatched = matchedCount;
+                    if(!likeFirst) {
+                        do {
+                            ++rest;
+                            if(compare(scanner, cmpSlot, cmpType, cmpKey)) {
+                                ++firstPassed;
+                                if(likeMatcher.matches(scanner.decode(likeSlot))) {
+                                    ++matchedCount;
+                                }
+                            }
+                        } while (scanner.next());
+                        cmpEvaluated += rest;
+                        cmpPassed += firstPassed;
+                        likeEvaluated += firstPassed;
+                        likePassed += matchedCount - sampleMatched;
+                    } else {
+                        do {
+                            ++rest;
+                            if(likeMatcher.matches(scanner.decode(likeSlot))) {
+                                ++firstPassed;
+                                if(compare(scanner, cmpSlot, cmpType, cmpKey)) {
+                                    ++matchedCount;
+                                }
+                            }
+                        } while (scanner.next());
+                        likeEvaluated += rest;
+                        likePassed += firstPassed;
+                        cmpEvaluated += firstPassed;
+                        cmpPassed += matchedCount - sampleMatched;
+                    }
+                    rows += rest;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if(metrics != null) {
+            metrics.recordScan(rows, bytesOf(unit), cmpEvaluated, cmpPassed, likeEvaluated, likePassed);
+        }
+        return matchedCount;
+    }
+
+    /**
+     * 先比较后 like 地计数，同时把通过比较的行号（单元内从 0 开始）记录到 ${rows} 中，供之后的查询复用。
+     */
+    static
+    int countRecording(FileRange unit, int cmpCol, QueryParam.CompareType cmpType, byte[] cmpKey,
+                       int likeCol, LikeMatcher likeMatcher, RowBitmap.Builder rows, QueryMetrics metrics) {
+        int[] columns = likeCol < 0 ? new int[]{cmpCol} : new int[]{cmpCol, likeCol};
+        int matchedCount = 0, row = 0, cmpPassed = 0;
+        try (MappedRowScanner scanner = new MappedRowScanner(unit.file, unit.from, unit.to, columns)) {
+            for (; scanner.next(); row++) {
+                if(compare(scanner, 0, cmpType, cmpKey)) {
+                    rows.add(row);
+                    ++cmpPassed;
+                    if(likeCol < 0 || likeMatcher.matches(scanner.decode(1))) {
+                        ++matchedCount;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if(metrics != null) {
+            metrics.recordScan(row, bytesOf(unit), row, cmpPassed,
+                    likeCol < 0 ? 0 : cmpPassed, likeCol < 0 ? 0 : matchedCount);
+        }
+        return matchedCount;
+    }
+
+    /**
+     * 比较条件的结果已缓存：只对缓存的行判断 like 条件，其余行只定位行尾，不提取列。
+     */
+    static
+    int countRows(FileRange unit, RowBitmap rows, int likeCol, LikeMatcher likeMatcher, QueryMetrics metrics) {
+        if(likeCol < 0) {
+            if(metrics != null) {
+                metrics.matchWithoutScan(rows.getCardinality());
+            }
+            return rows.getCardinality();
+        }
+        int matchedCount = 0, row = 0;
+        RowBitmap.Cursor cursor = rows.cursor();
+        int next = cursor.next();
+        try (MappedRowScanner scanner = new MappedRowScanner(unit.file, unit.from, unit.to, new int[]{likeCol})) {
+            for (; next >= 0 && scanner.next(); row++) {
+                if(row == next) {
+                    if(likeMatcher.matches(scanner.decode(0))) {
+                        ++matchedCount;
+                    }
+                    next = cursor.next();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if(metrics != null) {
+            metrics.recordScan(row, bytesOf(unit), 0, 0, rows.getCardinality(), matchedCount);
+        }
+        return matchedCount;
+    }
+
+    /**
+     * 在 UTF-8 字节上判断比较条件。
+     */
+    static
+    boolean compare(MappedRowScanner scanner, int slot, QueryParam.CompareType cmpType, byte[] cmpKey) {
+        switch (cmpType) {
+            case equals:
+                return scanner.equals(slot, cmpKey);
+            case notEquals:
+                return !scanner.equals(slot, cmpKey);
+            default:
+                return TableImpl.compareResult(scanner.compare(slot, cmpKey), cmpType);
+        }
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 文本扫描单元的字节数。
+     */
+    private static
+    long bytesOf(FileRange unit) {
+        return Math.max(0, Math.min(unit.to, DataFile.lengthOf(unit.file)) - unit.from);
+    }
+
+}
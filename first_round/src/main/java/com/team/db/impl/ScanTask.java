@@ -0,0 +1,51 @@
+package com.team.db.impl;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * 并行扫描任务：对半拆分扫描单元，每个叶子任务在本地计数，最后汇总。
+ */
+class ScanTask<T, R> extends RecursiveTask<R> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<T> units;
+
+    private final int from;
+
+    private final int to;
+
+    private final Function<T, R> counter;
+
+    private final BinaryOperator<R> merger;
+
+    ScanTask(List<T> units, Function<T, R> counter, BinaryOperator<R> merger) {
+        this(units, 0, units.size(), counter, merger);
+    }
+
+    private ScanTask(List<T> units, int from, int to, Function<T, R> counter, BinaryOperator<R> merger) {
+        this.units = units;
+        this.from = from;
+        this.to = to;
+        this.counter = counter;
+        this.merger = merger;
+    }
+
+    @Override
+    protected R compute() {
+        if(to - from == 1) {
+            return counter.apply(units.get(from));
+        }
+
+        int mid = (from + to) >>> 1;
+        ScanTask<T, R> left = new ScanTask<>(units, from, mid, counter, merger);
+        ScanTask<T, R> right = new ScanTask<>(units, mid, to, counter, merger);
+        left.fork();
+        R rightResult = right.compute();
+        return merger.apply(left.join(), rightResult);
+    }
+
+}
@@ -0,0 +1,285 @@
+package com.team.db.impl;
+
+import com.team.db.QueryParam;
+import com.team.db.like.LikeMatcher;
+import com.team.db.store.ColumnSegment;
+import com.team.db.store.DictionaryFilter;
+import com.team.db.store.MappedRowScanner;
+import com.team.db.store.ZoneMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 共享扫描：同一张表的多个查询共用一次数据扫描。
+ *
+ * 分区上的比较和 like 条件在文件级别判断（由文件所在的分区路径决定），
+ * 列上的条件在扫描每一行时对所有相关查询逐个判断。
+ */
+class SharedScan {
+
+    /* ====================================== Fields ====================================== */
+
+    private final List<QueryParam> queryParams;
+
+    /**
+     * 比较列，-1 表示比较参数是分区
+     */
+    private final int[] cmpCols;
+
+    /**
+     * like 匹配列，-1 表示 like 参数是分区
+     */
+    private final int[] likeCols;
+
+    private final byte[][] cmpKeys;
+
+    private final LikeMatcher[] likeMatchers;
+
+    /**
+     * 扫描单元以及每个单元需要参与的查询
+     */
+    private final List<FileRange> units = new ArrayList<>();
+
+    private final List<int[]> unitQueries = new ArrayList<>();
+
+    /**
+     * 每个查询不需要扫描即可确定的匹配行数（由区域统计或分区行数得到）
+     */
+    private final int[] matchedWithoutScan;
+
+    SharedScan(List<QueryParam> queryParams) {
+        int n = queryParams.size();
+        this.queryParams = queryParams;
+        cmpCols = new int[n];
+        likeCols = new int[n];
+        cmpKeys = new byte[n][];
+        likeMatchers = new LikeMatcher[n];
+        matchedWithoutScan = new int[n];
+        for (int q = 0; q < n; q++) {
+            QueryParam queryParam = queryParams.get(q);
+            cmpCols[q] = queryParam.getCompareOrdinal();
+            likeCols[q] = queryParam.getLikeOrdinal();
+            cmpKeys[q] = queryParam.getCompareKey();
+            likeMatchers[q] = queryParam.getLikeMatcher();
+        }
+    }
+
+    /* ====================================== Package ====================================== */
+
+    /**
+     * 获取分区路径为 ${partitionValues} 的数据文件需要参与的查询。
+     *
+     * @param partitionValues 分区名称 -> 分区值，无分区表为空
+     */
+    int[] queriesFor(Map<String, String> partitionValues) {
+        int[] selected = new int[queryParams.size()];
+        int size = 0;
+        for (int q = 0; q < selected.length; q++) {
+            QueryParam queryParam = queryParams.get(q);
+            if(cmpCols[q] < 0) {
+                String value = partitionValues.get(queryParam.getCompareColumn());
+                if(value == null || !TableImpl.compare(value, queryParam.getCompareType(), queryParam.getCompareValue())) {
+                    continue;
+                }
+            }
+            if(likeCols[q] < 0) {
+                String value = partitionValues.get(queryParam.getLikeColumn());
+                if(value == null || !likeMatchers[q].matches(value)) {
+                    continue;
+                }
+            }
+            selected[size++] = q;
+        }
+        int[] ans = new int[size];
+        System.arraycopy(selected, 0, ans, 0, size);
+        return ans;
+    }
+
+    /**
+     * 两个条件都是分区的查询不需要扫描：直接累加最终分区的行数。
+     *
+     * @param rowCount 最终分区的行数，只有存在这样的查询时才计算
+     * @return 仍需扫描的查询
+     */
+    int[] resolveByPartition(int[] queries, LongSupplier rowCount) {
+        int[] remaining = new int[queries.length];
+        int size = 0;
+        for (int q : queries) {
+            if(cmpCols[q] < 0 && likeCols[q] < 0) {
+                matchedWithoutScan[q] += (int) rowCount.getAsLong();
+            } else {
+                remaining[size++] = q;
+            }
+        }
+        return size == queries.length ? queries : Arrays.copyOf(remaining, size);
+    }
+
+    /**
+     * 加入一个数据文件的扫描单元。有区域统计时先逐个查询判定：
+     * NONE 的查询不参与该文件，ALL 的查询直接累加行数。
+     */
+    void addUnits(List<FileRange> fileUnits, int[] queries, ZoneMap zone) {
+        if(zone != null) {
+            int[] remaining = new int[queries.length];
+            int size = 0;
+            for (int q : queries) {
+                QueryParam queryParam = queryParams.get(q);
+                ZoneMap.Verdict verdict = zone.evaluate(cmpCols[q], queryParam.getCompareType(),
+                        queryParam.getCompareValue(), likeCols[q], likeMatchers[q]);
+                if(verdict == ZoneMap.Verdict.ALL) {
+                    matchedWithoutScan[q] += (int) zone.getRowCount();
+                } else if(verdict == ZoneMap.Verdict.SOME) {
+                    remaining[size++] = q;
+                }
+            }
+            queries = Arrays.copyOf(remaining, size);
+        }
+        if(queries.length == 0) {
+            return;
+        }
+        for (FileRange unit : fileUnits) {
+            units.add(unit);
+            unitQueries.add(queries);
+        }
+    }
+
+    List<FileRange> getUnits() {
+        return units;
+    }
+
+    int[] getMatchedWithoutScan() {
+        return matchedWithoutScan;
+    }
+
+    /**
+     * 扫描第 ${index} 个单元，对其相关查询计数。
+     *
+     * @return 长度为查询总数的计数数组
+     */
+    int[] count(int index) {
+        return count(units.get(index), unitQueries.get(index));
+    }
+
+    /**
+     * 扫描一个单元，对 ${queries} 中的每个查询计数。
+     *
+     * @return 长度为查询总数的计数数组
+     */
+    private
+    int[] count(FileRange unit, int[] queries) {
+        int[] counts = new int[queryParams.size()];
+        if(queries.length == 0) {
+            return counts;
+        }
+
+        /* 所有相关查询用到的列的并集，每列在扫描器中对应一个槽位。 */
+        int[] slotOfColumn = new int[maxColumn(queries) + 1];
+        int[] columns = new int[slotOfColumn.length];
+        int slots = 0;
+        for (int q : queries) {
+            for (int col : new int[]{cmpCols[q], likeCols[q]}) {
+                if(col >= 0 && slotOfColumn[col] == 0) {
+                    columns[slots] = col;
+                    slotOfColumn[col] = ++slots;    /* 槽位 + 1，0 表示未分配 */
+                }
+            }
+        }
+        int[] slotColumns = new int[slots];
+        System.arraycopy(columns, 0, slotColumns, 0, slots);
+
+        /* 每行解码过的值，同一行内多个查询共享。 */
+        String[] decoded = new String[slots];
+        ColumnSegment segment = unit.segment;
+        if(segment != null) {
+            /* 字典编码段：每个查询的条件先按字典值求值，再逐行判断编码。 */
+            DictionaryFilter[] filters = new DictionaryFilter[queries.length];
+            for (int i = 0; i < queries.length; i++) {
+                int q = queries[i];
+                filters[i] = new DictionaryFilter(segment, cmpCols[q], queryParams.get(q).getCompareType(),
+                        cmpKeys[q], likeCols[q], likeMatchers[q]);
+            }
+            int rowEnd = (int) Math.min(unit.to, segment.getRowCount());
+            for (int row = (int) unit.from; row < rowEnd; row++) {
+                for (int i = 0; i < queries.length; i++) {
+                    if(filters[i].matches(row)) {
+                        ++counts[queries[i]];
+                    }
+                }
+            }
+            return counts;
+        }
+
+        try (MappedRowScanner scanner = new MappedRowScanner(unit.file, unit.from, unit.to, slotColumns)) {
+            while (scanner.next()) {
+                Arrays.fill(decoded, null);
+                for (int q : queries) {
+                    if(matches(q, scanner, slotOfColumn, decoded)) {
+                        ++counts[q];
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return counts;
+    }
+
+    /**
+     * 合并两个单元的计数。
+     */
+    static
+    int[] merge(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] += b[i];
+        }
+        return a;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private
+    boolean matches(int q, MappedRowScanner scanner, int[] slotOfColumn, String[] decoded) {
+        QueryParam.CompareType cmpType = queryParams.get(q).getCompareType();
+        if(cmpCols[q] >= 0) {
+            int slot = slotOfColumn[cmpCols[q]] - 1;
+            boolean matched;
+            switch (cmpType) {
+                case equals:
+                    matched = scanner.equals(slot, cmpKeys[q]);
+                    break;
+                case notEquals:
+                    matched = !scanner.equals(slot, cmpKeys[q]);
+                    break;
+                default:
+                    matched = TableImpl.compareResult(scanner.compare(slot, cmpKeys[q]), cmpType);
+                    break;
+            }
+            if(!matched) {
+                return false;
+            }
+        }
+        if(likeCols[q] >= 0) {
+            int slot = slotOfColumn[likeCols[q]] - 1;
+            if(decoded[slot] == null) {
+                decoded[slot] = scanner.decode(slot);
+            }
+            return likeMatchers[q].matches(decoded[slot]);
+        }
+        return true;
+    }
+
+    private
+    int maxColumn(int[] queries) {
+        int max = 0;
+        for (int q : queries) {
+            max = Math.max(max, Math.max(cmpCols[q], likeCols[q]));
+        }
+        return max;
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.team.db.impl;
+
+import com.team.db.DataFile;
+import com.team.db.Partition;
+import com.team.db.stats.ColumnStatistics;
+import com.team.db.stats.TableStatistics;
+import com.team.db.store.ColumnSegment;
+import com.team.db.store.ColumnStore;
+import com.team.db.store.MappedRowScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ANALYZE：收集表的列统计。
+ *
+ * 单元是无分区表的一个数据文件或多级分区表的一个最终分区。指纹与上次收集时相同的单元直接沿用，
+ * 其余单元配置了线程池时并行扫描：已转换为列式段的文件直接对字典编码计数，文本文件逐行解码计数。
+ * 每个单元内每个去重值的计数是准确的，各文件的统计再合并为单元的统计。
+ */
+final class TableAnalyzer {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final int[] ALL_COLUMNS = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+
+    private TableAnalyzer() {
+    }
+
+    /* ====================================== Package ====================================== */
+
+    /**
+     * @param dataFiles 表目录下的数据文件（无分区表）
+     * @param previous 上次收集的统计，为 null 表示全部重新收集
+     * @param scanPool 为 null 表示单线程收集
+     */
+    static
+    TableStatistics analyze(File tableDirFile, List<DataFile> dataFiles, List<Partition> partitions,
+                            ColumnStore columnStore, ForkJoinPool scanPool, TableStatistics previous) {
+        /* 列出所有单元，指纹未变化的单元沿用上次的统计。 */
+        boolean partitioned = !partitions.isEmpty();
+        List<Unit> units = new ArrayList<>();
+        if(partitioned) {
+            Deque<Partition> stack = new ArrayDeque<>(partitions);
+            while (!stack.isEmpty()) {
+                Partition partition = stack.pop();
+                if(partition.hasSubpartitions()) {
+                    stack.addAll(partition.getSubpartitions());
+                } else {
+                    units.add(new Unit(relativePath(tableDirFile, partition.getPartitionDirFile()),
+                            partition.getDataFiles()));
+                }
+            }
+        } else {
+            for (DataFile dataFile : dataFiles) {
+                units.add(new Unit(dataFile.getName(), Collections.singletonList(dataFile)));
+            }
+        }
+
+        Map<String, TableStatistics.UnitStatistics> collected = new HashMap<>(units.size() * 2);
+        List<Unit> stale = new ArrayList<>();
+        for (Unit unit : units) {
+            TableStatistics.UnitStatistics old = previous == null || previous.isPartitioned() != partitioned
+                    ? null : previous.getUnit(unit.path);
+            if(old != null && old.getFingerprint() == unit.fingerprint) {
+                collected.put(unit.path, old);
+            } else {
+                stale.add(unit);
+            }
+        }
+
+        if(!stale.isEmpty()) {
+            List<TableStatistics.UnitStatistics> analyzed = scanPool == null || stale.size() == 1
+                    ? analyzeAll(stale, columnStore)
+                    : TableImpl.invoke(scanPool, new ScanTask<>(stale,
+                            unit -> Collections.singletonList(analyzeUnit(unit, columnStore)), TableAnalyzer::concat));
+            for (TableStatistics.UnitStatistics unitStatistics : analyzed) {
+                collected.put(unitStatistics.getPath(), unitStatistics);
+            }
+        }
+
+        /* 按单元的顺序组装，保证文件内容稳定。 */
+        List<TableStatistics.UnitStatistics> ordered = new ArrayList<>(units.size());
+        for (Unit unit : units) {
+            ordered.add(collected.get(unit.path));
+        }
+        return new TableStatistics(partitioned, ordered);
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private static
+    List<TableStatistics.UnitStatistics> analyzeAll(List<Unit> units, ColumnStore columnStore) {
+        List<TableStatistics.UnitStatistics> analyzed = new ArrayList<>(units.size());
+        for (Unit unit : units) {
+            analyzed.add(analyzeUnit(unit, columnStore));
+        }
+        return analyzed;
+    }
+
+    private static
+    <T> List<T> concat(List<T> a, List<T> b) {
+        List<T> list = new ArrayList<>(a.size() + b.size());
+        list.addAll(a);
+        list.addAll(b);
+        return list;
+    }
+
+    /**
+     * 收集一个单元：逐个文件统计后合并。文件的行数顺便记录下来，随目录快照持久化。
+     */
+    private static
+    TableStatistics.UnitStatistics analyzeUnit(Unit unit, ColumnStore columnStore) {
+        ColumnStatistics[] columns = new ColumnStatistics[0];
+        long rowCount = 0;
+        for (DataFile file : unit.files) {
+            ColumnSegment segment = columnStore == null ? null : columnStore.getSegment(file);
+            ColumnStatistics[] fileColumns;
+            try {
+                fileColumns = segment != null ? analyzeSegment(segment) : analyzeText(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            long fileRows = fileColumns.length == 0 ? 0 : fileColumns[0].getRowCount();
+            if(file.getRowCount() < 0) {
+                file.setRowCount(fileRows);
+            }
+            ColumnStatistics[] merged = new ColumnStatistics[Math.max(columns.length, fileColumns.length)];
+            for (int c = 0; c < merged.length; c++) {
+                ColumnStatistics left = c < columns.length ? columns[c] : ColumnStatistics.empty(rowCount);
+                ColumnStatistics right = c < fileColumns.length ? fileColumns[c] : ColumnStatistics.empty(fileRows);
+                merged[c] = left.merge(right);
+            }
+            columns = merged;
+            rowCount += fileRows;
+        }
+        return new TableStatistics.UnitStatistics(unit.path, unit.fingerprint, rowCount, columns);
+    }
+
+    /**
+     * 列式段：对每列的字典编码计数，有序字典即排好序的去重值。
+     */
+    private static
+    ColumnStatistics[] analyzeSegment(ColumnSegment segment) {
+        int rowCount = segment.getRowCount();
+        ColumnStatistics[] columns = new ColumnStatistics[rowCount == 0 ? 0 : segment.getColumnCount()];
+        for (int c = 0; c < columns.length; c++) {
+            int dictSize = segment.getDictionarySize(c);
+            long[] counts = new long[dictSize];
+            for (int row = 0; row < rowCount; row++) {
+                ++counts[segment.getCode(c, row)];
+            }
+            String[] values = new String[dictSize];
+            for (int code = 0; code < dictSize; code++) {
+                values[code] = segment.getDictionaryValue(c, code);
+            }
+            columns[c] = ColumnStatistics.of(values, counts, dictSize);
+        }
+        return columns;
+    }
+
+    /**
+     * 文本文件：逐行解码所有列并计数。列数取出现过非空值的最大列，之后的列视为空串。
+     */
+    private static
+    ColumnStatistics[] analyzeText(File file) throws IOException {
+        List<Map<String, long[]>> counts = new ArrayList<>(ALL_COLUMNS.length);
+        for (int c = 0; c < ALL_COLUMNS.length; c++) {
+            counts.add(new HashMap<>());
+        }
+        int columnCount = 0;
+        long rowCount = 0;
+        try (MappedRowScanner scanner = new MappedRowScanner(file, ALL_COLUMNS)) {
+            while (scanner.next()) {
+                ++rowCount;
+                for (int c = 0; c < ALL_COLUMNS.length; c++) {
+                    String value = scanner.decode(c);
+                    if(!value.isEmpty() && c >= columnCount) {
+                        columnCount = c + 1;
+                    }
+                    counts.get(c).computeIfAbsent(value, k -> new long[1])[0]++;
+                }
+            }
+        }
+        if(rowCount > 0) {
+            columnCount = Math.max(columnCount, 1);
+        }
+
+        ColumnStatistics[] columns = new ColumnStatistics[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            Map<String, long[]> columnCounts = counts.get(c);
+            String[] values = columnCounts.keySet().toArray(new String[0]);
+            Arrays.sort(values);
+            long[] valueCounts = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                valueCounts[i] = columnCounts.get(values[i])[0];
+            }
+            columns[c] = ColumnStatistics.of(values, valueCounts, values.length);
+        }
+        return columns;
+    }
+
+    /**
+     * 相对表目录的路径，以 '/' 分隔。
+     */
+    private static
+    String relativePath(File tableDirFile, File dir) {
+        return tableDirFile.toPath().relativize(dir.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * 一个统计单元：路径、数据文件以及数据文件的指纹（名称、大小和修改时间的哈希）。
+     */
+    private static class Unit {
+
+        final String path;
+
+        final List<DataFile> files;
+
+        final long fingerprint;
+
+        Unit(String path, List<DataFile> files) {
+            this.path = path;
+            this.files = files;
+            List<DataFile> sorted = new ArrayList<>(files);
+            sorted.sort(Comparator.comparing(File::getName));
+            long hash = path.hashCode();
+            for (DataFile file : sorted) {
+                hash = hash * 1_000_003L + file.getName().hashCode() * 31L + file.recordedLength() * 17L + file.recordedModified();
+            }
+            this.fingerprint = hash;
+        }
+
+    }
+
+}
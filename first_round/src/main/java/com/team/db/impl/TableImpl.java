@@ -1,11 +1,26 @@
 package com.team.db.impl;
 
 import com.team.db.*;
-import com.team.util.StringUtil;
+import com.team.db.cache.ResultCache;
+import com.team.db.cache.RowBitmap;
+import com.team.db.like.LikeMatcher;
+import com.team.db.metrics.QueryMetrics;
+import com.team.db.stats.TableStatistics;
+import com.team.db.store.ColumnSegment;
+import com.team.db.store.CatalogSnapshot;
+import com.team.db.store.ColumnStore;
+import com.team.db.store.DictionaryFilter;
+import com.team.db.store.MappedRowScanner;
+import com.team.db.store.ZoneMap;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * 数据库中的一张表。
@@ -14,18 +29,72 @@ public class TableImpl implements Table {
 
     /* ====================================== Fields ====================================== */
 
+    /**
+     * 并行模式下文本文件的拆分大小（字节）
+     */
+    private static final long SPLIT_BYTES = 64L << 20;
+
+    /**
+     * 并行模式下列式段的拆分大小（行）
+     */
+    private static final long SPLIT_ROWS = 1L << 20;
+
     private final File tableDirFile;
 
-    private final List<Partition> partitions;
+    /**
+     * 分区树、分区索引和区域统计，延迟加载模式下在首次访问时加载。
+     */
+    private volatile Layout layout;
+
+    /**
+     * 目录快照中该表的条目，加载布局时校验，有效则直接使用，用后释放
+     */
+    private CatalogSnapshot.TableEntry snapshot;
+
+    /**
+     * 列式存储，为 null 表示直接扫描文本文件。
+     */
+    private final ColumnStore columnStore;
+
+    /**
+     * 并行扫描线程池，为 null 表示单线程扫描。
+     */
+    private final ForkJoinPool scanPool;
+
+    /**
+     * 比较条件的行号位图缓存，为 null 表示不缓存。
+     */
+    private final ResultCache<PredicateKey, RowBitmap> predicateCache;
+
+    /**
+     * 分区 -> 分区下的总行数，用于两个条件都是分区的查询，首次使用时计算
+     */
+    private final Map<Partition, Long> partitionRowCounts = new ConcurrentHashMap<>();
 
-    private final PartitionIndex partitionIndex;
+    /**
+     * 列统计（ANALYZE 的结果），没有收集过时为 null，此时查询规划只使用行采样
+     */
+    private volatile TableStatistics statistics;
 
     public TableImpl(File tableDirFile) {
+        this(tableDirFile, null, null, null, null, false);
+    }
+
+    /**
+     * @param snapshot 目录快照中该表的条目，没有时为 null
+     * @param lazy 为 true 时不在构造时加载分区树，首次访问时才加载
+     */
+    public TableImpl(File tableDirFile, ColumnStore columnStore, ForkJoinPool scanPool,
+                     ResultCache<PredicateKey, RowBitmap> predicateCache,
+                     CatalogSnapshot.TableEntry snapshot, boolean lazy) {
         this.tableDirFile = tableDirFile;
-        /* 加载表中所有的分区，如果有的话 */
-        partitions = loadPartitions(tableDirFile);
-        /* 加载分区索引。 */
-        partitionIndex = new PartitionIndex(partitions);
+        this.columnStore = columnStore;
+        this.scanPool = scanPool;
+        this.predicateCache = predicateCache;
+        this.snapshot = snapshot;
+        if(!lazy) {
+            layout();
+        }
     }
 
     public File getTableDirFile() {
@@ -33,15 +102,90 @@ public class TableImpl implements Table {
     }
 
     public List<Partition> getPartitions() {
-        return partitions;
+        return layout().partitions;
     }
 
     public int getLevelPartitions() {
-        return partitionIndex.getLevelPartitions();
+        return layout().partitionIndex.getLevelPartitions();
     }
 
     public PartitionIndex getPartitionTreeIndex() {
-        return partitionIndex;
+        return layout().partitionIndex;
+    }
+
+    /**
+     * 分区布局是否由目录快照得到（快照有效），延迟加载且尚未加载时返回 false。
+     */
+    public
+    boolean isLoadedFromSnapshot() {
+        Layout current = layout;
+        return current != null && current.fromSnapshot;
+    }
+
+    /**
+     * 已加载的分区布局是否仍与文件系统一致（见 CatalogSnapshot.isCurrent）。
+     * 延迟加载且尚未加载时返回 true，之后加载时读到的就是当时的文件。
+     */
+    public
+    boolean isCurrent() {
+        Layout current = layout;
+        return current == null || CatalogSnapshot.isCurrent(tableDirFile, current.lastModified,
+                current.dataFiles, current.partitions);
+    }
+
+    /**
+     * 生成该表的目录快照条目，已知的行数（包括转换列式段时得到的行数）一并写入。
+     * 延迟加载且尚未加载的表原样返回读入的快照条目（加载时再校验），没有条目时先加载。
+     */
+    public
+    CatalogSnapshot.TableEntry snapshot() {
+        Layout current = layout;
+        if(current == null) {
+            synchronized (this) {
+                if(layout == null && snapshot != null) {
+                    return snapshot;
+                }
+            }
+            current = layout();
+        }
+        /* 先清除标记再取条目：之后记录的行数会再次标记。 */
+        current.catalogChanged = false;
+        return new CatalogSnapshot.TableEntry(tableDirFile, current.lastModified, current.dataFiles, current.partitions);
+    }
+
+    /**
+     * 上次生成快照条目之后，分区布局是否被重新列举或有文件的行数被记录，即快照需要重写。
+     * 尚未加载时返回 false。
+     */
+    public
+    boolean isCatalogChanged() {
+        Layout current = layout;
+        return current != null && current.catalogChanged;
+    }
+
+    /**
+     * 收集列统计：只重新扫描数据文件有变化的单元，配置了线程池时并行收集。
+     */
+    public
+    TableStatistics analyze() {
+        Layout current = layout();
+        TableStatistics analyzed = TableAnalyzer.analyze(tableDirFile, current.dataFiles, current.partitions,
+                columnStore, scanPool, statistics);
+        /* 收集时会记录未知的文件行数 */
+        current.catalogChanged = true;
+        statistics = analyzed;
+        return analyzed;
+    }
+
+    public TableStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * 设置已有的列统计（如从统计文件读取），之后的 analyze() 在此基础上增量收集。
+     */
+    public void setStatistics(TableStatistics statistics) {
+        this.statistics = statistics;
     }
 
     /**
@@ -57,8 +201,8 @@ public class TableImpl implements Table {
         return "====================================================================" + "\n" +
                 "Table Name: " + this.tableName() + "\n" +
                 "Level of Partitions: " + getLevelPartitions() + "\n" +
-                "Number of Partitions: " + partitions.size() + "\n" +
-                "Partitions: " + partitions +
+                "Number of Partitions: " + getPartitions().size() + "\n" +
+                "Partitions: " + getPartitions() +
                 "\n====================================================================" + "\n\n";
     }
 
@@ -67,313 +211,934 @@ public class TableImpl implements Table {
     @Override
     public
     int matchesCount(QueryParam queryParam) {
+        return matchesCount(queryParam, null);
+    }
+
+    @Override
+    public
+    int matchesCount(QueryParam queryParam, QueryMetrics metrics) {
+        long planStartNs = metrics == null ? 0 : System.nanoTime();
+        ScanPlan plan = plan(queryParam, metrics, false, false);
+
         /* 参数堆栈化 */
-        String cmpColString = queryParam.getCompareColumn();
         QueryParam.CompareType cmpType = queryParam.getCompareType();
         String cmpValue = queryParam.getCompareValue();
-        String likeColString = queryParam.getLikeColumn();
-        QueryParam.LikeType likeType = queryParam.getLikeType();
-        Pattern[] patterns = queryParam.getLikePatterns();
+        byte[] cmpKey = queryParam.getCompareKey();
+        LikeMatcher likeMatcher = queryParam.getLikeMatcher();
+        int cmpCol = plan.cmpCol, likeCol = plan.likeCol;
+        QueryPlan.PredicateOrder order = plan.order;
 
+        /* 每个单元的每行单遍流经比较和 like 两个谓词，按规划的顺序求值，只保留计数。 */
+        if(metrics == null) {
+            return (int) plan.matchedWithoutScan + sumUnits(plan.units, plan.parallel,
+                    unit -> countUnit(unit, cmpCol, cmpType, cmpValue, cmpKey, likeCol, likeMatcher, order, null));
+        }
+        long scanStartNs = System.nanoTime();
+        metrics.setPlanNanos(scanStartNs - planStartNs);
+        metrics.matchWithoutScan(plan.matchedWithoutScan);
+        int count = (int) plan.matchedWithoutScan + sumUnits(plan.units, plan.parallel,
+                unit -> countUnit(unit, cmpCol, cmpType, cmpValue, cmpKey, likeCol, likeMatcher, order, metrics));
+        metrics.setScanNanos(System.nanoTime() - scanStartNs);
+        return count;
+    }
 
-        /* 检查比较参数和 like 参数是列比较还是分区比较。 */
-        boolean isCmpCol = cmpColString.contains("column");
-        boolean isLikeCol = likeColString.contains("column");
+    /**
+     * 只规划不执行：返回选择的执行路径、谓词顺序、分区裁剪的结果以及估计的行数。
+     */
+    @Override
+    public
+    QueryPlan explain(QueryParam queryParam) {
+        /* 规划时的分区和文件计数记录在临时的指标中。 */
+        QueryMetrics planMetrics = new QueryMetrics(queryParam.toQueryString());
+        ScanPlan plan = plan(queryParam, planMetrics, true, false);
+        return new QueryPlan.Builder(queryParam.toQueryString())
+                .setPlanPath(plan.planPath)
+                .setPredicateOrder(plan.order)
+                .setParallel(plan.parallel)
+                .setSelectivity(plan.compareSelectivity, plan.likeSelectivity)
+                .setCost(plan.compareFirstCost, plan.likeFirstCost)
+                .setCounts(planMetrics)
+                .setRows(plan.units.size(), plan.estimatedScanRows, plan.matchedWithoutScan,
+                        plan.estimatedRows, plan.sampleRows)
+                .build();
+    }
 
-        if(getLevelPartitions() == 0) {              /* 无分区表 */
-            File[] dataFiles;
-            if( (dataFiles = tableDirFile.listFiles()) == null ) {
-                return 0;
+    /**
+     * 流式查询：按计划逐个扫描单元，只在迭代时向前扫描，不物化结果。
+     * 区域统计或分区条件就能确定全部满足的行也需要读出，所以这些单元同样加入扫描。
+     */
+    @Override
+    public
+    RowIterator rows(QueryParam queryParam, long limit) {
+        ScanPlan plan = plan(queryParam, null, false, true);
+        return new RowCursor(plan.units, plan.cmpCol, queryParam.getCompareType(), queryParam.getCompareKey(),
+                plan.likeCol, queryParam.getLikeMatcher(), plan.order == QueryPlan.PredicateOrder.LIKE_FIRST, limit);
+    }
+
+    @Override
+    public
+    int[] matchesCounts(List<QueryParam> queryParams) {
+        SharedScan sharedScan = new SharedScan(queryParams);
+
+        /* 列出所有数据文件及其分区路径，确定每个文件需要参与的查询。 */
+        if(getLevelPartitions() == 0) {
+            int[] queries = sharedScan.queriesFor(Collections.emptyMap());
+            for (File file : layout().dataFiles) {
+                addSharedRanges(file, queries, sharedScan);
+            }
+        } else {
+            for (Partition partition : getPartitions()) {
+                addSharedPartitionRanges(partition, new HashMap<>(), sharedScan);
+            }
+        }
+
+        /* 一次扫描所有单元，每个单元对所有相关查询计数。 */
+        List<FileRange> units = sharedScan.getUnits();
+        List<Integer> indexes = new ArrayList<>(units.size());
+        for (int i = 0; i < units.size(); i++) {
+            indexes.add(i);
+        }
+        int[] counts = sharedScan.getMatchedWithoutScan();
+        if(scanPool == null || units.size() <= 1) {
+            for (int i = 0; i < units.size(); i++) {
+                SharedScan.merge(counts, sharedScan.count(i));
             }
+        } else {
+            SharedScan.merge(counts, scanPool.invoke(new ScanTask<>(indexes, sharedScan::count, SharedScan::merge)));
+        }
+        return counts;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 规划查询：按表的分区情况和条件所在的位置选择执行路径，得到需要扫描的单元和不需要扫描即可确定的行数，
+     * 再由代价模型决定谓词的求值顺序和是否并行扫描。
+     *
+     * @param metrics 查询指标，为 null 表示不记录
+     * @param explain 为 true 时同时估计选择率和结果行数
+     * @param enumerate 为 true 时规划行的枚举而不是计数：不满足的部分照常裁剪，
+     *                  但区域统计判定为全部满足的文件和两个条件都是分区的子树也需要扫描
+     */
+    private
+    ScanPlan plan(QueryParam queryParam, QueryMetrics metrics, boolean explain, boolean enumerate) {
+        QueryParam.CompareType cmpType = queryParam.getCompareType();
+        String cmpValue = queryParam.getCompareValue();
+        LikeMatcher likeMatcher = queryParam.getLikeMatcher();
+
+        /* 比较参数和 like 参数是列比较还是分区比较：列序号在解析时已确定，分区为 -1。 */
+        int cmpCol = queryParam.getCompareOrdinal();
+        int likeCol = queryParam.getLikeOrdinal();
+        ScanPlan plan = new ScanPlan(cmpCol, likeCol);
 
-            /* 对于无分区表，两个比较只能是列，获取比较和 like 匹配列值。 */
-            int cmpCol = cmpColString.charAt(cmpColString.length() - 1) - '0';
-            int likeCol = likeColString.charAt(likeColString.length() - 1) - '0';
-
-            /* 通过比较参数完成初步数据筛选。 */
-            List<String> data = new ArrayList<>(1024);
-            for (File file : dataFiles) {
-                try {
-                    BufferedReader reader = new BufferedReader(new FileReader(file));
-                    String line;
-                    while ( (line = reader.readLine()) != null ) {
-                        String[] split = line.split("\\|");
-                        String checkValue = split[cmpCol];
-                        switch (cmpType) {
-                            case equals:
-                                if(checkValue.equals(cmpValue)) {
-                                    data.add(split[likeCol]);
-                                }
-                                break;
-                            case notEquals:
-                                if(!checkValue.equals(cmpValue)) {
-                                    data.add(split[likeCol]);
-                                }
-                                break;
-                            case greater:
-                                if(checkValue.compareTo(cmpValue) > 0) {
-                                    data.add(split[likeCol]);
-                                }
-                                break;
-                            case less:
-                                if(checkValue.compareTo(cmpValue) < 0) {
-                                    data.add(split[likeCol]);
-                                }
-                                break;
-                        }
-                    }
-                    reader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+        /* 区域统计只判断列上的条件，分区上的条件由分区规划判断。 */
+        Function<ZoneMap, ZoneMap.Verdict> zoneCheck = !enumerate
+                ? zone -> zone.evaluate(cmpCol, cmpType, cmpValue, likeCol, likeMatcher)
+                : zone -> {
+                    ZoneMap.Verdict verdict = zone.evaluate(cmpCol, cmpType, cmpValue, likeCol, likeMatcher);
+                    return verdict == ZoneMap.Verdict.ALL ? ZoneMap.Verdict.SOME : verdict;
+                };
+        List<FileRange> units = plan.units;
+        long matchedWithoutScan = 0;
+
+        if(getLevelPartitions() == 0) {              /* 无分区表 */
+            if(cmpCol < 0 || likeCol < 0) {
+                plan.planPath = QueryMetrics.PlanPath.EMPTY;   /* 无分区表上的分区条件不可能满足 */
+            } else {
+                /* 大文件按行对齐拆分为多个扫描单元，区域统计能确定结果的文件不需要扫描。 */
+                plan.planPath = QueryMetrics.PlanPath.UNPARTITIONED;
+                for (File file : layout().dataFiles) {
+                    matchedWithoutScan += addFileRanges(file, units, zoneCheck, metrics);
                 }
             }
+        } else {                            /* 多级分区表 */
+            /* 分区键上的条件通过分区值索引查找满足的分区。 */
+            PartitionIndex partitionIndex = getPartitionTreeIndex();
+            List<Partition> cmpPartitions = cmpCol >= 0 ? null
+                    : partitionIndex.findPartitions(queryParam.getCompareColumn(), cmpType, cmpValue);
+            List<Partition> likePartitions = likeCol >= 0 ? null
+                    : partitionIndex.findPartitions(queryParam.getLikeColumn(), likeMatcher);
 
-            /* 通过 like 匹配参数进行第最终筛选。 */
-            int matchedCount = 0;
-            for (String likeCmpValue : data) {
-                if(like(likeCmpValue, likeType, patterns)) {
-                    ++matchedCount;
+            if(cmpCol >= 0 && likeCol >= 0) {
+                plan.planPath = QueryMetrics.PlanPath.PARTITION_SCAN;
+                for (Partition partition : getPartitions()) {
+                    matchedWithoutScan += addPartitionRanges(partition, units, zoneCheck, metrics);
+                }
+            } else if((cmpPartitions == null || likePartitions == null) && partitionIndex.isSingleDepth(
+                    cmpCol < 0 ? queryParam.getCompareColumn() : queryParam.getLikeColumn())) {
+                /* 只有一个分区条件且分区键只出现在同一层：满足的分区的子树互不相交，直接加入。 */
+                plan.planPath = QueryMetrics.PlanPath.PARTITION_INDEX;
+                for (Partition partition : cmpPartitions != null ? cmpPartitions : likePartitions) {
+                    matchedWithoutScan += addPartitionRanges(partition, units, zoneCheck, metrics);
+                }
+            } else {
+                /* 自顶向下裁剪分区树，只有满足所有分区条件的子树才参与扫描或计数。 */
+                plan.planPath = QueryMetrics.PlanPath.PARTITION_TREE;
+                Set<Partition> cmpMatched = cmpPartitions == null ? null : new HashSet<>(cmpPartitions);
+                Set<Partition> likeMatched = likePartitions == null ? null : new HashSet<>(likePartitions);
+                for (Partition partition : getPartitions()) {
+                    matchedWithoutScan += planPartition(partition, queryParam, cmpMatched, likeMatched,
+                            false, false, enumerate, units, zoneCheck, metrics);
                 }
             }
+        }
+        if(metrics != null) {
+            metrics.setPlanPath(plan.planPath);
+        }
+        plan.matchedWithoutScan = matchedWithoutScan;
+        estimate(plan, queryParam, explain);
+        return plan;
+    }
 
-            return matchedCount;
-        } else {                            /* 多级分区表 */
+    /**
+     * 由代价模型完成计划：
+     *  - 两个条件都在列上时，按行采样估计各自的选择率，选择每行期望代价较小的求值顺序，
+     *    文本和列式段的谓词代价不同，按两者的估计行数加权；没有采样时由扫描单元自行采样决定；
+     *  - 估计扫描的行数不足 ${CostModel.PARALLEL_MIN_ROWS} 时不并行扫描。
+     */
+    private
+    void estimate(ScanPlan plan, QueryParam queryParam, boolean explain) {
+        int cmpCol = plan.cmpCol, likeCol = plan.likeCol;
+        plan.order = cmpCol >= 0 && likeCol < 0 ? QueryPlan.PredicateOrder.COMPARE_FIRST
+                : likeCol >= 0 && cmpCol < 0 ? QueryPlan.PredicateOrder.LIKE_FIRST : null;
+        if(plan.units.isEmpty()) {
+            plan.estimatedRows = plan.matchedWithoutScan;
+            return;
+        }
+
+        TableSample sample = sample();
+        long scanRows = 0, segmentRows = 0;
+        for (FileRange unit : plan.units) {
+            long rows = CostModel.unitRows(unit, sample.getAvgRowBytes());
+            scanRows += rows;
+            if(unit.segment != null) {
+                segmentRows += rows;
+            }
+        }
+        plan.estimatedScanRows = scanRows;
+        plan.parallel = scanPool != null && plan.units.size() > 1 && scanRows >= CostModel.PARALLEL_MIN_ROWS;
+
+        QueryParam.CompareType cmpType = queryParam.getCompareType();
+        String cmpValue = queryParam.getCompareValue();
+        LikeMatcher likeMatcher = queryParam.getLikeMatcher();
+        if(cmpCol >= 0 && likeCol >= 0) {
+            if(sample.size() == 0 && statistics == null) {
+                plan.order = QueryPlan.PredicateOrder.ADAPTIVE;
+            } else {
+                plan.compareSelectivity = compareSelectivity(sample, cmpCol, cmpType, cmpValue);
+                plan.likeSelectivity = likeSelectivity(sample, likeCol, likeMatcher);
+                double segmentShare = scanRows == 0 ? 0 : (double) segmentRows / scanRows;
+                double cmpCost = segmentShare * CostModel.SEGMENT_COMPARE_COST
+                        + (1 - segmentShare) * CostModel.TEXT_COMPARE_COST;
+                double likeCost = segmentShare * CostModel.SEGMENT_LIKE_COST
+                        + (1 - segmentShare) * CostModel.TEXT_LIKE_COST;
+                plan.compareFirstCost = CostModel.costPerRow(cmpCost, plan.compareSelectivity, likeCost);
+                plan.likeFirstCost = CostModel.costPerRow(likeCost, plan.likeSelectivity, cmpCost);
+                plan.order = CostModel.chooseOrder(plan.compareFirstCost, plan.likeFirstCost);
+            }
+        }
+
+        if(explain) {
+            if(sample.size() == 0) {
+                plan.estimatedRows = plan.matchedWithoutScan + scanRows;
+                return;
+            }
+            if(cmpCol >= 0 && plan.compareSelectivity < 0) {
+                plan.compareSelectivity = compareSelectivity(sample, cmpCol, cmpType, cmpValue);
+            }
+            if(likeCol >= 0 && plan.likeSelectivity < 0) {
+                plan.likeSelectivity = likeSelectivity(sample, likeCol, likeMatcher);
+            }
+            /* 有列统计时按两个条件互不相关估计；否则两个条件一起在样本上求值，反映列之间的相关性。 */
+            double selectivity = statistics != null
+                    ? (cmpCol >= 0 ? plan.compareSelectivity : 1) * (likeCol >= 0 ? plan.likeSelectivity : 1)
+                    : sample.selectivity(cmpCol, cmpType, cmpValue, likeCol, likeMatcher);
+            plan.estimatedRows = plan.matchedWithoutScan + Math.round(scanRows * selectivity);
+            plan.sampleRows = sample.size();
+        }
+    }
+
+    /**
+     * 比较条件的选择率：收集过列统计时由直方图和高频值估计，否则由行采样估计。
+     */
+    private
+    double compareSelectivity(TableSample sample, int cmpCol, QueryParam.CompareType cmpType, String cmpValue) {
+        TableStatistics current = statistics;
+        return current != null ? current.selectivity(cmpCol, cmpType, cmpValue)
+                : sample.compareSelectivity(cmpCol, cmpType, cmpValue);
+    }
+
+    /**
+     * like 条件的选择率：收集过列统计且模式串都是精确值或前缀时由统计估计，否则由行采样估计。
+     */
+    private
+    double likeSelectivity(TableSample sample, int likeCol, LikeMatcher likeMatcher) {
+        TableStatistics current = statistics;
+        double selectivity = current == null ? -1 : current.likeSelectivity(likeCol, likeMatcher);
+        return selectivity >= 0 ? selectivity : sample.likeSelectivity(likeCol, likeMatcher);
+    }
+
+    /**
+     * 表的行采样，首次规划时采集。并发的首次规划可能各自采集一次，结果等价，不加锁。
+     */
+    private
+    TableSample sample() {
+        Layout current = layout();
+        TableSample sample = current.sample;
+        if(sample == null) {
+            current.sample = sample = TableSample.collect(listDataFiles(current), columnStore);
+        }
+        return sample;
+    }
+
+    /**
+     * 分区规划：自顶向下在分区树上判断分区键上的条件，不满足的子树整体裁剪，分区键可以位于任意层级。
+     * 分区条件是否满足由分区值索引预先查找得到。
+     * 路径上的所有分区条件都满足后：
+     *  - 两个条件都是分区：不读取任何数据文件，直接累加缓存的行数；
+     *  - 否则将子树下的数据文件加入扫描单元（区域统计仍可跳过或直接计数）。
+     * 路径上没有出现的分区键视为不满足。
+     *
+     * @param cmpMatched 满足比较条件的分区，为 null 表示比较参数是列
+     * @param likeMatched 满足 like 条件的分区，为 null 表示 like 参数是列
+     * @param cmpResolved 比较条件已在祖先分区上满足
+     * @param likeResolved like 条件已在祖先分区上满足
+     * @param enumerate 为 true 时两个条件都是分区的子树也加入扫描单元，而不是累加行数
+     * @return 不需要扫描即可确定的匹配行数
+     */
+    private
+    long planPartition(Partition partition, QueryParam queryParam, Set<Partition> cmpMatched, Set<Partition> likeMatched,
+                       boolean cmpResolved, boolean likeResolved, boolean enumerate,
+                       List<FileRange> units, Function<ZoneMap, ZoneMap.Verdict> zoneCheck, QueryMetrics metrics) {
+        if(metrics != null) {
+            metrics.visitPartition();
+        }
+        String partitionName = partition.getPartitionName();
+        if(cmpMatched != null && !cmpResolved && partitionName.equals(queryParam.getCompareColumn())) {
+            if(!cmpMatched.contains(partition)) {
+                return pruned(metrics);
+            }
+            cmpResolved = true;
+        }
+        if(likeMatched != null && !likeResolved && partitionName.equals(queryParam.getLikeColumn())) {
+            if(!likeMatched.contains(partition)) {
+                return pruned(metrics);
+            }
+            likeResolved = true;
+        }
+
+        if((cmpMatched == null || cmpResolved) && (likeMatched == null || likeResolved)) {
+            if(cmpMatched != null && likeMatched != null && !enumerate) {
+                return rowCount(partition);
+            }
+            return addPartitionRanges(partition, units, zoneCheck, metrics);
+        }
+
+        /* 分区条件还未确定，但列上的条件在该子树上不可能满足时可以提前裁剪。 */
+        ZoneMap zone = layout().zoneMaps.get(partition);
+        if(zone != null && zoneCheck.apply(zone) == ZoneMap.Verdict.NONE) {
+            return pruned(metrics);
+        }
+        long matchedWithoutScan = 0;
+        for (Partition subpartition : partition.getSubpartitions()) {
+            matchedWithoutScan += planPartition(subpartition, queryParam, cmpMatched, likeMatched,
+                    cmpResolved, likeResolved, enumerate, units, zoneCheck, metrics);
+        }
+        return matchedWithoutScan;
+    }
+
+    /**
+     * 记录一个被裁剪的分区。
+     *
+     * @return 0，被裁剪的分区没有匹配的行
+     */
+    private static
+    long pruned(QueryMetrics metrics) {
+        if(metrics != null) {
+            metrics.prunePartition();
+        }
+        return 0;
+    }
+
+    /**
+     * 分区下的总行数，首次计算后缓存：列式段直接取段的行数，文本文件扫描一遍计数。
+     */
+    private
+    long rowCount(Partition partition) {
+        Long cached = partitionRowCounts.get(partition);
+        if(cached != null) {
+            return cached;
+        }
+        long rowCount = 0;
+        if(partition.hasSubpartitions()) {
+            for (Partition subpartition : partition.getSubpartitions()) {
+                rowCount += rowCount(subpartition);
+            }
+        } else {
+            for (DataFile file : partition.getDataFiles()) {
+                rowCount += fileRowCount(file);
+            }
+        }
+        partitionRowCounts.put(partition, rowCount);
+        return rowCount;
+    }
 
-            if(isCmpCol && isLikeCol) {     /* 比较参数和 like 参数都是列 */
-                /* 获取比较和 like 匹配列值。 */
-                int cmpCol = cmpColString.charAt(cmpColString.length() - 1) - '0';
-                int likeCol = likeColString.charAt(likeColString.length() - 1) - '0';
-
-                /* 通过比较参数完成初步数据筛选。 */
-                Queue<Partition> Q = new LinkedList<>(partitions);
-                List<String> data = new ArrayList<>(1024);
-                while (!Q.isEmpty()) {
-                    int size = Q.size();
-                    for (int i = 0; i < size; i++) {
-                        Partition partition = Objects.requireNonNull(Q.poll());
-                        if( partition.hasSubpartitions() ) {        /* 还不是最终的分区，跳过 */
-                            Q.addAll(partition.getSubpartitions()); /* 为了遍历所有分区的数据。 */
-                            continue;
-                        }
-
-                        /* 遍历这个最终分区 */
-                        for (File file : Objects.requireNonNull(partition.getPartitionDirFile().listFiles())) {
-                            try {
-                                BufferedReader reader = new BufferedReader(new FileReader(file));
-                                String line;
-                                while ( (line = reader.readLine()) != null ) {
-                                    String[] split = line.split("\\|");
-                                    String checkValue = split[cmpCol];
-                                    switch (cmpType) {
-                                        case equals:
-                                            if(checkValue.equals(cmpValue)) {
-                                                data.add(split[likeCol]);
-                                            }
-                                            break;
-                                        case notEquals:
-                                            if(!checkValue.equals(cmpValue)) {
-                                                data.add(split[likeCol]);
-                                            }
-                                            break;
-                                        case greater:
-                                            if(checkValue.compareTo(cmpValue) > 0) {
-                                                data.add(split[likeCol]);
-                                            }
-                                            break;
-                                        case less:
-                                            if(checkValue.compareTo(cmpValue) < 0) {
-                                                data.add(split[likeCol]);
-                                            }
-                                            break;
-                                    }
-                                }
-                                reader.close();
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    }
+    /**
+     * 文件的行数：目录快照或之前的统计中已有时直接使用，统计后记录在文件上，随快照持久化。
+     */
+    private
+    long fileRowCount(DataFile file) {
+        long rowCount = file.getRowCount();
+        if(rowCount >= 0) {
+            return rowCount;
+        }
+        ColumnSegment segment = columnStore == null ? null : columnStore.getSegment(file);
+        if(segment != null) {
+            rowCount = segment.getRowCount();
+        } else {
+            rowCount = 0;
+            try (MappedRowScanner scanner = new MappedRowScanner(file, 0)) {
+                while (scanner.next()) {
+                    ++rowCount;
                 }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return 0;
+            }
+        }
+        file.setRowCount(rowCount);
+        layout().catalogChanged = true;
+        return rowCount;
+    }
 
-                /* 通过 like 匹配参数进行最终筛选。 */
-                int matchedCount = 0;
-                for (String likeCmpValue : data) {
-                    if(like(likeCmpValue, likeType, patterns)) {
-                        ++matchedCount;
-                    }
+    /**
+     * 共享扫描：递归记录分区路径，将最终分区的数据文件连同需要参与的查询加入共享扫描。
+     */
+    private
+    void addSharedPartitionRanges(Partition partition, Map<String, String> partitionValues, SharedScan sharedScan) {
+        partitionValues.put(partition.getPartitionName(), partition.getValue());
+        if(partition.hasSubpartitions()) {
+            for (Partition subpartition : partition.getSubpartitions()) {
+                addSharedPartitionRanges(subpartition, partitionValues, sharedScan);
+            }
+        } else {
+            int[] queries = sharedScan.queriesFor(partitionValues);
+            /* 两个条件都是分区的查询直接累加最终分区的行数。 */
+            queries = sharedScan.resolveByPartition(queries, () -> rowCount(partition));
+            if(queries.length > 0) {
+                for (File file : partition.getDataFiles()) {
+                    addSharedRanges(file, queries, sharedScan);
                 }
+            }
+        }
+        partitionValues.remove(partition.getPartitionName());
+    }
+
+    private
+    void addSharedRanges(File file, int[] queries, SharedScan sharedScan) {
+        List<FileRange> fileUnits = new ArrayList<>(1);
+        addFileRanges(file, fileUnits, null, null);
+        sharedScan.addUnits(fileUnits, queries, columnStore == null ? null : columnStore.getZoneMap(file));
+    }
 
-                return matchedCount;
-            } else if(!isCmpCol && isLikeCol) { /* 比较参数是分区， like 参数都是列 */
-                /* 获取 like 匹配列值。 */
-                int likeCol = likeColString.charAt(likeColString.length() - 1) - '0';
-
-                /* 通过比较参数完成初步数据筛选。 */
-                List<Partition> initPartitions = partitionIndex.getDepthPartitions(cmpColString);
-                List<String> data = new ArrayList<>(initPartitions.size() * 1024);
-                for (Partition partition : initPartitions) {
-                    /* 比较当前分区的值是否匹配，匹配则将当前分区的所有数据加载。 */
-                    String checkValue = partition.getValue();
-                    switch (cmpType) {
-                        case equals:
-                            if (checkValue.equals(cmpValue)) {
-                                loadPartitionData(partition, likeCol, data);
-                            }
-                            break;
-                        case notEquals:
-                            if (!checkValue.equals(cmpValue)) {
-                                loadPartitionData(partition, likeCol, data);
-                            }
-                            break;
-                        case greater:
-                            if (checkValue.compareTo(cmpValue) > 0) {
-                                loadPartitionData(partition, likeCol, data);
-                            }
-                            break;
-                        case less:
-                            if (checkValue.compareTo(cmpValue) < 0) {
-                                loadPartitionData(partition, likeCol, data);
-                            }
-                            break;
-                    }
+    /**
+     * 将分区下所有最终分区的数据文件加入扫描单元列表。
+     * 区域统计判定为 NONE 的分区和文件直接跳过，判定为 ALL 的直接累加行数。
+     *
+     * @param zoneCheck 区域统计判定
+     * @param metrics 查询指标，为 null 表示不记录
+     * @return 由区域统计直接确定的匹配行数
+     */
+    private
+    long addPartitionRanges(Partition partition, List<FileRange> units, Function<ZoneMap, ZoneMap.Verdict> zoneCheck,
+                            QueryMetrics metrics) {
+        long matchedByZone = 0;
+        Queue<Partition> Q = new LinkedList<>();
+        Q.add(partition);
+        while (!Q.isEmpty()) {
+            Partition p = Objects.requireNonNull(Q.poll());
+            if(metrics != null) {
+                metrics.visitPartition();
+            }
+            ZoneMap zone = layout().zoneMaps.get(p);
+            if(zone != null) {
+                ZoneMap.Verdict verdict = zoneCheck.apply(zone);
+                if(verdict == ZoneMap.Verdict.NONE) {
+                    pruned(metrics);
+                    continue;
+                }
+                if(verdict == ZoneMap.Verdict.ALL) {
+                    matchedByZone += zone.getRowCount();
+                    continue;
                 }
+            }
+            if(p.hasSubpartitions()) {
+                Q.addAll(p.getSubpartitions());
+                continue;
+            }
+
+            for (File file : p.getDataFiles()) {
+                matchedByZone += addFileRanges(file, units, zoneCheck, metrics);
+            }
+        }
+        return matchedByZone;
+    }
 
-                /* 通过 like 匹配参数进行最终筛选。 */
-                int matchedCount = 0;
-                for (String likeCmpValue : data) {
-                    if(like(likeCmpValue, likeType, patterns)) {
-                        ++matchedCount;
-                    }
+    /**
+     * 将数据文件加入扫描单元列表，并行模式下大文件拆分为多个单元：
+     * 文本文件按字节拆分（扫描器会对齐到行首），列式段按行号拆分。
+     *
+     * @param zoneCheck 区域统计判定，为 null 表示不判定
+     * @param metrics 查询指标，为 null 表示不记录
+     * @return 由区域统计直接确定的匹配行数
+     */
+    private
+    long addFileRanges(File file, List<FileRange> units, Function<ZoneMap, ZoneMap.Verdict> zoneCheck,
+                       QueryMetrics metrics) {
+        ZoneMap zone;
+        if(zoneCheck != null && columnStore != null && (zone = columnStore.getZoneMap(file)) != null) {
+            ZoneMap.Verdict verdict = zoneCheck.apply(zone);
+            if(verdict != ZoneMap.Verdict.SOME) {
+                if(metrics != null) {
+                    metrics.skipFile();
                 }
+                return verdict == ZoneMap.Verdict.ALL ? zone.getRowCount() : 0;
+            }
+        }
+        if(metrics != null) {
+            metrics.scanFile();
+        }
+
+        ColumnSegment segment = columnStore == null ? null : columnStore.getSegment(file);
+        long length = segment != null ? segment.getRowCount() : DataFile.lengthOf(file);
+        long splitSize = scanPool == null ? Long.MAX_VALUE : (segment != null ? SPLIT_ROWS : SPLIT_BYTES);
+        long from = 0;
+        do {
+            long to = length - from > splitSize ? from + splitSize : Long.MAX_VALUE;
+            units.add(new FileRange(file, segment, from, to));
+            from = to;
+        } while (from < length);
+        return 0;
+    }
+
+    /**
+     * 对所有扫描单元计数并求和，计划并行时通过 fork/join 并行执行。
+     */
+    private
+    int sumUnits(List<FileRange> units, boolean parallel, ToIntFunction<FileRange> counter) {
+        if(units.isEmpty()) {
+            return 0;
+        }
+        if(!parallel) {
+            int count = 0;
+            for (FileRange unit : units) {
+                count += counter.applyAsInt(unit);
+            }
+            return count;
+        }
+        return scanPool.invoke(new ScanTask<>(units, counter::applyAsInt, Integer::sum));
+    }
 
-                return matchedCount;
-            } else if(isCmpCol) {    /* 比较参数是列, like 参数是分区 */
-                int cmpCol = cmpColString.charAt(cmpColString.length() - 1) - '0';
-
-                /* 通过比较参数完成初步数据筛选。 */
-                List<Partition> initPartitions = partitionIndex.getDepthPartitions(likeColString);
-                int matchedCount = 0;
-                for (Partition partition : initPartitions) {
-                    /* 比较 like 参数。 */
-                    if(!like(partition.getValue(), likeType, patterns)) {
-                        continue;
-                    }
-
-                    /* 加载该分区的所有数据。 */
-                    List<String> data = new ArrayList<>(1024);
-                    loadPartitionData(partition, cmpCol, data);
-
-                    /* 通过比较参数进行第最终筛选。 */
-                    for (String checkValue : data) {
-                        switch (cmpType) {
-                            case equals:
-                                if(checkValue.equals(cmpValue)) {
-                                    ++matchedCount;
-                                }
-                                break;
-                            case notEquals:
-                                if(!checkValue.equals(cmpValue)) {
-                                    ++matchedCount;
-                                }
-                                break;
-                            case greater:
-                                if(checkValue.compareTo(cmpValue) > 0) {
-                                    ++matchedCount;
-                                }
-                                break;
-                            case less:
-                                if(checkValue.compareTo(cmpValue) < 0) {
-                                    ++matchedCount;
-                                }
-                                break;
-                        }
-                    }
+    /**
+     * 统计一个扫描单元中满足条件的行数，每行单遍流经两个谓词，不物化中间结果：
+     * 列式段上谓词按字典值求值，文本文件走字节级的谓词流水线。
+     *
+     * 开启了比较条件位图缓存时，比较条件在单元上的结果记录为行号位图，
+     * 之后比较条件相同的查询只需对位图中的行判断 like 条件。
+     *
+     * @param cmpCol 为 -1 表示比较条件已在分区上判断
+     * @param likeCol 为 -1 表示 like 条件已在分区上判断
+     * @param order 两个谓词都在列上时的求值顺序，记录比较条件位图时总是先比较
+     * @param metrics 查询指标，为 null 表示不记录
+     */
+    private
+    int countUnit(FileRange unit, int cmpCol, QueryParam.CompareType cmpType, String cmpValue, byte[] cmpKey,
+                  int likeCol, LikeMatcher likeMatcher, QueryPlan.PredicateOrder order, QueryMetrics metrics) {
+        if(predicateCache != null && cmpCol >= 0) {
+            PredicateKey key = new PredicateKey(tableName(), cmpCol, cmpType, cmpValue, unit);
+            RowBitmap rows = predicateCache.get(key);
+            if(rows != null) {
+                return unit.segment != null
+                        ? countSegmentRows(unit, rows, cmpType, cmpKey, likeCol, likeMatcher, metrics)
+                        : RowPipeline.countRows(unit, rows, likeCol, likeMatcher, metrics);
+            }
+            RowBitmap.Builder builder = new RowBitmap.Builder();
+            int matchedCount = unit.segment != null
+                    ? countSegmentRecording(unit, cmpCol, cmpType, cmpKey, likeCol, likeMatcher, builder, metrics)
+                    : RowPipeline.countRecording(unit, cmpCol, cmpType, cmpKey, likeCol, likeMatcher, builder, metrics);
+            predicateCache.put(key, builder.build());
+            return matchedCount;
+        }
+
+        if(unit.segment != null) {
+            return new DictionaryFilter(unit.segment, cmpCol, cmpType, cmpKey, likeCol, likeMatcher,
+                    order == QueryPlan.PredicateOrder.LIKE_FIRST).count((int) unit.from, rowEnd(unit), metrics);
+        }
+        return RowPipeline.count(unit, cmpCol, cmpType, cmpKey, likeCol, likeMatcher, order, metrics);
+    }
+
+    /**
+     * 在列式段上先比较后 like 地计数，同时把通过比较的行号（单元内从 0 开始）记录到 ${rows} 中。
+     */
+    private
+    int countSegmentRecording(FileRange unit, int cmpCol, QueryParam.CompareType cmpType, byte[] cmpKey,
+                              int likeCol, LikeMatcher likeMatcher, RowBitmap.Builder rows, QueryMetrics metrics) {
+        DictionaryFilter cmpFilter = new DictionaryFilter(unit.segment, cmpCol, cmpType, cmpKey, -1, likeMatcher);
+        if(cmpFilter.isEmpty()) {
+            return 0;
+        }
+        DictionaryFilter likeFilter = likeCol < 0 ? null
+                : new DictionaryFilter(unit.segment, -1, cmpType, cmpKey, likeCol, likeMatcher);
+        int from = (int) unit.from, to = rowEnd(unit);
+        int matchedCount = 0, cmpPassed = 0;
+        for (int row = from; row < to; row++) {
+            if(cmpFilter.matches(row)) {
+                rows.add(row - from);
+                ++cmpPassed;
+                if(likeFilter == null || likeFilter.matches(row)) {
+                    ++matchedCount;
                 }
+            }
+        }
+        if(metrics != null) {
+            metrics.recordScan(Math.max(0, to - from), 0, Math.max(0, to - from), cmpPassed,
+                    likeFilter == null ? 0 : cmpPassed, likeFilter == null ? 0 : matchedCount);
+        }
+        return matchedCount;
+    }
 
-                return matchedCount;
-            } else {    /* 比较参数和 like 参数都是分区 */
-                System.out.println("Not handler: {isCmpCol: " + false + ", isLikeCol: " + false + "}");
-                return -1;
+    /**
+     * 比较条件的结果已缓存：只对位图中的行判断 like 条件。
+     */
+    private
+    int countSegmentRows(FileRange unit, RowBitmap rows, QueryParam.CompareType cmpType, byte[] cmpKey,
+                         int likeCol, LikeMatcher likeMatcher, QueryMetrics metrics) {
+        if(likeCol < 0) {
+            if(metrics != null) {
+                metrics.matchWithoutScan(rows.getCardinality());
             }
+            return rows.getCardinality();
+        }
+        DictionaryFilter likeFilter = new DictionaryFilter(unit.segment, -1, cmpType, cmpKey, likeCol, likeMatcher);
+        int from = (int) unit.from;
+        int matchedCount = 0;
+        RowBitmap.Cursor cursor = rows.cursor();
+        for (int row = cursor.next(); row >= 0; row = cursor.next()) {
+            if(likeFilter.matches(from + row)) {
+                ++matchedCount;
+            }
+        }
+        if(metrics != null) {
+            metrics.recordScan(rows.getCardinality(), 0, 0, 0, rows.getCardinality(), matchedCount);
+        }
+        return matchedCount;
+    }
+
+    /**
+     * 列式段扫描单元的结束行号。
+     */
+    private
+    int rowEnd(FileRange unit) {
+        return (int) Math.min(unit.to, unit.segment.getRowCount());
+    }
 
+    /**
+     * 比较匹配，统一满足字符串的比较语义。
+     */
+    static
+    boolean compare(String checkValue, QueryParam.CompareType cmpType, String cmpValue) {
+        switch (cmpType) {
+            case equals:
+                return checkValue.equals(cmpValue);
+            case notEquals:
+                return !checkValue.equals(cmpValue);
+            case greater:
+                return checkValue.compareTo(cmpValue) > 0;
+            case less:
+                return checkValue.compareTo(cmpValue) < 0;
         }
+        throw new RuntimeException("!!!!" + cmpType.toString());
     }
 
-    /* ====================================== Private ====================================== */
+    /**
+     * 根据 compareTo 的结果判断是否满足 > 或 < 比较。
+     */
+    static
+    boolean compareResult(int result, QueryParam.CompareType cmpType) {
+        return cmpType == QueryParam.CompareType.greater ? result > 0 : result < 0;
+    }
 
     /**
-     * 加载分区的某列数据到 ${data} 列表中。
+     * 获取表的分区布局，未加载时加载（只加载一次）。
      */
     private
-    void loadPartitionData(Partition partition, int likeCol, List<String> data) {
-        Queue<Partition> Q = new LinkedList<>();
-        Q.add(partition);
-        while (!Q.isEmpty()) {
-            int size = Q.size();
-            for (int i = 0; i < size; i++) {
-                Partition p = Objects.requireNonNull(Q.poll());
-                if(p.hasSubpartitions()) {
-                    Q.addAll(p.getSubpartitions());
-                    continue;
+    Layout layout() {
+        Layout current = layout;
+        if(current == null) {
+            synchronized (this) {
+                if( (current = layout) == null ) {
+                    layout = current = loadLayout();
                 }
+            }
+        }
+        return current;
+    }
+
+    private
+    Layout loadLayout() {
+        Layout current;
+        CatalogSnapshot.TableEntry entry = snapshot;
+        snapshot = null;
+        if(entry != null && entry.isValid()) {
+            /* 目录快照有效：直接使用快照中的分区树和文件列表，不再遍历文件系统。 */
+            current = new Layout(entry.getLastModified(), entry.getDataFiles(), entry.getPartitions(), true);
+        } else {
+            /* 加载表中所有的分区，如果有的话：配置了线程池时各子树并行加载。 */
+            long lastModified = tableDirFile.lastModified();
+            List<File> subdirs = new ArrayList<>();
+            List<DataFile> dataFiles = new ArrayList<>();
+            Partition.listDirectory(tableDirFile, subdirs, dataFiles);
+            List<Partition> partitions = scanPool == null ? loadPartitions(subdirs)
+                    : invoke(scanPool, ForkJoinTask.adapt(() -> PartitionLoadTask.loadAll(subdirs)));
+            current = new Layout(lastModified, dataFiles, partitions, false);
+        }
 
-                /* 加载最终分区的所有数据。 */
-                for (File file : Objects.requireNonNull(p.getPartitionDirFile().listFiles())) {
-                    try {
-                        BufferedReader reader = new BufferedReader(new FileReader(file));
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            data.add(line.split("\\|")[likeCol]);
-                        }
-                        reader.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+        current.catalogChanged = !current.fromSnapshot;
+        /* 一次性转换为列式段文件，之后的查询不再解析文本。 */
+        if(columnStore != null) {
+            List<File> dataFiles = listDataFiles(current);
+            for (File dataFile : dataFiles) {
+                /* 快照中缺少的行数由段文件补上 */
+                if(((DataFile) dataFile).getRowCount() < 0) {
+                    current.catalogChanged = true;
+                    break;
                 }
             }
+            columnStore.build(tableDirFile, dataFiles);
+            /* 由文件的区域统计自底向上合并得到分区的区域统计。 */
+            for (Partition partition : current.partitions) {
+                buildPartitionZoneMap(partition, current.zoneMaps);
+            }
         }
+        return current;
     }
 
     /**
-     * 模糊匹配
-     * 支持 all_like, any_like, none_like
+     * 递归合并分区的区域统计，有文件缺少统计时返回 null。
      */
     private
-    boolean like(String cmpValue, QueryParam.LikeType likeType, Pattern... patterns) {
-        switch (likeType) {
-            case allLike:
-                return StringUtil.allLike(cmpValue, patterns);
-            case anyLike:
-                return StringUtil.anyLike(cmpValue, patterns);
-            case noneLike:
-                return StringUtil.noneLike(cmpValue, patterns);
+    ZoneMap buildPartitionZoneMap(Partition partition, Map<Partition, ZoneMap> zoneMaps) {
+        ZoneMap zone = new ZoneMap(0, new String[0], new String[0]);
+        boolean complete = true;
+        if(partition.hasSubpartitions()) {
+            for (Partition subpartition : partition.getSubpartitions()) {
+                ZoneMap subZone = buildPartitionZoneMap(subpartition, zoneMaps);
+                if(subZone == null) {
+                    complete = false;
+                } else if(complete) {
+                    zone = zone.merge(subZone);
+                }
+            }
+        } else {
+            for (File file : partition.getDataFiles()) {
+                ZoneMap fileZone = columnStore.getZoneMap(file);
+                if(fileZone == null) {
+                    return null;
+                }
+                zone = zone.merge(fileZone);
+            }
+        }
+        if(!complete) {
+            return null;
         }
-        throw new RuntimeException("!!!!" + likeType.toString());
+        zoneMaps.put(partition, zone);
+        return zone;
     }
 
     /**
-     * 递归加载分区。
+     * 列出表的所有数据文件：无分区表为表目录下的文件，多级分区表为所有最终分区下的文件。
      */
     private
-    List<Partition> loadPartitions(File partitionDir) {
-        if(partitionDir == null || !partitionDir.exists() || !partitionDir.isDirectory()) {
-            return Collections.emptyList();
+    List<File> listDataFiles(Layout current) {
+        List<File> dataFiles = new ArrayList<>();
+        if(current.partitions.isEmpty()) {
+            dataFiles.addAll(current.dataFiles);
+            return dataFiles;
         }
 
-        File[] files;
-        if( (files = partitionDir.listFiles()) == null || files.length == 0 ) {
+        Queue<Partition> Q = new LinkedList<>(current.partitions);
+        while (!Q.isEmpty()) {
+            Partition partition = Objects.requireNonNull(Q.poll());
+            if(partition.hasSubpartitions()) {
+                Q.addAll(partition.getSubpartitions());
+                continue;
+            }
+            dataFiles.addAll(partition.getDataFiles());
+        }
+        return dataFiles;
+    }
+
+    /**
+     * 递归加载分区。
+     */
+    private static
+    List<Partition> loadPartitions(List<File> partitionDirs) {
+        if(partitionDirs.isEmpty()) {
             return Collections.emptyList();
         }
+        List<Partition> partitions = new ArrayList<>(partitionDirs.size());
+        for (File partitionDir : partitionDirs) {
+            /* 先取目录的修改时间再列出目录，列出期间的变化会使快照在下次校验时失效。 */
+            long lastModified = partitionDir.lastModified();
+            List<File> subdirs = new ArrayList<>();
+            List<DataFile> dataFiles = new ArrayList<>();
+            Partition.listDirectory(partitionDir, subdirs, dataFiles);
+            partitions.add(new Partition(partitionDir, loadPartitions(subdirs), dataFiles, lastModified));
+        }
+        return partitions;
+    }
+
+    /**
+     * 在线程池中执行任务，已在 fork/join 线程中时直接执行（如多张表并行加载时）。
+     */
+    static
+    <T> T invoke(ForkJoinPool pool, ForkJoinTask<T> task) {
+        return ForkJoinTask.inForkJoinPool() ? task.invoke() : pool.invoke(task);
+    }
+
+    /**
+     * 并行加载分区：每个子目录一个 fork/join 任务，各子树的目录列举同时进行。
+     */
+    private static class PartitionLoadTask extends RecursiveTask<Partition> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File partitionDir;
 
-        /* 加载该目录下的所有分区表 */
-        List<Partition> partitions = new ArrayList<>(files.length);
-        for (File file : files) {
-            if(file.isDirectory()) {
-                partitions.add(new Partition(file, loadPartitions(file)));
+        PartitionLoadTask(File partitionDir) {
+            this.partitionDir = partitionDir;
+        }
+
+        /**
+         * 并行加载一组分区目录，必须在 fork/join 线程中调用。
+         */
+        static
+        List<Partition> loadAll(List<File> partitionDirs) {
+            if(partitionDirs.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<PartitionLoadTask> tasks = new ArrayList<>(partitionDirs.size());
+            for (File partitionDir : partitionDirs) {
+                PartitionLoadTask task = new PartitionLoadTask(partitionDir);
+                task.fork();
+                tasks.add(task);
             }
+            List<Partition> partitions = new ArrayList<>(tasks.size());
+            for (PartitionLoadTask task : tasks) {
+                partitions.add(task.join());
+            }
+            return partitions;
+        }
+
+        @Override
+        protected Partition compute() {
+            long lastModified = partitionDir.lastModified();
+            List<File> subdirs = new ArrayList<>();
+            List<DataFile> dataFiles = new ArrayList<>();
+            Partition.listDirectory(partitionDir, subdirs, dataFiles);
+            return new Partition(partitionDir, loadAll(subdirs), dataFiles, lastModified);
+        }
+
+    }
+
+    /**
+     * 表的分区布局：分区树、分区索引、数据文件列表，以及分区的区域统计。
+     */
+    private static class Layout {
+
+        /**
+         * 加载时表目录的修改时间
+         */
+        final long lastModified;
+
+        /**
+         * 表目录下的数据文件（无分区表）
+         */
+        final List<DataFile> dataFiles;
+
+        final List<Partition> partitions;
+
+        final PartitionIndex partitionIndex;
+
+        /**
+         * 是否由目录快照得到
+         */
+        final boolean fromSnapshot;
+
+        /**
+         * 分区 -> 区域统计（分区下所有文件统计的合并），只有所有文件都有统计的分区才有
+         */
+        final Map<Partition, ZoneMap> zoneMaps = new HashMap<>();
+
+        /**
+         * 表的行采样，首次规划时采集
+         */
+        volatile TableSample sample;
+
+        /**
+         * 上次生成快照条目之后是否有快照中没有的内容（见 isCatalogChanged）
+         */
+        volatile boolean catalogChanged;
+
+        Layout(long lastModified, List<DataFile> dataFiles, List<Partition> partitions, boolean fromSnapshot) {
+            this.lastModified = lastModified;
+            this.dataFiles = dataFiles;
+            this.partitions = partitions;
+            this.partitionIndex = new PartitionIndex(partitions);
+            this.fromSnapshot = fromSnapshot;
+        }
+
+    }
+
+    /**
+     * 一次查询的执行计划：需要扫描的单元、不需要扫描即确定的行数、谓词的求值顺序和是否并行，
+     * 以及代价模型的估计值（只用于 explain）。
+     */
+    private static class ScanPlan {
+
+        final int cmpCol;
+
+        final int likeCol;
+
+        final List<FileRange> units = new ArrayList<>();
+
+        QueryMetrics.PlanPath planPath;
+
+        long matchedWithoutScan;
+
+        QueryPlan.PredicateOrder order;
+
+        boolean parallel;
+
+        double compareSelectivity = -1;
+
+        double likeSelectivity = -1;
+
+        double compareFirstCost;
+
+        double likeFirstCost;
+
+        long estimatedScanRows;
+
+        long estimatedRows;
+
+        int sampleRows;
+
+        ScanPlan(int cmpCol, int likeCol) {
+            this.cmpCol = cmpCol;
+            this.likeCol = likeCol;
         }
 
-        return partitions;
     }
 
 }
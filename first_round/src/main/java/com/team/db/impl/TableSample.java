@@ -0,0 +1,188 @@
+package com.team.db.impl;
+
+import com.team.db.DataFile;
+import com.team.db.QueryParam;
+import com.team.db.like.LikeMatcher;
+import com.team.db.store.ColumnSegment;
+import com.team.db.store.ColumnStore;
+import com.team.db.store.MappedRowScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 表的行采样，供查询规划估计列上条件的选择率。
+ *
+ * 从表的数据文件中均匀选取至多 ${MAX_FILES} 个文件，每个文件内按行号（列式段）或字节偏移（文本文件）
+ * 等距取行，共至多 ${MAX_ROWS} 行，保留所有列的值。按行而不是按去重值采样，
+ * 因此估计的选择率自然反映值的频率，两个条件一起在样本上求值也反映了列之间的相关性。
+ */
+final class TableSample {
+
+    /* ====================================== Fields ====================================== */
+
+    static final int MAX_ROWS = 256;
+
+    private static final int MAX_FILES = 32;
+
+    /**
+     * 列名的最后一位数字是列号，最多 10 列
+     */
+    private static final int[] ALL_COLUMNS = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+
+    /**
+     * 估计文本文件平均行长时读取的字节数
+     */
+    private static final long ROW_BYTES_PROBE = 1L << 20;
+
+    private static final TableSample EMPTY = new TableSample(new ArrayList<>(0), 0);
+
+    private final List<String[]> rows;
+
+    /**
+     * 文本文件的平均行长（字节），没有文本文件或无法估计时为 0
+     */
+    private final double avgRowBytes;
+
+    private TableSample(List<String[]> rows, double avgRowBytes) {
+        this.rows = rows;
+        this.avgRowBytes = avgRowBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TableSample{" +
+                "rows=" + rows.size() +
+                ", avgRowBytes=" + avgRowBytes +
+                '}';
+    }
+
+    /* ====================================== Package ====================================== */
+
+    /**
+     * 采样表的数据文件。已转换为列式段的文件从段中取值，其余文件直接读取文本。
+     */
+    static
+    TableSample collect(List<File> dataFiles, ColumnStore columnStore) {
+        if(dataFiles.isEmpty()) {
+            return EMPTY;
+        }
+        int fileCount = Math.min(dataFiles.size(), MAX_FILES);
+        int rowsPerFile = (MAX_ROWS + fileCount - 1) / fileCount;
+        List<String[]> rows = new ArrayList<>(fileCount * rowsPerFile);
+        double avgRowBytes = 0;
+        for (int i = 0; i < fileCount; i++) {
+            File file = dataFiles.get((int) ((long) i * dataFiles.size() / fileCount));
+            ColumnSegment segment = columnStore == null ? null : columnStore.getSegment(file);
+            try {
+                if(segment != null) {
+                    sampleSegment(segment, rowsPerFile, rows);
+                } else {
+                    sampleText(file, rowsPerFile, rows);
+                    if(avgRowBytes == 0) {
+                        avgRowBytes = probeRowBytes(file);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new TableSample(rows, avgRowBytes);
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    double getAvgRowBytes() {
+        return avgRowBytes;
+    }
+
+    /**
+     * 样本中满足比较条件的比例。
+     */
+    double compareSelectivity(int cmpCol, QueryParam.CompareType cmpType, String cmpValue) {
+        return selectivity(cmpCol, cmpType, cmpValue, -1, null);
+    }
+
+    /**
+     * 样本中满足 like 条件的比例。
+     */
+    double likeSelectivity(int likeCol, LikeMatcher likeMatcher) {
+        return selectivity(-1, null, null, likeCol, likeMatcher);
+    }
+
+    /**
+     * 样本中同时满足列上两个条件的比例，为 -1 的列不判断。
+     * 按 (满足数 + 0.5) / (样本数 + 1) 平滑，样本中没有满足的行时也不会得到 0。
+     */
+    double selectivity(int cmpCol, QueryParam.CompareType cmpType, String cmpValue,
+                       int likeCol, LikeMatcher likeMatcher) {
+        int matched = 0;
+        for (String[] row : rows) {
+            if(cmpCol >= 0 && !TableImpl.compare(row[cmpCol], cmpType, cmpValue)) {
+                continue;
+            }
+            if(likeCol >= 0 && !likeMatcher.matches(row[likeCol])) {
+                continue;
+            }
+            ++matched;
+        }
+        return (matched + 0.5) / (rows.size() + 1);
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private static
+    void sampleSegment(ColumnSegment segment, int sampleRows, List<String[]> rows) {
+        int rowCount = segment.getRowCount();
+        int n = Math.min(sampleRows, rowCount);
+        for (int k = 0; k < n; k++) {
+            int row = (int) ((long) k * rowCount / n);
+            String[] values = new String[ALL_COLUMNS.length];
+            for (int c = 0; c < values.length; c++) {
+                values[c] = segment.getValue(c, row);
+            }
+            rows.add(values);
+        }
+    }
+
+    /**
+     * 在文件中等距取 ${sampleRows} 个字节偏移，各取偏移之后的第一行。
+     */
+    private static
+    void sampleText(File file, int sampleRows, List<String[]> rows) throws IOException {
+        long length = DataFile.lengthOf(file);
+        for (int k = 0; k < sampleRows; k++) {
+            long offset = length * k / sampleRows;
+            try (MappedRowScanner scanner = new MappedRowScanner(file, offset, Long.MAX_VALUE, ALL_COLUMNS)) {
+                if(!scanner.next()) {
+                    break;
+                }
+                String[] values = new String[ALL_COLUMNS.length];
+                for (int c = 0; c < values.length; c++) {
+                    values[c] = scanner.decode(c);
+                }
+                rows.add(values);
+            }
+        }
+    }
+
+    /**
+     * 统计文件开头 ${ROW_BYTES_PROBE} 字节内的行数，得到平均行长。
+     */
+    private static
+    double probeRowBytes(File file) throws IOException {
+        long probe = Math.min(DataFile.lengthOf(file), ROW_BYTES_PROBE);
+        long rowCount = 0;
+        try (MappedRowScanner scanner = new MappedRowScanner(file, 0, probe, new int[]{0})) {
+            while (scanner.next()) {
+                ++rowCount;
+            }
+        }
+        return rowCount == 0 ? 0 : (double) probe / rowCount;
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.team.db.like;
+
+import java.util.*;
+
+/**
+ * Aho-Corasick 多模式子串自动机，一次扫描找出值中出现的所有字面片段。
+ *
+ * ASCII 字符的转移预先展开为完整的 DFA 表，其余字符走 goto/fail 链。
+ * 片段编号用 long 位图表示，最多支持 64 个片段（like 模式串最多 10 个）。
+ */
+class AhoCorasick {
+
+    /* ====================================== Fields ====================================== */
+
+    static final int MAX_FRAGMENTS = 64;
+
+    private static final int ASCII = 128;
+
+    /**
+     * 每个状态的出边：字符 -> 状态
+     */
+    private final List<Map<Character, Integer>> gotoTable = new ArrayList<>();
+
+    private int[] fail;
+
+    /**
+     * ASCII 字符的完整转移表
+     */
+    private int[][] asciiDelta;
+
+    /**
+     * 每个状态的输出（合并了失败链上的输出）：片段编号位图
+     */
+    private long[] outputs;
+
+    /**
+     * @param fragments 非空字面片段，个数不超过 MAX_FRAGMENTS
+     */
+    AhoCorasick(List<String> fragments) {
+        if(fragments.size() > MAX_FRAGMENTS) {
+            throw new IllegalArgumentException("Too many fragments: " + fragments.size());
+        }
+        List<Long> stateOutputs = new ArrayList<>();
+        gotoTable.add(new HashMap<>());
+        stateOutputs.add(0L);
+        for (int f = 0; f < fragments.size(); f++) {
+            int state = 0;
+            for (char c : fragments.get(f).toCharArray()) {
+                Integer next = gotoTable.get(state).get(c);
+                if(next == null) {
+                    next = gotoTable.size();
+                    gotoTable.add(new HashMap<>());
+                    stateOutputs.add(0L);
+                    gotoTable.get(state).put(c, next);
+                }
+                state = next;
+            }
+            stateOutputs.set(state, stateOutputs.get(state) | (1L << f));
+        }
+
+        int states = gotoTable.size();
+        fail = new int[states];
+        outputs = new long[states];
+        asciiDelta = new int[states][];
+        for (int s = 0; s < states; s++) {
+            outputs[s] = stateOutputs.get(s);
+        }
+        build();
+    }
+
+    /* ====================================== Package ====================================== */
+
+    /**
+     * 一次扫描 ${value}，返回出现的片段位图。
+     *
+     * @param stopMask 出现该位图中的任意片段即提前返回
+     */
+    long scan(String value, long stopMask) {
+        long found = 0;
+        int state = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if(c < ASCII) {
+                state = asciiDelta[state][c];
+            } else {
+                Integer next;
+                while ( (next = gotoTable.get(state).get(c)) == null && state != 0 ) {
+                    state = fail[state];
+                }
+                state = next == null ? 0 : next;
+            }
+            long output = outputs[state];
+            if(output != 0) {
+                found |= output;
+                if((output & stopMask) != 0) {
+                    return found;
+                }
+            }
+        }
+        return found;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * BFS 构建失败指针，沿失败链合并输出，并展开 ASCII 转移表。
+     * BFS 保证处理某状态时，其失败状态（深度更小）已处理完毕。
+     */
+    private
+    void build() {
+        Queue<Integer> Q = new LinkedList<>();
+        Q.add(0);
+        while (!Q.isEmpty()) {
+            int state = Objects.requireNonNull(Q.poll());
+            for (Map.Entry<Character, Integer> edge : gotoTable.get(state).entrySet()) {
+                char c = edge.getKey();
+                int child = edge.getValue();
+                int childFail = 0;
+                if(state != 0) {
+                    int f = fail[state];
+                    Integer next;
+                    while ( (next = gotoTable.get(f).get(c)) == null && f != 0 ) {
+                        f = fail[f];
+                    }
+                    childFail = next == null ? 0 : next;
+                }
+                fail[child] = childFail;
+                outputs[child] |= outputs[childFail];
+                Q.add(child);
+            }
+
+            int[] delta = new int[ASCII];
+            for (char c = 0; c < ASCII; c++) {
+                Integer next = gotoTable.get(state).get(c);
+                delta[c] = next != null ? next : (state == 0 ? 0 : asciiDelta[fail[state]][c]);
+            }
+            asciiDelta[state] = delta;
+        }
+    }
+
+}
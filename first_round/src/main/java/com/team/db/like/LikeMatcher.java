@@ -0,0 +1,240 @@
+package com.team.db.like;
+
+import com.team.db.QueryParam;
+
+import java.util.*;
+
+/**
+ * 编译后的 like 条件：一组模式串 + like 类型，不使用正则表达式。
+ *
+ *  - ALL_LIKE：逐个模式串匹配，任意一个失败即返回。
+ *  - ANY_LIKE / NONE_LIKE：所有模式串合并为一个多模式匹配器，每个值只扫描一遍：
+ *      EXACT 走哈希查找，PREFIX/SUFFIX 走前缀/后缀字典树，
+ *      CONTAINS 与 GENERAL 的必需字面片段编译进同一个 Aho-Corasick 自动机，
+ *      GENERAL 只在其片段出现时才做完整校验。
+ */
+public class LikeMatcher {
+
+    /* ====================================== Fields ====================================== */
+
+    private final QueryParam.LikeType likeType;
+
+    private final LikePattern[] patterns;
+
+    /* ---------- ANY_LIKE / NONE_LIKE 的多模式匹配器 ---------- */
+
+    private final Set<String> exacts = new HashSet<>();
+
+    private final CharTrie prefixes = new CharTrie();
+
+    /**
+     * 后缀逆序存储
+     */
+    private final CharTrie suffixes = new CharTrie();
+
+    private AhoCorasick automaton;
+
+    /**
+     * 自动机中 CONTAINS 片段的位图，出现即匹配
+     */
+    private long containsMask;
+
+    /**
+     * 自动机片段编号 -> 以该片段预筛选的 GENERAL 模式串
+     */
+    private final List<List<LikePattern>> fragmentGenerals = new ArrayList<>();
+
+    /**
+     * 没有字面片段（如 '%'、'___'）的 GENERAL 模式串，每个值都需要校验
+     */
+    private final List<LikePattern> unfilteredGenerals = new ArrayList<>();
+
+    private LikeMatcher(QueryParam.LikeType likeType, LikePattern[] patterns) {
+        this.likeType = likeType;
+        this.patterns = patterns;
+        if(likeType != QueryParam.LikeType.allLike) {
+            buildAny();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LikeMatcher{" +
+                "likeType=" + likeType +
+                ", patterns=" + Arrays.toString(patterns) +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    public static
+    LikeMatcher compile(QueryParam.LikeType likeType, String... likeParams) {
+        LikePattern[] patterns = new LikePattern[likeParams.length];
+        for (int i = 0; i < likeParams.length; i++) {
+            patterns[i] = LikePattern.compile(likeParams[i]);
+        }
+        return new LikeMatcher(likeType, patterns);
+    }
+
+    public QueryParam.LikeType getLikeType() {
+        return likeType;
+    }
+
+    public LikePattern[] getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * 值是否满足 like 条件。
+     */
+    public
+    boolean matches(String value) {
+        switch (likeType) {
+            case allLike:
+                for (LikePattern pattern : patterns) {
+                    if(!pattern.matches(value)) {
+                        return false;
+                    }
+                }
+                return true;
+            case anyLike:
+                return matchesAny(value);
+            case noneLike:
+                return !matchesAny(value);
+        }
+        throw new RuntimeException("!!!!" + likeType.toString());
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private
+    void buildAny() {
+        List<String> fragments = new ArrayList<>();
+        Map<String, Integer> fragmentIndex = new HashMap<>();
+        for (LikePattern pattern : patterns) {
+            switch (pattern.getKind()) {
+                case EXACT:
+                    exacts.add(pattern.getLiteral());
+                    break;
+                case PREFIX:
+                    prefixes.add(pattern.getLiteral());
+                    break;
+                case SUFFIX:
+                    suffixes.add(new StringBuilder(pattern.getLiteral()).reverse().toString());
+                    break;
+                default:
+                    String fragment = pattern.requiredFragment();
+                    if(fragment.isEmpty() || fragmentIndex.size() == AhoCorasick.MAX_FRAGMENTS
+                            && !fragmentIndex.containsKey(fragment)) {
+                        unfilteredGenerals.add(pattern);
+                        break;
+                    }
+                    Integer index = fragmentIndex.get(fragment);
+                    if(index == null) {
+                        fragmentIndex.put(fragment, index = fragments.size());
+                        fragments.add(fragment);
+                        fragmentGenerals.add(new ArrayList<>());
+                    }
+                    if(pattern.getKind() == LikePattern.Kind.CONTAINS) {
+                        containsMask |= 1L << index;
+                    } else {
+                        fragmentGenerals.get(index).add(pattern);
+                    }
+                    break;
+            }
+        }
+        if(!fragments.isEmpty()) {
+            automaton = new AhoCorasick(fragments);
+        }
+    }
+
+    private
+    boolean matchesAny(String value) {
+        if(!exacts.isEmpty() && exacts.contains(value)) {
+            return true;
+        }
+        if(!prefixes.isEmpty() && prefixes.matchesPrefixOf(value, false)) {
+            return true;
+        }
+        if(!suffixes.isEmpty() && suffixes.matchesPrefixOf(value, true)) {
+            return true;
+        }
+        if(automaton != null) {
+            long found = automaton.scan(value, containsMask);
+            if((found & containsMask) != 0) {
+                return true;
+            }
+            /* 只校验片段出现过的 GENERAL 模式串 */
+            while (found != 0) {
+                int index = Long.numberOfTrailingZeros(found);
+                found &= found - 1;
+                for (LikePattern pattern : fragmentGenerals.get(index)) {
+                    if(pattern.matches(value)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        for (LikePattern pattern : unfilteredGenerals) {
+            if(pattern.matches(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* ====================================== Supports ====================================== */
+
+    /**
+     * 字符字典树，判断值的某个前缀（或逆序时的后缀）是否为已添加的字面串。
+     */
+    private static class CharTrie {
+
+        private final Node root = new Node();
+
+        private boolean empty = true;
+
+        void add(String literal) {
+            Node node = root;
+            for (int i = 0; i < literal.length(); i++) {
+                node = node.children.computeIfAbsent(literal.charAt(i), k -> new Node());
+            }
+            node.terminal = true;
+            empty = false;
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        /**
+         * @param reverse 为 true 时从值的末尾向前匹配
+         */
+        boolean matchesPrefixOf(String value, boolean reverse) {
+            Node node = root;
+            int n = value.length();
+            for (int i = 0; ; i++) {
+                if(node.terminal) {
+                    return true;
+                }
+                if(i == n) {
+                    return false;
+                }
+                node = node.children.get(reverse ? value.charAt(n - 1 - i) : value.charAt(i));
+                if(node == null) {
+                    return false;
+                }
+            }
+        }
+
+        private static class Node {
+
+            final Map<Character, Node> children = new HashMap<>(4);
+
+            boolean terminal;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,279 @@
+package com.team.db.like;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 编译后的单个 like 模式串。
+ *
+ * '%' 匹配任意个字符，'_' 匹配一个字符，'\%'、'\_'、'\\' 为转义后的字面字符。
+ * 按形状分为以下几类，每类使用专门的匹配方式：
+ *  - EXACT:    'abc'       equals
+ *  - PREFIX:   'abc%'      startsWith
+ *  - SUFFIX:   '%abc'      endsWith
+ *  - CONTAINS: '%abc%'     indexOf
+ *  - GENERAL:  其余由 '%' 分隔、可含 '_' 的片段序列，逐段贪心匹配
+ */
+public class LikePattern {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * '_' 在片段中的占位符，使用 Unicode 非字符 U+FFFF，正常数据中不会出现。
+     */
+    static final char ANY_CHAR = '\uFFFF';
+
+    public enum Kind {
+        EXACT,
+        PREFIX,
+        SUFFIX,
+        CONTAINS,
+        GENERAL
+    }
+
+    private final String like;
+
+    private final Kind kind;
+
+    /**
+     * EXACT/PREFIX/SUFFIX/CONTAINS 的字面串
+     */
+    private final String literal;
+
+    /**
+     * GENERAL：以 '%' 分隔的片段，'_' 以 ANY_CHAR 表示
+     */
+    private final char[][] segments;
+
+    /**
+     * GENERAL：是否以 '%' 开头 / 结尾
+     */
+    private final boolean leadingAny;
+
+    private final boolean trailingAny;
+
+    /**
+     * GENERAL：片段总长度，也是值的最小长度
+     */
+    private final int minLength;
+
+    private LikePattern(String like, Kind kind, String literal, char[][] segments,
+                        boolean leadingAny, boolean trailingAny, int minLength) {
+        this.like = like;
+        this.kind = kind;
+        this.literal = literal;
+        this.segments = segments;
+        this.leadingAny = leadingAny;
+        this.trailingAny = trailingAny;
+        this.minLength = minLength;
+    }
+
+    @Override
+    public String toString() {
+        return "LikePattern{" +
+                "like='" + like + '\'' +
+                ", kind=" + kind +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    public String getLike() {
+        return like;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * EXACT/PREFIX/SUFFIX/CONTAINS 的字面串，GENERAL 返回 null。
+     */
+    public String getLiteral() {
+        return literal;
+    }
+
+    /**
+     * 值匹配时必然包含的最长字面片段（不含 '_'），没有时返回空串。
+     * 用于多模式自动机的预筛选。
+     */
+    public
+    String requiredFragment() {
+        if(kind != Kind.GENERAL) {
+            return literal;
+        }
+        String best = "";
+        for (char[] segment : segments) {
+            int start = 0;
+            for (int i = 0; i <= segment.length; i++) {
+                if(i == segment.length || segment[i] == ANY_CHAR) {
+                    if(i - start > best.length()) {
+                        best = new String(segment, start, i - start);
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+        return best;
+    }
+
+    public
+    boolean matches(String value) {
+        switch (kind) {
+            case EXACT:
+                return value.equals(literal);
+            case PREFIX:
+                return value.startsWith(literal);
+            case SUFFIX:
+                return value.endsWith(literal);
+            case CONTAINS:
+                return value.contains(literal);
+            default:
+                return matchesGeneral(value);
+        }
+    }
+
+    /**
+     * 编译 like 模式串。
+     */
+    public static
+    LikePattern compile(String like) {
+        /* 按未转义的 '%' 切分片段，'_' 转换为占位符。 */
+        List<StringBuilder> parts = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean hasAnyChar = false;
+        for (int i = 0; i < like.length(); i++) {
+            char c = like.charAt(i);
+            if(c == '\\' && i + 1 < like.length()) {
+                char next = like.charAt(i + 1);
+                if(next == '%' || next == '_' || next == '\\') {
+                    current.append(next);
+                    ++i;
+                    continue;
+                }
+            }
+            if(c == '%') {
+                parts.add(current);
+                current = new StringBuilder();
+            } else if(c == '_') {
+                current.append(ANY_CHAR);
+                hasAnyChar = true;
+            } else {
+                current.append(c);
+            }
+        }
+        parts.add(current);
+
+        int n = parts.size();
+        boolean leadingAny = n > 1 && parts.get(0).length() == 0;
+        boolean trailingAny = n > 1 && parts.get(n - 1).length() == 0;
+
+        /* 去掉首尾和连续 '%' 产生的空片段 */
+        List<String> segments = new ArrayList<>(n);
+        for (StringBuilder part : parts) {
+            if(part.length() > 0) {
+                segments.add(part.toString());
+            }
+        }
+
+        if(!hasAnyChar) {
+            if(n == 1) {
+                return new LikePattern(like, Kind.EXACT, segments.isEmpty() ? "" : segments.get(0),
+                        null, false, false, 0);
+            }
+            if(segments.size() == 1) {
+                String literal = segments.get(0);
+                if(leadingAny && trailingAny) {
+                    return new LikePattern(like, Kind.CONTAINS, literal, null, true, true, 0);
+                }
+                if(leadingAny) {
+                    return new LikePattern(like, Kind.SUFFIX, literal, null, true, false, 0);
+                }
+                if(trailingAny) {
+                    return new LikePattern(like, Kind.PREFIX, literal, null, false, true, 0);
+                }
+            }
+        }
+
+        char[][] segmentChars = new char[segments.size()][];
+        int minLength = 0;
+        for (int i = 0; i < segmentChars.length; i++) {
+            segmentChars[i] = segments.get(i).toCharArray();
+            minLength += segmentChars[i].length;
+        }
+        return new LikePattern(like, Kind.GENERAL, null, segmentChars, leadingAny, trailingAny, minLength);
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 片段之间由 '%' 分隔，且每个片段长度固定，因此：
+     * 首片段（非 '%' 开头时）锚定在开头，尾片段（非 '%' 结尾时）锚定在结尾，
+     * 中间片段依次取最左匹配即可。
+     */
+    private
+    boolean matchesGeneral(String value) {
+        int length = value.length();
+        if(length < minLength) {
+            return false;
+        }
+        int first = 0, last = segments.length;
+        int from = 0, to = length;
+
+        if(!leadingAny) {
+            /* 没有 '%' 的模式（如 'a_c'）只有一个片段，需要同时锚定两端 */
+            if(segments.length == 1 && !trailingAny) {
+                return length == segments[0].length && regionMatches(value, 0, segments[0]);
+            }
+            if(!regionMatches(value, 0, segments[0])) {
+                return false;
+            }
+            from = segments[0].length;
+            ++first;
+        }
+        if(!trailingAny && last > first) {
+            char[] tail = segments[last - 1];
+            int tailStart = length - tail.length;
+            if(tailStart < from || !regionMatches(value, tailStart, tail)) {
+                return false;
+            }
+            to = tailStart;
+            --last;
+        }
+        for (int s = first; s < last; s++) {
+            int pos = indexOf(value, segments[s], from, to);
+            if(pos < 0) {
+                return false;
+            }
+            from = pos + segments[s].length;
+        }
+        return true;
+    }
+
+    private static
+    boolean regionMatches(String value, int offset, char[] segment) {
+        if(offset + segment.length > value.length()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length; i++) {
+            if(segment[i] != ANY_CHAR && segment[i] != value.charAt(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在 value[from, to) 中查找片段的最左匹配位置。
+     */
+    private static
+    int indexOf(String value, char[] segment, int from, int to) {
+        for (int i = from, last = to - segment.length; i <= last; i++) {
+            if(regionMatches(value, i, segment)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
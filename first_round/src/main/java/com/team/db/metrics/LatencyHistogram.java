@@ -0,0 +1,117 @@
+package com.team.db.metrics;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的延迟直方图：固定的指数桶边界（微秒级到 10 秒），多线程可同时记录。
+ *
+ * 分位数取所在桶的上界，误差不超过一个桶的宽度（相邻边界约 2~2.5 倍）。
+ */
+public final class LatencyHistogram {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 桶上界（纳秒），最后还有一个 +Inf 桶
+     */
+    private static final long[] BOUNDS = {
+            10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L,
+            10_000_000_000L
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sumNanos = new LongAdder();
+
+    /* ====================================== Public ====================================== */
+
+    public
+    void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && nanos > BOUNDS[bucket]) {
+            ++bucket;
+        }
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    public
+    long getCount() {
+        return count.sum();
+    }
+
+    public
+    long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * 分位数的估计（纳秒），没有记录时返回 0，落在 +Inf 桶时返回 Long.MAX_VALUE。
+     *
+     * @param quantile [0, 1]
+     */
+    public
+    long quantile(double quantile) {
+        long total = getCount();
+        if(total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total), seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += buckets.get(i);
+            if(seen >= Math.max(1, rank)) {
+                return BOUNDS[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * JSON 对象：次数、总耗时、常用分位数和各桶计数（键为桶上界，单位纳秒）。
+     */
+    public
+    String toJson() {
+        StringBuilder builder = new StringBuilder(512)
+                .append("{\"count\":").append(getCount())
+                .append(",\"sumNanos\":").append(getSumNanos())
+                .append(",\"p50Nanos\":").append(quantile(0.5))
+                .append(",\"p90Nanos\":").append(quantile(0.9))
+                .append(",\"p99Nanos\":").append(quantile(0.99))
+                .append(",\"buckets\":{");
+        for (int i = 0; i <= BOUNDS.length; i++) {
+            if(i > 0) {
+                builder.append(',');
+            }
+            builder.append('"').append(i < BOUNDS.length ? String.valueOf(BOUNDS[i]) : "+Inf").append("\":")
+                    .append(buckets.get(i));
+        }
+        return builder.append("}}").toString();
+    }
+
+    /**
+     * 按 Prometheus 文本格式输出（累积桶，单位秒）。
+     *
+     * @param labels 附加的标签，如 phase="scan"，可以为空
+     */
+    public
+    void writePrometheus(PrintWriter out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i <= BOUNDS.length; i++) {
+            cumulative += buckets.get(i);
+            String le = i < BOUNDS.length ? String.valueOf(BOUNDS[i] / 1e9) : "+Inf";
+            out.println(name + "_bucket{" + prefix + "le=\"" + le + "\"} " + cumulative);
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.println(name + "_sum" + suffix + " " + getSumNanos() / 1e9);
+        out.println(name + "_count" + suffix + " " + getCount());
+    }
+
+}
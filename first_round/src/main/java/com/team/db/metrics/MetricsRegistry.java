@@ -0,0 +1,249 @@
+package com.team.db.metrics;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 查询指标的汇总：各阶段和各执行路径的延迟直方图、扫描量的累计计数，以及最近若干次查询的明细。
+ * 可以导出为 JSON 或 Prometheus 文本格式。所有方法都是线程安全的。
+ */
+public final class MetricsRegistry {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 保留明细的最近查询数
+     */
+    private static final int RECENT_SIZE = 128;
+
+    private final LatencyHistogram parse = new LatencyHistogram();
+
+    private final LatencyHistogram plan = new LatencyHistogram();
+
+    private final LatencyHistogram scan = new LatencyHistogram();
+
+    private final LatencyHistogram total = new LatencyHistogram();
+
+    /**
+     * 执行路径 -> 总延迟
+     */
+    private final Map<QueryMetrics.PlanPath, LatencyHistogram> byPlanPath = new EnumMap<>(QueryMetrics.PlanPath.class);
+
+    /**
+     * 批量查询的延迟
+     */
+    private final LatencyHistogram batch = new LatencyHistogram();
+
+    private final LongAdder batchQueries = new LongAdder();
+
+    private final LongAdder partitionsVisited = new LongAdder();
+
+    private final LongAdder partitionsPruned = new LongAdder();
+
+    private final LongAdder filesScanned = new LongAdder();
+
+    private final LongAdder filesSkipped = new LongAdder();
+
+    private final LongAdder bytesRead = new LongAdder();
+
+    private final LongAdder rowsScanned = new LongAdder();
+
+    private final LongAdder rowsMatchedWithoutScan = new LongAdder();
+
+    private final LongAdder compareEvaluated = new LongAdder();
+
+    private final LongAdder comparePassed = new LongAdder();
+
+    private final LongAdder likeEvaluated = new LongAdder();
+
+    private final LongAdder likePassed = new LongAdder();
+
+    private final QueryMetrics[] recent = new QueryMetrics[RECENT_SIZE];
+
+    private long recentCount;
+
+    public MetricsRegistry() {
+        for (QueryMetrics.PlanPath planPath : QueryMetrics.PlanPath.values()) {
+            byPlanPath.put(planPath, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsRegistry{" +
+                "queries=" + total.getCount() +
+                ", p50Nanos=" + total.quantile(0.5) +
+                ", p99Nanos=" + total.quantile(0.99) +
+                ", batches=" + batch.getCount() +
+                ", rowsScanned=" + rowsScanned.sum() +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 汇总一次查询的指标。
+     */
+    public
+    void record(QueryMetrics metrics) {
+        parse.record(metrics.getParseNanos());
+        plan.record(metrics.getPlanNanos());
+        scan.record(metrics.getScanNanos());
+        total.record(metrics.getTotalNanos());
+        if(metrics.getPlanPath() != null) {
+            byPlanPath.get(metrics.getPlanPath()).record(metrics.getTotalNanos());
+        }
+        partitionsVisited.add(metrics.getPartitionsVisited());
+        partitionsPruned.add(metrics.getPartitionsPruned());
+        filesScanned.add(metrics.getFilesScanned());
+        filesSkipped.add(metrics.getFilesSkipped());
+        bytesRead.add(metrics.getBytesRead());
+        rowsScanned.add(metrics.getRowsScanned());
+        rowsMatchedWithoutScan.add(metrics.getRowsMatchedWithoutScan());
+        compareEvaluated.add(metrics.getCompareEvaluated());
+        comparePassed.add(metrics.getComparePassed());
+        likeEvaluated.add(metrics.getLikeEvaluated());
+        likePassed.add(metrics.getLikePassed());
+        synchronized (recent) {
+            recent[(int) (recentCount++ % RECENT_SIZE)] = metrics;
+        }
+    }
+
+    /**
+     * 汇总一次批量查询：批量查询共享扫描，只记录整批的延迟和查询数。
+     */
+    public
+    void recordBatch(int queries, long parseNanos, long totalNanos) {
+        batch.record(totalNanos);
+        batchQueries.add(queries);
+        parse.record(parseNanos);
+    }
+
+    /**
+     * 最近的查询明细，从旧到新。
+     */
+    public
+    List<QueryMetrics> getRecent() {
+        synchronized (recent) {
+            int size = (int) Math.min(recentCount, RECENT_SIZE);
+            List<QueryMetrics> list = new ArrayList<>(size);
+            for (long i = recentCount - size; i < recentCount; i++) {
+                list.add(recent[(int) (i % RECENT_SIZE)]);
+            }
+            return list;
+        }
+    }
+
+    public
+    LatencyHistogram getTotal() {
+        return total;
+    }
+
+    public
+    String toJson() {
+        StringBuilder builder = new StringBuilder(4096)
+                .append("{\"latency\":{")
+                .append("\"parse\":").append(parse.toJson())
+                .append(",\"plan\":").append(plan.toJson())
+                .append(",\"scan\":").append(scan.toJson())
+                .append(",\"total\":").append(total.toJson())
+                .append(",\"batch\":").append(batch.toJson())
+                .append("},\"planPaths\":{");
+        boolean first = true;
+        for (Map.Entry<QueryMetrics.PlanPath, LatencyHistogram> entry : byPlanPath.entrySet()) {
+            if(!first) {
+                builder.append(',');
+            }
+            first = false;
+            builder.append('"').append(entry.getKey()).append("\":").append(entry.getValue().toJson());
+        }
+        builder.append("},\"counters\":{")
+                .append("\"batchQueries\":").append(batchQueries.sum())
+                .append(",\"partitionsVisited\":").append(partitionsVisited.sum())
+                .append(",\"partitionsPruned\":").append(partitionsPruned.sum())
+                .append(",\"filesScanned\":").append(filesScanned.sum())
+                .append(",\"filesSkipped\":").append(filesSkipped.sum())
+                .append(",\"bytesRead\":").append(bytesRead.sum())
+                .append(",\"rowsScanned\":").append(rowsScanned.sum())
+                .append(",\"rowsMatchedWithoutScan\":").append(rowsMatchedWithoutScan.sum())
+                .append(",\"compareEvaluated\":").append(compareEvaluated.sum())
+                .append(",\"comparePassed\":").append(comparePassed.sum())
+                .append(",\"likeEvaluated\":").append(likeEvaluated.sum())
+                .append(",\"likePassed\":").append(likePassed.sum())
+                .append("},\"recent\":[");
+        List<QueryMetrics> recentMetrics = getRecent();
+        for (int i = 0; i < recentMetrics.size(); i++) {
+            if(i > 0) {
+                builder.append(',');
+            }
+            builder.append(recentMetrics.get(i).toJson());
+        }
+        return builder.append("]}").toString();
+    }
+
+    public
+    String toPrometheus() {
+        StringWriter writer = new StringWriter(4096);
+        PrintWriter out = new PrintWriter(writer);
+        out.println("# HELP odatafind_query_phase_seconds Query latency by phase.");
+        out.println("# TYPE odatafind_query_phase_seconds histogram");
+        parse.writePrometheus(out, "odatafind_query_phase_seconds", "phase=\"parse\"");
+        plan.writePrometheus(out, "odatafind_query_phase_seconds", "phase=\"plan\"");
+        scan.writePrometheus(out, "odatafind_query_phase_seconds", "phase=\"scan\"");
+        total.writePrometheus(out, "odatafind_query_phase_seconds", "phase=\"total\"");
+        out.println("# HELP odatafind_query_seconds Query latency by plan path.");
+        out.println("# TYPE odatafind_query_seconds histogram");
+        for (Map.Entry<QueryMetrics.PlanPath, LatencyHistogram> entry : byPlanPath.entrySet()) {
+            entry.getValue().writePrometheus(out, "odatafind_query_seconds", "path=\"" + entry.getKey() + "\"");
+        }
+        out.println("# HELP odatafind_batch_seconds Batch query latency.");
+        out.println("# TYPE odatafind_batch_seconds histogram");
+        batch.writePrometheus(out, "odatafind_batch_seconds", "");
+        counter(out, "odatafind_batch_queries_total", "Queries answered in batches.", batchQueries);
+        counter(out, "odatafind_partitions_visited_total", "Partitions visited by the planner.", partitionsVisited);
+        counter(out, "odatafind_partitions_pruned_total", "Partitions pruned by the planner.", partitionsPruned);
+        counter(out, "odatafind_files_scanned_total", "Data files scanned.", filesScanned);
+        counter(out, "odatafind_files_skipped_total", "Data files resolved by zone maps.", filesSkipped);
+        counter(out, "odatafind_bytes_read_total", "Text bytes scanned.", bytesRead);
+        counter(out, "odatafind_rows_scanned_total", "Rows scanned.", rowsScanned);
+        counter(out, "odatafind_rows_matched_without_scan_total", "Rows matched from statistics.", rowsMatchedWithoutScan);
+        counter(out, "odatafind_compare_evaluated_total", "Rows the compare predicate was evaluated on.", compareEvaluated);
+        counter(out, "odatafind_compare_passed_total", "Rows passing the compare predicate.", comparePassed);
+        counter(out, "odatafind_like_evaluated_total", "Rows the LIKE predicate was evaluated on.", likeEvaluated);
+        counter(out, "odatafind_like_passed_total", "Rows passing the LIKE predicate.", likePassed);
+        out.flush();
+        return writer.toString();
+    }
+
+    public
+    void writeJson(File file) throws IOException {
+        write(file, toJson());
+    }
+
+    public
+    void writePrometheus(File file) throws IOException {
+        write(file, toPrometheus());
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private static
+    void counter(PrintWriter out, String name, String help, LongAdder value) {
+        out.println("# HELP " + name + " " + help);
+        out.println("# TYPE " + name + " counter");
+        out.println(name + " " + value.sum());
+    }
+
+    private static
+    void write(File file, String content) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+}
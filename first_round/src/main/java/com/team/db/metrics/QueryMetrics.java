@@ -0,0 +1,298 @@
+package com.team.db.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次查询的执行指标。
+ *
+ * 耗时由执行查询的线程设置；分区、文件和行的计数可能由多个扫描线程同时累加，因此是原子的。
+ * 只在开启了指标时创建，关闭时各处传入 null，不产生任何开销。
+ */
+public final class QueryMetrics {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 执行路径
+     */
+    public enum PlanPath {
+        /**
+         * 结果来自查询结果缓存
+         */
+        CACHED,
+        /**
+         * 无分区表，逐文件扫描
+         */
+        UNPARTITIONED,
+        /**
+         * 无分区表上的分区条件，不可能满足
+         */
+        EMPTY,
+        /**
+         * 分区表，两个条件都在列上，扫描所有分区
+         */
+        PARTITION_SCAN,
+        /**
+         * 分区表，只有一个分区条件且分区键只出现在同一层，由分区值索引直接得到满足的分区
+         */
+        PARTITION_INDEX,
+        /**
+         * 分区表，自顶向下裁剪分区树
+         */
+        PARTITION_TREE
+    }
+
+    private final String query;
+
+    private volatile PlanPath planPath;
+
+    private long parseNanos;
+
+    private long planNanos;
+
+    private long scanNanos;
+
+    private long totalNanos;
+
+    private int result;
+
+    private final AtomicLong partitionsVisited = new AtomicLong();
+
+    private final AtomicLong partitionsPruned = new AtomicLong();
+
+    /**
+     * 需要扫描的文件数
+     */
+    private final AtomicLong filesScanned = new AtomicLong();
+
+    /**
+     * 区域统计直接确定结果（全不满足或全满足）而不需要扫描的文件数
+     */
+    private final AtomicLong filesSkipped = new AtomicLong();
+
+    /**
+     * 扫描的文本字节数，列式段只计行数
+     */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private final AtomicLong rowsScanned = new AtomicLong();
+
+    /**
+     * 不需要扫描即确定满足的行数（分区行数、区域统计）
+     */
+    private final AtomicLong rowsMatchedWithoutScan = new AtomicLong();
+
+    private final AtomicLong compareEvaluated = new AtomicLong();
+
+    private final AtomicLong comparePassed = new AtomicLong();
+
+    private final AtomicLong likeEvaluated = new AtomicLong();
+
+    private final AtomicLong likePassed = new AtomicLong();
+
+    public QueryMetrics(String query) {
+        this.query = query;
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 记录一个扫描单元的计数：每个谓词实际求值的行数和通过的行数。
+     * 谓词按顺序短路求值，后求值的谓词只在前一个通过的行上求值。
+     */
+    public
+    void recordScan(long rows, long bytes, long cmpEvaluated, long cmpPassed, long likeEvaluated, long likePassed) {
+        rowsScanned.addAndGet(rows);
+        if(bytes > 0) {
+            bytesRead.addAndGet(bytes);
+        }
+        this.compareEvaluated.addAndGet(cmpEvaluated);
+        this.comparePassed.addAndGet(cmpPassed);
+        this.likeEvaluated.addAndGet(likeEvaluated);
+        this.likePassed.addAndGet(likePassed);
+    }
+
+    public
+    void visitPartition() {
+        partitionsVisited.incrementAndGet();
+    }
+
+    public
+    void prunePartition() {
+        partitionsPruned.incrementAndGet();
+    }
+
+    public
+    void scanFile() {
+        filesScanned.incrementAndGet();
+    }
+
+    public
+    void skipFile() {
+        filesSkipped.incrementAndGet();
+    }
+
+    public
+    void matchWithoutScan(long rows) {
+        rowsMatchedWithoutScan.addAndGet(rows);
+    }
+
+    /**
+     * 单行 JSON。
+     */
+    public
+    String toJson() {
+        return "{\"query\":\"" + escape(query) + "\"" +
+                ",\"planPath\":" + (planPath == null ? "null" : "\"" + planPath + "\"") +
+                ",\"result\":" + result +
+                ",\"parseNanos\":" + parseNanos +
+                ",\"planNanos\":" + planNanos +
+                ",\"scanNanos\":" + scanNanos +
+                ",\"totalNanos\":" + totalNanos +
+                ",\"partitionsVisited\":" + partitionsVisited.get() +
+                ",\"partitionsPruned\":" + partitionsPruned.get() +
+                ",\"filesScanned\":" + filesScanned.get() +
+                ",\"filesSkipped\":" + filesSkipped.get() +
+                ",\"bytesRead\":" + bytesRead.get() +
+                ",\"rowsScanned\":" + rowsScanned.get() +
+                ",\"rowsMatchedWithoutScan\":" + rowsMatchedWithoutScan.get() +
+                ",\"compareEvaluated\":" + compareEvaluated.get() +
+                ",\"comparePassed\":" + comparePassed.get() +
+                ",\"likeEvaluated\":" + likeEvaluated.get() +
+                ",\"likePassed\":" + likePassed.get() +
+                "}";
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public PlanPath getPlanPath() {
+        return planPath;
+    }
+
+    public void setPlanPath(PlanPath planPath) {
+        this.planPath = planPath;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public void setParseNanos(long parseNanos) {
+        this.parseNanos = parseNanos;
+    }
+
+    public long getPlanNanos() {
+        return planNanos;
+    }
+
+    public void setPlanNanos(long planNanos) {
+        this.planNanos = planNanos;
+    }
+
+    public long getScanNanos() {
+        return scanNanos;
+    }
+
+    public void setScanNanos(long scanNanos) {
+        this.scanNanos = scanNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public void setTotalNanos(long totalNanos) {
+        this.totalNanos = totalNanos;
+    }
+
+    public int getResult() {
+        return result;
+    }
+
+    public void setResult(int result) {
+        this.result = result;
+    }
+
+    public long getPartitionsVisited() {
+        return partitionsVisited.get();
+    }
+
+    public long getPartitionsPruned() {
+        return partitionsPruned.get();
+    }
+
+    public long getFilesScanned() {
+        return filesScanned.get();
+    }
+
+    public long getFilesSkipped() {
+        return filesSkipped.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getRowsScanned() {
+        return rowsScanned.get();
+    }
+
+    public long getRowsMatchedWithoutScan() {
+        return rowsMatchedWithoutScan.get();
+    }
+
+    public long getCompareEvaluated() {
+        return compareEvaluated.get();
+    }
+
+    public long getComparePassed() {
+        return comparePassed.get();
+    }
+
+    public long getLikeEvaluated() {
+        return likeEvaluated.get();
+    }
+
+    public long getLikePassed() {
+        return likePassed.get();
+    }
+
+    /* ====================================== Package ====================================== */
+
+    static
+    String escape(String value) {
+        if(value == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.toString();
+    }
+
+}
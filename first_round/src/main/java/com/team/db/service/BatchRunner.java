@@ -0,0 +1,261 @@
+package com.team.db.service;
+
+import com.team.db.Database;
+import com.team.util.ThreadUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 保持顺序的并行批量查询：把查询按输入顺序切成连续的块，所有块一次性提交给工作线程，
+ * 每块作为一个批量查询执行（块内相同的查询只算一次，同表的查询共享扫描）；
+ * 调用线程按输入顺序依次等待每一块，下一块一完成就把它的答案写入输出通道，
+ * 前面的块写出的同时后面的块还在计算。
+ *
+ * 答案以 ASCII 数字直接编码进一个直接缓冲区；在等待还没算完的下一块之前（或缓冲区满时）写入 FileChannel，
+ * 已完成的连续一段答案立即写出，不被后面慢的查询拖住，连续完成的多块仍合并为一次写入。
+ * 每行一个答案，最后一行没有换行符（与 Main 原来的输出一致）。
+ *
+ * 用法：
+ *  BatchRunner.Report report = new BatchRunner(db).setWorkers(8).run(params, answerFile);
+ */
+public class BatchRunner {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 输出缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    /**
+     * 一个答案最长的字节数：换行符、负号和 int 的最大位数
+     */
+    private static final int MAX_ANSWER_BYTES = 12;
+
+    private final Database database;
+
+    /**
+     * 并行执行的块数
+     */
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 每块的查询数，越大块内共享的扫描越多，越小写出开始得越早、负载越均衡。
+     * 0 表示自动：每个工作线程两块
+     */
+    private int chunkSize = 0;
+
+    public BatchRunner(Database database) {
+        this.database = database;
+    }
+
+    public BatchRunner setWorkers(int workers) {
+        if(workers < 1) {
+            throw new IllegalArgumentException("workers: " + workers);
+        }
+        this.workers = workers;
+        return this;
+    }
+
+    public BatchRunner setChunkSize(int chunkSize) {
+        if(chunkSize < 0) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchRunner{" +
+                "workers=" + workers +
+                ", chunkSize=" + chunkSize +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 执行 ${params} 中的所有查询，按输入顺序把答案写入 ${answerFile}（覆盖原有内容）。
+     */
+    public
+    Report run(List<String> params, File answerFile) throws IOException {
+        long startNs = System.nanoTime();
+        Report report = new Report(params.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workers, ThreadUtil.daemonThreads("batch-worker-"));
+        try (FileChannel channel = FileChannel.open(answerFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int chunkSize = this.chunkSize > 0 ? this.chunkSize
+                    : Math.max(1, (params.size() + 2 * workers - 1) / (2 * workers));
+            List<Future<int[]>> chunks = new ArrayList<>((params.size() + chunkSize - 1) / chunkSize);
+            for (int from = 0; from < params.size(); from += chunkSize) {
+                List<String> chunk = params.subList(from, Math.min(from + chunkSize, params.size()));
+                chunks.add(executor.submit(() -> database.matchesCounts(chunk)));
+            }
+            report.chunks = chunks.size();
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            byte[] digits = new byte[10];
+            boolean first = true;
+            for (Future<int[]> chunk : chunks) {
+                if(!chunk.isDone() && buffer.position() > 0) {
+                    /* 下一块还没算完：先写出已完成的答案再等待 */
+                    report.bytes += drain(channel, buffer);
+                    ++report.flushes;
+                }
+                long waitNs = System.nanoTime();
+                int[] answers = await(chunk);
+                report.waitNanos += System.nanoTime() - waitNs;
+                if(report.firstAnswerNanos == 0) {
+                    report.firstAnswerNanos = System.nanoTime() - startNs;
+                }
+                for (int answer : answers) {
+                    if(buffer.remaining() < MAX_ANSWER_BYTES) {
+                        report.bytes += drain(channel, buffer);
+                        ++report.flushes;
+                    }
+                    if(!first) {
+                        buffer.put((byte) '\n');
+                    }
+                    first = false;
+                    putDecimal(buffer, answer, digits);
+                }
+            }
+            report.bytes += drain(channel, buffer);
+            ++report.flushes;
+        } finally {
+            executor.shutdownNow();
+        }
+        report.elapsedNanos = System.nanoTime() - startNs;
+        return report;
+    }
+
+    /**
+     * 一次批量执行的统计。
+     */
+    public static class Report {
+
+        private final int queries;
+
+        private int chunks;
+
+        private long bytes;
+
+        /**
+         * 写入通道的次数
+         */
+        private int flushes;
+
+        /**
+         * 从开始到第一块答案可写出的时间
+         */
+        private long firstAnswerNanos;
+
+        /**
+         * 写出线程等待下一块完成的总时间，接近总耗时说明瓶颈在查询而不是写出
+         */
+        private long waitNanos;
+
+        private long elapsedNanos;
+
+        Report(int queries) {
+            this.queries = queries;
+        }
+
+        public int getQueries() {
+            return queries;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * 每秒完成的查询数
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : queries * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    "queries=" + queries +
+                    ", chunks=" + chunks +
+                    ", bytes=" + bytes +
+                    ", flushes=" + flushes +
+                    ", elapsedMs=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) +
+                    ", firstAnswerMs=" + TimeUnit.NANOSECONDS.toMillis(firstAnswerNanos) +
+                    ", waitMs=" + TimeUnit.NANOSECONDS.toMillis(waitNanos) +
+                    ", queriesPerSecond=" + String.format("%.1f", getThroughput()) +
+                    '}';
+        }
+
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private static
+    int[] await(Future<int[]> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for answers.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 把缓冲区的内容全部写入通道并清空。
+     *
+     * @return 写出的字节数
+     */
+    private static
+    int drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int bytes = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return bytes;
+    }
+
+    /**
+     * 以十进制 ASCII 写入一个整数，不产生 String。
+     */
+    private static
+    void putDecimal(ByteBuffer buffer, int value, byte[] digits) {
+        if(value < 0) {
+            /* 取负数表示，Integer.MIN_VALUE 也不会溢出 */
+            buffer.put((byte) '-');
+        } else {
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (n > 0) {
+            buffer.put(digits[--n]);
+        }
+    }
+
+}
@@ -0,0 +1,403 @@
+package com.team.db.service;
+
+import com.team.db.Database;
+import com.team.db.QueryParam;
+import com.team.db.metrics.LatencyHistogram;
+import com.team.util.ThreadUtil;
+
+import java.io.Closeable;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 共享一个 Database 的并发查询服务：固定数量的工作线程、有界的等待队列、每个请求的截止时间，
+ * 以及相同在途查询的合并。
+ *
+ *  - 准入控制：等待队列满时 submit 立即抛出 RejectedExecutionException，由调用者退避或降级，
+ *    突发的请求不会无限堆积在内存中；
+ *  - 截止时间和取消：每个请求的 Future 到期即以 TimeoutException 结束，也可以随时 cancel。
+ *    还在排队的查询如果所有请求都已到期或取消，出队时直接丢弃，不占用工作线程；
+ *    已经开始的扫描不中断，结果照常进入数据库的结果缓存，重试时可以直接命中；
+ *  - 合并：规范化后相等的查询（见 QueryParam.equals）在计算完成之前只计算一次，
+ *    后到的请求等待同一次计算，不再占用队列。
+ *
+ * 查询串在 submit 时解析，格式错误立即抛出 IllegalArgumentException。
+ * Database 的实现必须是线程安全的（DatabaseImpl 是）。
+ *
+ * 用法：
+ *  try (QueryService service = new QueryService(db, new QueryServiceConfig().setWorkers(8))) {
+ *      int count = service.submit(param, 1000).get();
+ *  }
+ */
+public class QueryService implements Closeable {
+
+    /* ====================================== Fields ====================================== */
+
+    private final Database database;
+
+    private final QueryServiceConfig config;
+
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * 请求截止时间的定时器
+     */
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * 规范化的查询 -> 在途的计算（排队中或执行中）
+     */
+    private final ConcurrentHashMap<QueryParam, Call> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder submitted = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder timedOut = new LongAdder();
+
+    private final LongAdder cancelled = new LongAdder();
+
+    /**
+     * 出队时所有请求都已结束而丢弃的查询
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * 查询在队列中等待的时间
+     */
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    /**
+     * 查询的执行时间
+     */
+    private final LatencyHistogram execution = new LatencyHistogram();
+
+    /**
+     * 请求从提交到得到结果的时间（只统计成功的请求）
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public QueryService(Database database) {
+        this(database, new QueryServiceConfig());
+    }
+
+    public QueryService(Database database, QueryServiceConfig config) {
+        this.database = database;
+        this.config = config;
+        this.workers = new ThreadPoolExecutor(config.getWorkers(), config.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()), ThreadUtil.daemonThreads("query-worker-"));
+        this.timer = new ScheduledThreadPoolExecutor(1, ThreadUtil.daemonThreads("query-deadline-"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public String toString() {
+        return "QueryService{" +
+                "config=" + config +
+                ", queued=" + workers.getQueue().size() +
+                ", running=" + workers.getActiveCount() +
+                ", inFlight=" + inFlight.size() +
+                ", submitted=" + submitted.sum() +
+                ", completed=" + completed.sum() +
+                ", coalesced=" + coalesced.sum() +
+                ", rejected=" + rejected.sum() +
+                ", timedOut=" + timedOut.sum() +
+                ", cancelled=" + cancelled.sum() +
+                ", dropped=" + dropped.sum() +
+                ", failed=" + failed.sum() +
+                ", p50Nanos=" + latency.quantile(0.5) +
+                ", p99Nanos=" + latency.quantile(0.99) +
+                ", queueWaitP99Nanos=" + queueWait.quantile(0.99) +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 以默认超时提交一个查询。
+     */
+    public
+    CompletableFuture<Integer> submit(String param) {
+        return submit(param, config.getDefaultTimeoutMillis());
+    }
+
+    /**
+     * 提交一个查询，返回的 Future 在得到结果、到达截止时间（TimeoutException）或被取消时结束。
+     *
+     * @param timeoutMillis 从提交开始计的超时，0 表示没有截止时间
+     * @throws IllegalArgumentException 查询格式错误
+     * @throws RejectedExecutionException 等待队列已满或服务已关闭
+     */
+    public
+    CompletableFuture<Integer> submit(String param, long timeoutMillis) {
+        if(timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis: " + timeoutMillis);
+        }
+        QueryParam key = QueryParam.valueOf(param);
+        if(key == null) {
+            throw new IllegalArgumentException("Empty query.");
+        }
+        if(workers.isShutdown()) {
+            throw new RejectedExecutionException("QueryService is closed.");
+        }
+        long startNs = System.nanoTime();
+        submitted.increment();
+
+        Call call;
+        while (true) {
+            if(config.isCoalesce()) {
+                Call existing = inFlight.get(key);
+                if(existing != null) {
+                    if(existing.attach()) {
+                        coalesced.increment();
+                        call = existing;
+                        break;
+                    }
+                    /* 已被丢弃、正在移除的计算不能再加入 */
+                    inFlight.remove(key, existing);
+                    continue;
+                }
+            }
+            Call created = new Call(key, param);
+            created.attach();
+            if(config.isCoalesce() && inFlight.putIfAbsent(key, created) != null) {
+                continue;
+            }
+            try {
+                workers.execute(created);
+            } catch (RejectedExecutionException e) {
+                /* 期间合并进来的请求一起以拒绝结束 */
+                rejected.increment();
+                created.finish(null, e);
+                throw e;
+            }
+            call = created;
+            break;
+        }
+        return request(call, timeoutMillis, startNs);
+    }
+
+    /**
+     * 同步执行一个查询，等待结果。
+     *
+     * @param timeoutMillis 0 表示没有截止时间
+     * @throws TimeoutException 到达截止时间
+     * @throws RejectedExecutionException 等待队列已满或服务已关闭
+     */
+    public
+    int matchesCount(String param, long timeoutMillis) throws TimeoutException, InterruptedException {
+        CompletableFuture<Integer> request = submit(param, timeoutMillis);
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            request.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram getExecution() {
+        return execution;
+    }
+
+    /**
+     * 不再接受新的查询，等待已接受的查询执行完。
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                /* 继续等待正在执行的扫描 */
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 一个请求：等待计算的结果，到达截止时间或被取消时单独结束，并从计算中退出。
+     */
+    private
+    CompletableFuture<Integer> request(Call call, long timeoutMillis, long startNs) {
+        CompletableFuture<Integer> request = new CompletableFuture<>();
+        ScheduledFuture<?> deadline = timeoutMillis == 0 ? null : timer.schedule(() -> {
+            if(request.completeExceptionally(new TimeoutException(
+                    "Query timed out after " + timeoutMillis + " ms: " + call.param))) {
+                timedOut.increment();
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        request.whenComplete((count, e) -> {
+            if(deadline != null) {
+                deadline.cancel(false);
+            }
+            if(e == null) {
+                completed.increment();
+                latency.record(System.nanoTime() - startNs);
+            } else if(request.isCancelled()) {
+                cancelled.increment();
+            }
+            call.detach();
+        });
+        call.result.whenComplete((count, e) -> {
+            if(e == null) {
+                request.complete(count);
+            } else {
+                request.completeExceptionally(e);
+            }
+        });
+        return request;
+    }
+
+    /**
+     * 一次计算：排队后由工作线程执行一次，结果交给所有合并进来的请求。
+     */
+    private final class Call implements Runnable {
+
+        final QueryParam key;
+
+        final String param;
+
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        final long enqueuedNs = System.nanoTime();
+
+        /**
+         * 还在等待结果的请求数
+         */
+        private int waiters;
+
+        /**
+         * 出队时已没有请求等待而被丢弃，之后不能再合并
+         */
+        private boolean abandoned;
+
+        Call(QueryParam key, String param) {
+            this.key = key;
+            this.param = param;
+        }
+
+        /**
+         * 合并一个请求，计算已被丢弃时返回 false。
+         */
+        synchronized
+        boolean attach() {
+            if(abandoned) {
+                return false;
+            }
+            ++waiters;
+            return true;
+        }
+
+        synchronized
+        void detach() {
+            --waiters;
+        }
+
+        /**
+         * 开始执行，没有请求在等待时丢弃。
+         */
+        private synchronized
+        boolean start() {
+            if(waiters <= 0) {
+                abandoned = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            long startNs = System.nanoTime();
+            queueWait.record(startNs - enqueuedNs);
+            if(!start()) {
+                dropped.increment();
+                finish(null, new CancellationException("All requests ended before the query started: " + param));
+                return;
+            }
+            try {
+                int count = database.matchesCount(param);
+                execution.record(System.nanoTime() - startNs);
+                finish(count, null);
+            } catch (Throwable e) {
+                failed.increment();
+                finish(null, e);
+            }
+        }
+
+        /**
+         * 先从在途表中移除再交出结果，之后到达的相同查询重新计算（通常命中结果缓存）。
+         */
+        void finish(Integer count, Throwable e) {
+            inFlight.remove(key, this);
+            if(e == null) {
+                result.complete(count);
+            } else {
+                result.completeExceptionally(e);
+            }
+        }
+
+    }
+
+}
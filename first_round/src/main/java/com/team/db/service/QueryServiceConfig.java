@@ -0,0 +1,85 @@
+package com.team.db.service;
+
+/**
+ * 并发查询服务的配置，所有 setter 都可以链式调用。
+ */
+public class QueryServiceConfig {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 执行查询的工作线程数
+     */
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 等待执行的查询队列的容量，队列满时新的查询被拒绝（准入控制），合并到已有查询的请求不占队列
+     */
+    private int queueCapacity = 1024;
+
+    /**
+     * 未指定超时的查询使用的超时（毫秒），0 表示没有截止时间
+     */
+    private long defaultTimeoutMillis = 0;
+
+    /**
+     * 是否合并相同的（规范化后相等的）在途查询：后到的请求等待同一次计算，不再排队
+     */
+    private boolean coalesce = true;
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public QueryServiceConfig setWorkers(int workers) {
+        if(workers < 1) {
+            throw new IllegalArgumentException("workers: " + workers);
+        }
+        this.workers = workers;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public QueryServiceConfig setQueueCapacity(int queueCapacity) {
+        if(queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public long getDefaultTimeoutMillis() {
+        return defaultTimeoutMillis;
+    }
+
+    public QueryServiceConfig setDefaultTimeoutMillis(long defaultTimeoutMillis) {
+        if(defaultTimeoutMillis < 0) {
+            throw new IllegalArgumentException("defaultTimeoutMillis: " + defaultTimeoutMillis);
+        }
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        return this;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public QueryServiceConfig setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryServiceConfig{" +
+                "workers=" + workers +
+                ", queueCapacity=" + queueCapacity +
+                ", defaultTimeoutMillis=" + defaultTimeoutMillis +
+                ", coalesce=" + coalesce +
+                '}';
+    }
+
+}
@@ -0,0 +1,449 @@
+package com.team.db.stats;
+
+import com.team.db.QueryParam;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 一列（在一个文件、一个分区或整张表上）的统计：行数、空串数、最小值、最大值、
+ * 去重计数草图（HyperLogLog）、等深直方图和最频繁的 ${TOP_K} 个值。
+ *
+ * 由一个单元中每个去重值的准确计数构建，多个单元的统计可以合并：
+ * 行数和空串数精确相加，草图取并集；直方图和高频值的合并是近似的：
+ * 直方图把两边的桶按上界排序后重新等深分桶，高频值把两边的计数相加后取前 ${TOP_K} 个。
+ *
+ * 值的比较使用 String.compareTo，与查询的比较语义一致。
+ */
+public final class ColumnStatistics {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 直方图的桶数
+     */
+    static final int BUCKETS = 32;
+
+    /**
+     * 保留的高频值个数
+     */
+    static final int TOP_K = 16;
+
+    private final long rowCount;
+
+    private final long emptyCount;
+
+    /**
+     * 没有行时为 null
+     */
+    private final String min;
+
+    private final String max;
+
+    private final HyperLogLog distinct;
+
+    /**
+     * 直方图第 i 个桶的上界（含），第 0 个桶的下界是 ${min}，第 i 个桶的下界是第 i - 1 个桶的上界（不含）
+     */
+    private final String[] bounds;
+
+    private final long[] bucketRows;
+
+    /**
+     * 高频值及其行数，按行数从大到小
+     */
+    private final String[] topValues;
+
+    private final long[] topCounts;
+
+    private ColumnStatistics(long rowCount, long emptyCount, String min, String max, HyperLogLog distinct,
+                             String[] bounds, long[] bucketRows, String[] topValues, long[] topCounts) {
+        this.rowCount = rowCount;
+        this.emptyCount = emptyCount;
+        this.min = min;
+        this.max = max;
+        this.distinct = distinct;
+        this.bounds = bounds;
+        this.bucketRows = bucketRows;
+        this.topValues = topValues;
+        this.topCounts = topCounts;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnStatistics{" +
+                "rowCount=" + rowCount +
+                ", emptyCount=" + emptyCount +
+                ", distinct=" + getDistinctCount() +
+                ", min='" + min + '\'' +
+                ", max='" + max + '\'' +
+                ", buckets=" + bounds.length +
+                ", top=" + (topValues.length == 0 ? "[]" : "['" + topValues[0] + "' x" + topCounts[0] + ", ...]") +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 由一个单元中每个去重值的准确计数构建。
+     *
+     * @param values 按 String.compareTo 升序排列的去重值，只使用前 ${size} 个
+     * @param counts 每个值的行数，为 0 的值忽略
+     */
+    public static
+    ColumnStatistics of(String[] values, long[] counts, int size) {
+        long rowCount = 0, emptyCount = 0;
+        HyperLogLog distinct = new HyperLogLog();
+        String min = null, max = null;
+        for (int i = 0; i < size; i++) {
+            if(counts[i] == 0) {
+                continue;
+            }
+            rowCount += counts[i];
+            if(values[i].isEmpty()) {
+                emptyCount += counts[i];
+            }
+            distinct.add(values[i]);
+            if(min == null) {
+                min = values[i];
+            }
+            max = values[i];
+        }
+
+        /* 等深直方图：按顺序累加，达到每桶的目标行数时结束一个桶，同一个值不会跨桶。 */
+        long depth = Math.max(1, (rowCount + BUCKETS - 1) / BUCKETS);
+        List<String> bounds = new ArrayList<>(BUCKETS + 1);
+        List<Long> bucketRows = new ArrayList<>(BUCKETS + 1);
+        long acc = 0;
+        String last = null;
+        for (int i = 0; i < size; i++) {
+            if(counts[i] == 0) {
+                continue;
+            }
+            acc += counts[i];
+            last = values[i];
+            if(acc >= depth) {
+                bounds.add(last);
+                bucketRows.add(acc);
+                acc = 0;
+            }
+        }
+        if(acc > 0) {
+            bounds.add(last);
+            bucketRows.add(acc);
+        }
+
+        /* 前 TOP_K 个高频值：按行数降序，行数相同时按值升序。 */
+        Integer[] order = new Integer[size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if(counts[i] > 0) {
+                order[n++] = i;
+            }
+        }
+        Arrays.sort(order, 0, n, (a, b) -> counts[a] != counts[b] ? Long.compare(counts[b], counts[a]) : a - b);
+        int k = Math.min(TOP_K, n);
+        String[] topValues = new String[k];
+        long[] topCounts = new long[k];
+        for (int i = 0; i < k; i++) {
+            topValues[i] = values[order[i]];
+            topCounts[i] = counts[order[i]];
+        }
+        return new ColumnStatistics(rowCount, emptyCount, min, max, distinct,
+                bounds.toArray(new String[0]), toLongs(bucketRows), topValues, topCounts);
+    }
+
+    /**
+     * ${rowCount} 行都是空串的列，用于文件中不存在的列。
+     */
+    public static
+    ColumnStatistics empty(long rowCount) {
+        return of(new String[]{""}, new long[]{rowCount}, 1);
+    }
+
+    /**
+     * 合并两个单元的统计。
+     */
+    public
+    ColumnStatistics merge(ColumnStatistics other) {
+        if(other.rowCount == 0) {
+            return this;
+        }
+        if(rowCount == 0) {
+            return other;
+        }
+
+        /* 直方图：两边的桶按上界排序，上界相同的桶合并，再按新的目标深度重新分桶。 */
+        int total = bounds.length + other.bounds.length;
+        String[] allBounds = new String[total];
+        long[] allRows = new long[total];
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            boolean mine = i < bounds.length;
+            allBounds[i] = mine ? bounds[i] : other.bounds[i - bounds.length];
+            allRows[i] = mine ? bucketRows[i] : other.bucketRows[i - bounds.length];
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> allBounds[a].compareTo(allBounds[b]));
+        long mergedRows = rowCount + other.rowCount;
+        long depth = Math.max(1, (mergedRows + BUCKETS - 1) / BUCKETS);
+        List<String> newBounds = new ArrayList<>(BUCKETS + 1);
+        List<Long> newRows = new ArrayList<>(BUCKETS + 1);
+        long acc = 0;
+        for (int i = 0; i < total; i++) {
+            acc += allRows[order[i]];
+            boolean boundEnds = i == total - 1 || !allBounds[order[i + 1]].equals(allBounds[order[i]]);
+            if(boundEnds && (acc >= depth || i == total - 1)) {
+                newBounds.add(allBounds[order[i]]);
+                newRows.add(acc);
+                acc = 0;
+            }
+        }
+
+        /* 高频值：两边的计数相加，只在一边出现的值取该边的计数（偏小），取前 TOP_K 个。 */
+        Map<String, Long> top = new HashMap<>(2 * (topValues.length + other.topValues.length));
+        for (int i = 0; i < topValues.length; i++) {
+            top.merge(topValues[i], topCounts[i], Long::sum);
+        }
+        for (int i = 0; i < other.topValues.length; i++) {
+            top.merge(other.topValues[i], other.topCounts[i], Long::sum);
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(top.entrySet());
+        entries.sort((a, b) -> !a.getValue().equals(b.getValue())
+                ? Long.compare(b.getValue(), a.getValue()) : a.getKey().compareTo(b.getKey()));
+        int k = Math.min(TOP_K, entries.size());
+        String[] newTopValues = new String[k];
+        long[] newTopCounts = new long[k];
+        for (int i = 0; i < k; i++) {
+            newTopValues[i] = entries.get(i).getKey();
+            newTopCounts[i] = entries.get(i).getValue();
+        }
+
+        return new ColumnStatistics(mergedRows, emptyCount + other.emptyCount,
+                min.compareTo(other.min) <= 0 ? min : other.min,
+                max.compareTo(other.max) >= 0 ? max : other.max,
+                distinct.merge(other.distinct),
+                newBounds.toArray(new String[0]), toLongs(newRows), newTopValues, newTopCounts);
+    }
+
+    /**
+     * 满足比较条件的行的比例估计。
+     */
+    public
+    double selectivity(QueryParam.CompareType cmpType, String value) {
+        if(rowCount == 0) {
+            return 0;
+        }
+        double equal = equalFraction(value);
+        switch (cmpType) {
+            case equals:
+                return equal;
+            case notEquals:
+                return 1 - equal;
+            case less:
+                return belowFraction(value);
+            default:
+                return clamp(1 - belowFraction(value) - equal);
+        }
+    }
+
+    /**
+     * 以 ${prefix} 开头的行的比例估计，即 'prefix%' 的选择率。
+     */
+    public
+    double prefixSelectivity(String prefix) {
+        if(rowCount == 0) {
+            return 0;
+        }
+        if(prefix.isEmpty()) {
+            return 1;
+        }
+        double estimate = clamp(belowFraction(prefix + '\uFFFF') - belowFraction(prefix));
+        /* 高频值的准确计数是下界 */
+        long topMatched = 0;
+        for (int i = 0; i < topValues.length; i++) {
+            if(topValues[i].startsWith(prefix)) {
+                topMatched += topCounts[i];
+            }
+        }
+        return Math.max(estimate, (double) topMatched / rowCount);
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getEmptyCount() {
+        return emptyCount;
+    }
+
+    /**
+     * 去重值个数的估计，不超过行数。
+     */
+    public
+    long getDistinctCount() {
+        return Math.min(rowCount, distinct.estimate());
+    }
+
+    public String getMin() {
+        return min;
+    }
+
+    public String getMax() {
+        return max;
+    }
+
+    /**
+     * 直方图各桶的上界。
+     */
+    public String[] getBounds() {
+        return bounds.clone();
+    }
+
+    public long[] getBucketRows() {
+        return bucketRows.clone();
+    }
+
+    public String[] getTopValues() {
+        return topValues.clone();
+    }
+
+    public long[] getTopCounts() {
+        return topCounts.clone();
+    }
+
+    public
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(rowCount);
+        out.writeLong(emptyCount);
+        if(rowCount > 0) {
+            out.writeUTF(min);
+            out.writeUTF(max);
+        }
+        distinct.write(out);
+        out.writeInt(bounds.length);
+        for (int i = 0; i < bounds.length; i++) {
+            out.writeUTF(bounds[i]);
+            out.writeLong(bucketRows[i]);
+        }
+        out.writeInt(topValues.length);
+        for (int i = 0; i < topValues.length; i++) {
+            out.writeUTF(topValues[i]);
+            out.writeLong(topCounts[i]);
+        }
+    }
+
+    public static
+    ColumnStatistics read(DataInputStream in) throws IOException {
+        long rowCount = in.readLong();
+        long emptyCount = in.readLong();
+        String min = rowCount > 0 ? in.readUTF() : null;
+        String max = rowCount > 0 ? in.readUTF() : null;
+        HyperLogLog distinct = HyperLogLog.read(in);
+        String[] bounds = new String[in.readInt()];
+        long[] bucketRows = new long[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = in.readUTF();
+            bucketRows[i] = in.readLong();
+        }
+        String[] topValues = new String[in.readInt()];
+        long[] topCounts = new long[topValues.length];
+        for (int i = 0; i < topValues.length; i++) {
+            topValues[i] = in.readUTF();
+            topCounts[i] = in.readLong();
+        }
+        return new ColumnStatistics(rowCount, emptyCount, min, max, distinct, bounds, bucketRows, topValues, topCounts);
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 等于 ${value} 的行的比例：高频值取准确计数，其余值平分剩余的行。
+     */
+    private
+    double equalFraction(String value) {
+        if(value.compareTo(min) < 0 || value.compareTo(max) > 0) {
+            return 0;
+        }
+        long topRows = 0;
+        for (int i = 0; i < topValues.length; i++) {
+            if(topValues[i].equals(value)) {
+                return (double) topCounts[i] / rowCount;
+            }
+            topRows += topCounts[i];
+        }
+        long restRows = rowCount - topRows;
+        long restDistinct = getDistinctCount() - topValues.length;
+        if(restRows <= 0) {
+            return 0;
+        }
+        return (double) restRows / Math.max(1, restDistinct) / rowCount;
+    }
+
+    /**
+     * 小于 ${value} 的行的比例：之前的桶整体计入，所在的桶按值在桶的上下界之间的位置线性插值。
+     */
+    private
+    double belowFraction(String value) {
+        if(value.compareTo(min) <= 0) {
+            return 0;
+        }
+        if(value.compareTo(max) > 0) {
+            return 1;
+        }
+        long below = 0;
+        String lower = min;
+        for (int i = 0; i < bounds.length; i++) {
+            if(bounds[i].compareTo(value) < 0) {
+                below += bucketRows[i];
+                lower = bounds[i];
+                continue;
+            }
+            return clamp((below + bucketRows[i] * interpolate(lower, bounds[i], value)) / rowCount);
+        }
+        return 1;
+    }
+
+    /**
+     * ${value} 在 [lower, upper] 中的相对位置：去掉两端的公共前缀后，把之后的 4 个字符看作 65536 进制的小数。
+     */
+    private static
+    double interpolate(String lower, String upper, String value) {
+        int common = 0;
+        int limit = Math.min(lower.length(), upper.length());
+        while (common < limit && lower.charAt(common) == upper.charAt(common)) {
+            ++common;
+        }
+        double low = position(lower, common), high = position(upper, common), pos = position(value, common);
+        return high > low ? clamp((pos - low) / (high - low)) : 0.5;
+    }
+
+    private static
+    double position(String value, int from) {
+        double position = 0, scale = 1;
+        for (int i = from; i < from + 4; i++) {
+            scale /= 65536;
+            if(i < value.length()) {
+                position += value.charAt(i) * scale;
+            }
+        }
+        return position;
+    }
+
+    private static
+    double clamp(double fraction) {
+        return Math.max(0, Math.min(1, fraction));
+    }
+
+    private static
+    long[] toLongs(List<Long> list) {
+        long[] array = new long[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+}
@@ -0,0 +1,305 @@
+package com.team.db.stats;
+
+import com.team.db.QueryParam;
+import com.team.db.like.LikeMatcher;
+import com.team.db.like.LikePattern;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 一张表的列统计（ANALYZE 的结果）。
+ *
+ * 统计按单元收集：无分区表的单元是一个数据文件，多级分区表的单元是一个最终分区（其下所有数据文件）。
+ * 每个单元带有其数据文件的指纹，再次收集时只有指纹变化的单元需要重新扫描。
+ * 每个分区（包括中间层）和整张表的统计由单元的统计合并得到，不单独保存。
+ *
+ * 文件格式（DataOutputStream）：
+ *  header: MAGIC(int) VERSION(int) partitioned(boolean) unitCount(int)
+ *  unit:   path(utf) fingerprint(long) rowCount(long) columnCount(int) column*
+ *  column: 见 ColumnStatistics.write
+ */
+public final class TableStatistics {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final int MAGIC = 0x43535441;    /* "CSTA" */
+
+    private static final int VERSION = 1;
+
+    /**
+     * 是否是多级分区表，决定单元路径能否按 '/' 还原出各级分区
+     */
+    private final boolean partitioned;
+
+    /**
+     * 单元路径（相对表目录，以 '/' 分隔） -> 单元的统计
+     */
+    private final Map<String, UnitStatistics> units;
+
+    /**
+     * 分区路径 -> 分区下每列的统计
+     */
+    private final Map<String, ColumnStatistics[]> partitions = new HashMap<>();
+
+    private final ColumnStatistics[] columns;
+
+    private final long rowCount;
+
+    /**
+     * 一个单元的统计。
+     */
+    public static final class UnitStatistics {
+
+        private final String path;
+
+        private final long fingerprint;
+
+        private final long rowCount;
+
+        private final ColumnStatistics[] columns;
+
+        public UnitStatistics(String path, long fingerprint, long rowCount, ColumnStatistics[] columns) {
+            this.path = path;
+            this.fingerprint = fingerprint;
+            this.rowCount = rowCount;
+            this.columns = columns;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public ColumnStatistics[] getColumns() {
+            return columns;
+        }
+
+    }
+
+    public TableStatistics(boolean partitioned, Collection<UnitStatistics> units) {
+        this.partitioned = partitioned;
+        this.units = new LinkedHashMap<>(units.size() * 2);
+        ColumnStatistics[] tableColumns = new ColumnStatistics[0];
+        long tableRows = 0;
+        Map<String, Long> partitionRows = new HashMap<>();
+        for (UnitStatistics unit : units) {
+            this.units.put(unit.path, unit);
+            tableColumns = merge(tableColumns, tableRows, unit.columns, unit.rowCount);
+            tableRows += unit.rowCount;
+            if(!partitioned) {
+                continue;
+            }
+            /* 单元的路径及其每个前缀都是一个分区。 */
+            for (int end = unit.path.indexOf('/'); ; end = unit.path.indexOf('/', end + 1)) {
+                String partition = end < 0 ? unit.path : unit.path.substring(0, end);
+                long rows = partitionRows.getOrDefault(partition, 0L);
+                partitions.put(partition, merge(partitions.getOrDefault(partition, new ColumnStatistics[0]), rows,
+                        unit.columns, unit.rowCount));
+                partitionRows.put(partition, rows + unit.rowCount);
+                if(end < 0) {
+                    break;
+                }
+            }
+        }
+        this.columns = tableColumns;
+        this.rowCount = tableRows;
+    }
+
+    @Override
+    public String toString() {
+        return "TableStatistics{" +
+                "units=" + units.size() +
+                ", partitions=" + partitions.size() +
+                ", rowCount=" + rowCount +
+                ", columns=" + columns.length +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * 整张表一列的统计。不存在的列视为空串。
+     */
+    public
+    ColumnStatistics getColumn(int col) {
+        return col < columns.length ? columns[col] : ColumnStatistics.empty(rowCount);
+    }
+
+    /**
+     * 一个分区一列的统计，分区不存在时返回 null。
+     *
+     * @param partitionPath 相对表目录的分区路径，Eg. p0=01/p1=03
+     */
+    public
+    ColumnStatistics getColumn(String partitionPath, int col) {
+        ColumnStatistics[] partitionColumns = partitions.get(partitionPath);
+        if(partitionColumns == null) {
+            return null;
+        }
+        if(col < partitionColumns.length) {
+            return partitionColumns[col];
+        }
+        UnitStatistics unit = units.get(partitionPath);
+        return ColumnStatistics.empty(partitionColumns.length > 0 ? partitionColumns[0].getRowCount()
+                : unit == null ? 0 : unit.rowCount);
+    }
+
+    public
+    UnitStatistics getUnit(String path) {
+        return units.get(path);
+    }
+
+    public
+    Collection<UnitStatistics> getUnits() {
+        return Collections.unmodifiableCollection(units.values());
+    }
+
+    /**
+     * 列上比较条件的选择率估计。
+     */
+    public
+    double selectivity(int col, QueryParam.CompareType cmpType, String value) {
+        return getColumn(col).selectivity(cmpType, value);
+    }
+
+    /**
+     * 列上 'prefix%' 的选择率估计。
+     */
+    public
+    double prefixSelectivity(int col, String prefix) {
+        return getColumn(col).prefixSelectivity(prefix);
+    }
+
+    /**
+     * 列上 like 条件的选择率估计：只有所有模式串都是精确值或前缀时才能由统计估计，否则返回 -1。
+     * 多个模式串之间按互不相关处理：ANY_LIKE 取和，ALL_LIKE 取最小值，NONE_LIKE 取 1 - 和。
+     */
+    public
+    double likeSelectivity(int col, LikeMatcher likeMatcher) {
+        ColumnStatistics column = getColumn(col);
+        double sum = 0, min = 1;
+        for (LikePattern pattern : likeMatcher.getPatterns()) {
+            double selectivity;
+            switch (pattern.getKind()) {
+                case EXACT:
+                    selectivity = column.selectivity(QueryParam.CompareType.equals, pattern.getLiteral());
+                    break;
+                case PREFIX:
+                    selectivity = column.prefixSelectivity(pattern.getLiteral());
+                    break;
+                default:
+                    return -1;
+            }
+            sum += selectivity;
+            min = Math.min(min, selectivity);
+        }
+        switch (likeMatcher.getLikeType()) {
+            case anyLike:
+                return Math.min(1, sum);
+            case allLike:
+                return min;
+            default:
+                return Math.max(0, 1 - sum);
+        }
+    }
+
+    /**
+     * 读取统计文件，不存在或格式不对时返回 null。
+     */
+    public static
+    TableStatistics read(File file) {
+        if(!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            boolean partitioned = in.readBoolean();
+            int unitCount = in.readInt();
+            List<UnitStatistics> units = new ArrayList<>(unitCount);
+            for (int u = 0; u < unitCount; u++) {
+                String path = in.readUTF();
+                long fingerprint = in.readLong();
+                long rowCount = in.readLong();
+                ColumnStatistics[] columns = new ColumnStatistics[in.readInt()];
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c] = ColumnStatistics.read(in);
+                }
+                units.add(new UnitStatistics(path, fingerprint, rowCount, columns));
+            }
+            return new TableStatistics(partitioned, units);
+        } catch (IOException | RuntimeException e) {
+            /* 损坏的统计视为不存在，之后重新收集 */
+            return null;
+        }
+    }
+
+    /**
+     * 写入统计文件：先写临时文件再重命名。
+     */
+    public
+    void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(partitioned);
+            out.writeInt(units.size());
+            for (UnitStatistics unit : units.values()) {
+                out.writeUTF(unit.path);
+                out.writeLong(unit.fingerprint);
+                out.writeLong(unit.rowCount);
+                out.writeInt(unit.columns.length);
+                for (ColumnStatistics column : unit.columns) {
+                    column.write(out);
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 逐列合并两组统计，一边缺少的列视为该边的行全是空串。
+     */
+    private static
+    ColumnStatistics[] merge(ColumnStatistics[] a, long aRows, ColumnStatistics[] b, long bRows) {
+        ColumnStatistics[] merged = new ColumnStatistics[Math.max(a.length, b.length)];
+        for (int c = 0; c < merged.length; c++) {
+            ColumnStatistics left = c < a.length ? a[c] : ColumnStatistics.empty(aRows);
+            ColumnStatistics right = c < b.length ? b[c] : ColumnStatistics.empty(bRows);
+            merged[c] = left.merge(right);
+        }
+        return merged;
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.team.db.store;
+
+import com.team.db.DataFile;
+import com.team.db.Partition;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 目录快照：把所有表的分区树、每个目录下的数据文件（大小、修改时间、行数）写入一个二进制文件，
+ * 重启时直接内存映射读取，不再遍历文件系统。
+ *
+ * 文件格式（大端）：
+ *  header: MAGIC(int) VERSION(int) tableCount(int)
+ *  table:  name(str) lastModified(long) files partitionCount(int) partition*
+ *  partition: dirName(str) lastModified(long) files subpartitionCount(int) partition*
+ *  files:  fileCount(int) { name(str) length(long) lastModified(long) rowCount(long) }*
+ *  str:    byteLength(int) UTF-8 bytes
+ *
+ * 快照通过目录的修改时间校验：目录中增删文件或子目录会改变目录的修改时间；
+ * 原地改写文件内容不会改变目录的修改时间，所以每个数据文件的大小和修改时间也要与快照中的相同。
+ */
+public class CatalogSnapshot {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final int MAGIC = 0x43434154;    /* "CCAT" */
+
+    private static final int VERSION = 1;
+
+    /**
+     * 一张表的快照。
+     */
+    public static class TableEntry {
+
+        private final File tableDirFile;
+
+        private final long lastModified;
+
+        /**
+         * 表目录下的数据文件（无分区表）
+         */
+        private final List<DataFile> dataFiles;
+
+        private final List<Partition> partitions;
+
+        public TableEntry(File tableDirFile, long lastModified, List<DataFile> dataFiles, List<Partition> partitions) {
+            this.tableDirFile = tableDirFile;
+            this.lastModified = lastModified;
+            this.dataFiles = dataFiles;
+            this.partitions = partitions;
+        }
+
+        public File getTableDirFile() {
+            return tableDirFile;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public List<DataFile> getDataFiles() {
+            return dataFiles;
+        }
+
+        public List<Partition> getPartitions() {
+            return partitions;
+        }
+
+        /**
+         * 快照中的目录和文件都没有变化时有效。
+         */
+        public
+        boolean isValid() {
+            return isCurrent(tableDirFile, lastModified, dataFiles, partitions);
+        }
+
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 一张表的分区树是否仍与文件系统一致：表目录、所有分区目录的修改时间，以及所有数据文件的大小和修改时间
+     * 都与记录的相同。每个目录和文件只需一次 stat，不列出目录。
+     */
+    public static
+    boolean isCurrent(File tableDirFile, long lastModified, List<DataFile> dataFiles, List<Partition> partitions) {
+        if(tableDirFile.lastModified() != lastModified || !isCurrent(dataFiles)) {
+            return false;
+        }
+        Deque<Partition> stack = new ArrayDeque<>(partitions);
+        while (!stack.isEmpty()) {
+            Partition partition = stack.pop();
+            if(partition.getPartitionDirFile().lastModified() != partition.getLastModified()
+                    || !isCurrent(partition.getDataFiles())) {
+                return false;
+            }
+            stack.addAll(partition.getSubpartitions());
+        }
+        return true;
+    }
+
+    /**
+     * 读取快照，文件不存在或格式不对时返回空表。
+     *
+     * @param dbDirFile 数据集目录，快照中只保存名称，路径相对它还原
+     */
+    public static
+    Map<String, TableEntry> read(File catalogFile, File dbDirFile) {
+        Map<String, TableEntry> tables = new HashMap<>();
+        if(!catalogFile.isFile() || catalogFile.length() > Integer.MAX_VALUE) {
+            return tables;
+        }
+        try (FileChannel channel = new RandomAccessFile(catalogFile, "r").getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return tables;
+            }
+            int tableCount = buffer.getInt();
+            for (int t = 0; t < tableCount; t++) {
+                String name = readString(buffer);
+                File tableDirFile = new File(dbDirFile, name);
+                long lastModified = buffer.getLong();
+                List<DataFile> dataFiles = readFiles(buffer, tableDirFile);
+                List<Partition> partitions = readPartitions(buffer, tableDirFile);
+                tables.put(name, new TableEntry(tableDirFile, lastModified, dataFiles, partitions));
+            }
+        } catch (IOException | RuntimeException e) {
+            /* 损坏的快照视为不存在，之后会重新写入 */
+            tables.clear();
+        }
+        return tables;
+    }
+
+    /**
+     * 写入快照：先写临时文件再重命名，读者不会看到写了一半的快照。
+     */
+    public static
+    void write(File catalogFile, Collection<TableEntry> tables) throws IOException {
+        File parent = catalogFile.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File tmpFile = new File(catalogFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tables.size());
+            for (TableEntry table : tables) {
+                writeString(out, table.tableDirFile.getName());
+                out.writeLong(table.lastModified);
+                writeFiles(out, table.dataFiles);
+                writePartitions(out, table.partitions);
+            }
+        }
+        Files.move(tmpFile.toPath(), catalogFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private static
+    boolean isCurrent(List<DataFile> dataFiles) {
+        for (DataFile dataFile : dataFiles) {
+            if(!dataFile.isCurrent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static
+    List<Partition> readPartitions(ByteBuffer buffer, File parentDir) {
+        int count = buffer.getInt();
+        List<Partition> partitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            File partitionDirFile = new File(parentDir, readString(buffer));
+            long lastModified = buffer.getLong();
+            List<DataFile> dataFiles = readFiles(buffer, partitionDirFile);
+            List<Partition> subpartitions = readPartitions(buffer, partitionDirFile);
+            partitions.add(new Partition(partitionDirFile, subpartitions, dataFiles, lastModified));
+        }
+        return partitions.isEmpty() ? Collections.emptyList() : partitions;
+    }
+
+    private static
+    List<DataFile> readFiles(ByteBuffer buffer, File dir) {
+        int count = buffer.getInt();
+        List<DataFile> dataFiles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String path = new File(dir, readString(buffer)).getPath();
+            dataFiles.add(new DataFile(path, buffer.getLong(), buffer.getLong(), buffer.getLong()));
+        }
+        return dataFiles;
+    }
+
+    private static
+    String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static
+    void writePartitions(DataOutputStream out, List<Partition> partitions) throws IOException {
+        out.writeInt(partitions.size());
+        for (Partition partition : partitions) {
+            writeString(out, partition.getPartitionDirFile().getName());
+            out.writeLong(partition.getLastModified());
+            writeFiles(out, partition.getDataFiles());
+            writePartitions(out, partition.getSubpartitions());
+        }
+    }
+
+    private static
+    void writeFiles(DataOutputStream out, List<DataFile> dataFiles) throws IOException {
+        out.writeInt(dataFiles.size());
+        for (DataFile dataFile : dataFiles) {
+            writeString(out, dataFile.getName());
+            out.writeLong(dataFile.recordedLength());
+            out.writeLong(dataFile.recordedModified());
+            out.writeLong(dataFile.getRowCount());
+        }
+    }
+
+    private static
+    void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
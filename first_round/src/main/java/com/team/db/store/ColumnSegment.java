@@ -0,0 +1,459 @@
+package com.team.db.store;
+
+import com.team.util.ByteUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 列式段文件：一个文本数据文件按列转换后的二进制形式，每列采用字典编码。
+ *
+ * 文件格式（大端序）：
+ *  int    MAGIC
+ *  int    VERSION
+ *  long   源文件长度
+ *  long   源文件修改时间
+ *  int    行数 n
+ *  int    列数 m
+ *  long[m] 每列数据块在文件中的起始位置
+ *  列数据块：
+ *      int     字典大小 d
+ *      int     编码宽度 w（1、2 或 4 字节）
+ *      int[d + 1] 字典值偏移（相对于字典字节区起点）
+ *      字典字节区：按 String.compareTo 排序的去重值，UTF-8 编码
+ *      编码区：n 个 w 字节的无符号编码，编码即该行的值在字典中的下标
+ *
+ * 字典有序，因此值的大小关系与编码的大小关系一致，比较条件可以转换为编码区间。
+ */
+public class ColumnSegment {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final int MAGIC = 0x43534547;     /* "CSEG" */
+
+    /**
+     * 3：源文件按 UTF-8 解码（之前按平台默认字符集解码，非 ASCII 值可能已损坏，需要重建）
+     */
+    private static final int VERSION = 3;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+
+    private final ByteBuffer buffer;
+
+    private final int rowCount;
+
+    private final int columnCount;
+
+    private final int[] dictSizes;
+
+    private final int[] codeWidths;
+
+    /**
+     * 每列字典偏移数组的起始位置
+     */
+    private final int[] dictOffsetsPos;
+
+    /**
+     * 每列字典字节区的起始位置
+     */
+    private final int[] dictBytesPos;
+
+    /**
+     * 每列编码区的起始位置
+     */
+    private final int[] codesPos;
+
+    private ColumnSegment(ByteBuffer buffer) {
+        this.buffer = buffer;
+        rowCount = buffer.getInt(24);
+        columnCount = buffer.getInt(28);
+        dictSizes = new int[columnCount];
+        codeWidths = new int[columnCount];
+        dictOffsetsPos = new int[columnCount];
+        dictBytesPos = new int[columnCount];
+        codesPos = new int[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            int blockPos = (int) buffer.getLong(HEADER_SIZE + c * 8);
+            dictSizes[c] = buffer.getInt(blockPos);
+            codeWidths[c] = buffer.getInt(blockPos + 4);
+            dictOffsetsPos[c] = blockPos + 8;
+            dictBytesPos[c] = dictOffsetsPos[c] + (dictSizes[c] + 1) * 4;
+            codesPos[c] = dictBytesPos[c] + buffer.getInt(dictOffsetsPos[c] + dictSizes[c] * 4);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnSegment{" +
+                "rowCount=" + rowCount +
+                ", columnCount=" + columnCount +
+                ", dictSizes=" + Arrays.toString(dictSizes) +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * 段占用的字节数。
+     */
+    public
+    int sizeInBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * 列的字典大小。段中不存在的列视为只有空串一个值。
+     */
+    public
+    int getDictionarySize(int col) {
+        return col < columnCount ? dictSizes[col] : 1;
+    }
+
+    /**
+     * 字典中第 ${code} 个值。
+     */
+    public
+    String getDictionaryValue(int col, int code) {
+        if(col >= columnCount) {
+            return "";
+        }
+        return ByteUtil.decode(buffer, dictStart(col, code), dictEnd(col, code));
+    }
+
+    /**
+     * 某行某列的字典编码。
+     */
+    public
+    int getCode(int col, int row) {
+        if(col >= columnCount) {
+            return 0;
+        }
+        switch (codeWidths[col]) {
+            case 1:
+                return buffer.get(codesPos[col] + row) & 0xFF;
+            case 2:
+                return buffer.getShort(codesPos[col] + row * 2) & 0xFFFF;
+            default:
+                return buffer.getInt(codesPos[col] + row * 4);
+        }
+    }
+
+    /**
+     * 字典中第一个不小于 ${key} 的编码，不存在时返回字典大小。
+     */
+    public
+    int lowerBound(int col, byte[] key) {
+        return search(col, key, false);
+    }
+
+    /**
+     * 字典中第一个大于 ${key} 的编码，不存在时返回字典大小。
+     */
+    public
+    int upperBound(int col, byte[] key) {
+        return search(col, key, true);
+    }
+
+    /**
+     * 获取某行某列的值。
+     */
+    public
+    String getValue(int col, int row) {
+        return getDictionaryValue(col, getCode(col, row));
+    }
+
+    /**
+     * 直接在字节上比较某行某列的值与 ${key}，结果符号与 String.compareTo 一致。
+     */
+    public
+    int compare(int col, int row, byte[] key) {
+        if(col >= columnCount) {
+            return -key.length;
+        }
+        int code = getCode(col, row);
+        return ByteUtil.compare(buffer, dictStart(col, code), dictEnd(col, code), key);
+    }
+
+    /**
+     * 某行某列的值是否与 ${key} 相等。
+     */
+    public
+    boolean equals(int col, int row, byte[] key) {
+        if(col >= columnCount) {
+            return key.length == 0;
+        }
+        int code = getCode(col, row);
+        return ByteUtil.equals(buffer, dictStart(col, code), dictEnd(col, code), key);
+    }
+
+    /**
+     * 以只读内存映射的方式打开段文件。
+     */
+    public static
+    ColumnSegment open(File segmentFile) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(segmentFile, "r").getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ColumnSegment(buffer);
+        }
+    }
+
+    /**
+     * 将段文件整个读入堆外的直接缓冲区，之后的访问不再依赖页缓存，也不占用 Java 堆。
+     */
+    public static
+    ColumnSegment load(File segmentFile) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(segmentFile, "r").getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if(channel.read(buffer) < 0) {
+                    throw new EOFException(segmentFile.getPath());
+                }
+            }
+            buffer.flip();
+            return new ColumnSegment(buffer);
+        }
+    }
+
+    /**
+     * 段文件是否由当前版本的 ${dataFile} 转换而来：与磁盘上文件现在的大小和修改时间比较，
+     * 不使用加载时记录的值（DataFile.recordedLength），原地改写的文件也会重新转换。
+     */
+    public static
+    boolean isValidFor(File segmentFile, File dataFile) {
+        if(!segmentFile.exists() || segmentFile.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile)))) {
+            return in.readInt() == MAGIC
+                    && in.readInt() == VERSION
+                    && in.readLong() == dataFile.length()
+                    && in.readLong() == dataFile.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 将 '|' 分隔的文本数据文件转换为列式段文件。
+     *
+     * @return 转换后段文件过大（超过 2GB 无法映射）时返回 false
+     */
+    public static
+    boolean write(File dataFile, File segmentFile) throws IOException {
+        /* 按列收集所有值：每列按出现顺序分配临时编号，最后再按字典序重排。 */
+        List<Map<String, Integer>> dicts = new ArrayList<>();
+        List<IntList> ids = new ArrayList<>();
+        int rowCount = 0;
+        /* 读之前取大小和修改时间：读的期间文件被改写，下次校验时段文件就会失效。 */
+        long length = dataFile.length();
+        long lastModified = dataFile.lastModified();
+        /* 数据文件总是 UTF-8：与文本扫描和查询键的字节比较一致，不依赖平台默认字符集。 */
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(dataFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ( (line = reader.readLine()) != null ) {
+                if(line.isEmpty()) {
+                    continue;       /* 与文本扫描一致，跳过空行 */
+                }
+                int col = 0, from = 0;
+                while (true) {
+                    int to = line.indexOf('|', from);
+                    String value = to < 0 ? line.substring(from) : line.substring(from, to);
+                    if(col == dicts.size()) {
+                        /* 新出现的列，之前的行补空值 */
+                        dicts.add(new HashMap<>());
+                        IntList list = new IntList(rowCount + 1);
+                        for (int r = 0; r < rowCount; r++) {
+                            list.add(idOf(dicts.get(col), ""));
+                        }
+                        ids.add(list);
+                    }
+                    ids.get(col).add(idOf(dicts.get(col), value));
+                    ++col;
+                    if(to < 0) {
+                        break;
+                    }
+                    from = to + 1;
+                }
+                /* 本行缺失的列补空值 */
+                for (; col < dicts.size(); col++) {
+                    ids.get(col).add(idOf(dicts.get(col), ""));
+                }
+                ++rowCount;
+            }
+        }
+
+        /* 每列字典排序，得到 临时编号 -> 编码 的映射。 */
+        int columnCount = dicts.size();
+        List<byte[][]> sortedDicts = new ArrayList<>(columnCount);
+        List<int[]> codeOfIds = new ArrayList<>(columnCount);
+        long size = HEADER_SIZE + columnCount * 8L;
+        long[] blockPos = new long[columnCount];
+        int[] widths = new int[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            Map<String, Integer> dict = dicts.get(c);
+            String[] values = dict.keySet().toArray(new String[0]);
+            Arrays.sort(values);
+            byte[][] bytes = new byte[values.length][];
+            int[] codeOfId = new int[values.length];
+            long dictBytes = 0;
+            for (int code = 0; code < values.length; code++) {
+                bytes[code] = values[code].getBytes(StandardCharsets.UTF_8);
+                codeOfId[dict.get(values[code])] = code;
+                dictBytes += bytes[code].length;
+            }
+            sortedDicts.add(bytes);
+            codeOfIds.add(codeOfId);
+            widths[c] = values.length <= 1 << 8 ? 1 : values.length <= 1 << 16 ? 2 : 4;
+
+            blockPos[c] = size;
+            size += 8 + (values.length + 1) * 4L + dictBytes + (long) rowCount * widths[c];
+        }
+        if(size > Integer.MAX_VALUE) {
+            return false;
+        }
+
+        File parent = segmentFile.getParentFile();
+        if(parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Can't create directory: " + parent);
+        }
+        /* 先写临时文件再改名，避免进程中断留下半个段文件。 */
+        File tmpFile = new File(segmentFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeInt(rowCount);
+            out.writeInt(columnCount);
+            for (long pos : blockPos) {
+                out.writeLong(pos);
+            }
+            for (int c = 0; c < columnCount; c++) {
+                byte[][] dict = sortedDicts.get(c);
+                out.writeInt(dict.length);
+                out.writeInt(widths[c]);
+                int offset = 0;
+                out.writeInt(offset);
+                for (byte[] value : dict) {
+                    offset += value.length;
+                    out.writeInt(offset);
+                }
+                for (byte[] value : dict) {
+                    out.write(value);
+                }
+                IntList list = ids.get(c);
+                int[] codeOfId = codeOfIds.get(c);
+                for (int r = 0; r < rowCount; r++) {
+                    int code = codeOfId[list.get(r)];
+                    switch (widths[c]) {
+                        case 1:
+                            out.writeByte(code);
+                            break;
+                        case 2:
+                            out.writeShort(code);
+                            break;
+                        default:
+                            out.writeInt(code);
+                            break;
+                    }
+                }
+            }
+        }
+        if(segmentFile.exists() && !segmentFile.delete()) {
+            throw new IOException("Can't replace segment: " + segmentFile);
+        }
+        if(!tmpFile.renameTo(segmentFile)) {
+            throw new IOException("Can't rename segment: " + tmpFile);
+        }
+        return true;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private
+    int dictStart(int col, int code) {
+        return dictBytesPos[col] + buffer.getInt(dictOffsetsPos[col] + code * 4);
+    }
+
+    private
+    int dictEnd(int col, int code) {
+        return dictBytesPos[col] + buffer.getInt(dictOffsetsPos[col] + (code + 1) * 4);
+    }
+
+    /**
+     * 在有序字典中二分查找。
+     *
+     * @param upper false: 第一个 >= key 的编码; true: 第一个 > key 的编码
+     */
+    private
+    int search(int col, byte[] key, boolean upper) {
+        if(col >= columnCount) {
+            /* 字典只有空串：空串 >= key 当且仅当 key 为空，空串不会 > key */
+            return !upper && key.length == 0 ? 0 : 1;
+        }
+        int lo = 0, hi = dictSizes[col];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ByteUtil.compare(buffer, dictStart(col, mid), dictEnd(col, mid), key);
+            if(cmp < 0 || upper && cmp == 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static
+    int idOf(Map<String, Integer> dict, String value) {
+        Integer id = dict.get(value);
+        if(id == null) {
+            dict.put(value, id = dict.size());
+        }
+        return id;
+    }
+
+    /* ====================================== Supports ====================================== */
+
+    /**
+     * 简单的 int 动态数组，避免装箱。
+     */
+    private static class IntList {
+
+        private int[] values;
+
+        private int size;
+
+        IntList(int capacity) {
+            values = new int[Math.max(capacity, 16)];
+        }
+
+        void add(int value) {
+            if(size == values.length) {
+                int[] newValues = new int[size << 1];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+    }
+
+}
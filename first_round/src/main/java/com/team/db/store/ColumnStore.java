@@ -0,0 +1,259 @@
+package com.team.db.store;
+
+import com.team.db.DataFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 列式存储：在加载时将每个数据文件一次性转换为列式段文件，查询时直接扫描段文件。
+ *
+ * 段文件按表目录的相对路径存放在 ${storeDir} 下：
+ *  dbDir/table1/dt=2017/part-0  ->  storeDir/table1/dt=2017/part-0.seg
+ *
+ * 段的驻留方式：
+ *  - 不设内存预算（0）：加载时把所有段以只读方式内存映射，由操作系统的页缓存管理；
+ *  - 设置了内存预算：段在首次访问时按分区（同一目录下的所有段）整体读入堆外的直接缓冲区，
+ *    所有驻留的分区按 LRU 排列，总字节数超过预算时淘汰最久未访问的分区。
+ * 两种方式下列值都以 UTF-8 字典字节区加偏移数组的形式存放在 Java 堆外，堆占用与数据量无关。
+ *
+ * 被淘汰的分区只是不再被引用，正在扫描它的查询仍可安全地读完，直接缓冲区在之后的 GC 中释放。
+ */
+public class ColumnStore {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File storeDir;
+
+    /**
+     * 驻留分区的总字节数上限，0 表示不限制（内存映射所有段）
+     */
+    private final long memoryBudget;
+
+    /**
+     * 数据文件路径 -> 已打开的段，只在不限制内存时使用
+     */
+    private final Map<String, ColumnSegment> segments = new ConcurrentHashMap<>();
+
+    /**
+     * 分区目录路径 -> (数据文件路径 -> 段文件)，设置了内存预算时段按分区加载
+     */
+    private final Map<String, Map<String, File>> partitionSegmentFiles = new ConcurrentHashMap<>();
+
+    /**
+     * 分区目录路径 -> 驻留的分区
+     */
+    private final Map<String, Resident> residents = new ConcurrentHashMap<>();
+
+    /**
+     * 驻留的分区按访问顺序排列，头部为淘汰候选。同时作为驻留统计的锁。
+     */
+    private final LinkedHashMap<String, Resident> residentOrder = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long residentBytes;
+
+    private long loadCount;
+
+    private long evictionCount;
+
+    /**
+     * 数据文件路径 -> 区域统计，由段的有序字典直接得到
+     */
+    private final Map<String, ZoneMap> zoneMaps = new ConcurrentHashMap<>();
+
+    public ColumnStore(File storeDir) {
+        this(storeDir, 0);
+    }
+
+    /**
+     * @param memoryBudget 驻留分区的总字节数上限，0 表示不限制
+     */
+    public ColumnStore(File storeDir, long memoryBudget) {
+        if(memoryBudget < 0) {
+            throw new IllegalArgumentException("memoryBudget: " + memoryBudget);
+        }
+        this.storeDir = storeDir;
+        this.memoryBudget = memoryBudget;
+    }
+
+    public File getStoreDir() {
+        return storeDir;
+    }
+
+    @Override
+    public String toString() {
+        if(memoryBudget == 0) {
+            return "ColumnStore{" +
+                    "storeDir=" + storeDir +
+                    ", segments=" + segments.size() +
+                    '}';
+        }
+        synchronized (residentOrder) {
+            return "ColumnStore{" +
+                    "storeDir=" + storeDir +
+                    ", memoryBudget=" + memoryBudget +
+                    ", residentPartitions=" + residentOrder.size() +
+                    ", residentBytes=" + residentBytes +
+                    ", loadCount=" + loadCount +
+                    ", evictionCount=" + evictionCount +
+                    '}';
+        }
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 转换一张表的所有数据文件，已是最新的段文件直接复用。
+     */
+    public
+    void build(File tableDirFile, List<File> dataFiles) {
+        String tableRoot = tableDirFile.getAbsolutePath();
+        for (File dataFile : dataFiles) {
+            String relative = dataFile.getAbsolutePath().substring(tableRoot.length());
+            File segmentFile = new File(new File(storeDir, tableDirFile.getName()), relative + SEGMENT_SUFFIX);
+            try {
+                if(!ColumnSegment.isValidFor(segmentFile, dataFile)
+                        && !ColumnSegment.write(dataFile, segmentFile)) {
+                    continue;   /* 无法转换的文件，查询时退回文本扫描 */
+                }
+                ColumnSegment segment = ColumnSegment.open(segmentFile);
+                zoneMaps.put(dataFile.getPath(), ZoneMap.of(segment));
+                if(dataFile instanceof DataFile) {
+                    ((DataFile) dataFile).setRowCount(segment.getRowCount());
+                }
+                if(memoryBudget == 0) {
+                    segments.put(dataFile.getPath(), segment);
+                } else {
+                    /* 只登记段文件，首次访问该分区时才读入内存。 */
+                    partitionSegmentFiles.computeIfAbsent(partitionOf(dataFile), k -> new ConcurrentHashMap<>())
+                            .put(dataFile.getPath(), segmentFile);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 获取数据文件对应的段，未转换时返回 null。设置了内存预算时，所在分区未驻留则先整体加载。
+     */
+    public
+    ColumnSegment getSegment(File dataFile) {
+        if(memoryBudget == 0) {
+            return segments.get(dataFile.getPath());
+        }
+        String partition = partitionOf(dataFile);
+        Map<String, File> segmentFiles = partitionSegmentFiles.get(partition);
+        if(segmentFiles == null || !segmentFiles.containsKey(dataFile.getPath())) {
+            return null;
+        }
+        Resident resident = residents.computeIfAbsent(partition, k -> load(segmentFiles));
+        touch(partition, resident);
+        return resident.segments.get(dataFile.getPath());
+    }
+
+    /**
+     * 获取数据文件的区域统计，未转换时返回 null。
+     */
+    public
+    ZoneMap getZoneMap(File dataFile) {
+        return zoneMaps.get(dataFile.getPath());
+    }
+
+    public
+    long getResidentBytes() {
+        synchronized (residentOrder) {
+            return residentBytes;
+        }
+    }
+
+    public
+    long getEvictionCount() {
+        synchronized (residentOrder) {
+            return evictionCount;
+        }
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 数据文件所属的分区：所在目录。
+     */
+    private static
+    String partitionOf(File dataFile) {
+        String parent = dataFile.getParent();
+        return parent == null ? "" : parent;
+    }
+
+    /**
+     * 把一个分区的所有段读入堆外内存，读取失败的段查询时退回文本扫描。
+     */
+    private static
+    Resident load(Map<String, File> segmentFiles) {
+        Map<String, ColumnSegment> loaded = new HashMap<>();
+        long bytes = 0;
+        for (Map.Entry<String, File> entry : segmentFiles.entrySet()) {
+            try {
+                ColumnSegment segment = ColumnSegment.load(entry.getValue());
+                loaded.put(entry.getKey(), segment);
+                bytes += segment.sizeInBytes();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new Resident(loaded, bytes);
+    }
+
+    /**
+     * 记录一次访问，新驻留的分区计入预算，超出预算时淘汰最久未访问的其他分区。
+     */
+    private
+    void touch(String partition, Resident resident) {
+        synchronized (residentOrder) {
+            Resident current = residentOrder.get(partition);
+            if(current == resident) {
+                return;
+            }
+            if(current != null) {
+                residentBytes -= current.bytes;
+            }
+            residentOrder.put(partition, resident);
+            residents.put(partition, resident);
+            residentBytes += resident.bytes;
+            ++loadCount;
+
+            Iterator<Map.Entry<String, Resident>> it = residentOrder.entrySet().iterator();
+            while (residentBytes > memoryBudget && it.hasNext()) {
+                Map.Entry<String, Resident> eldest = it.next();
+                if(eldest.getValue() == resident) {
+                    continue;       /* 刚加载的分区本身超出预算时也要保留到本次访问结束 */
+                }
+                it.remove();
+                residents.remove(eldest.getKey(), eldest.getValue());
+                residentBytes -= eldest.getValue().bytes;
+                ++evictionCount;
+            }
+        }
+    }
+
+    /**
+     * 驻留在堆外内存中的一个分区。
+     */
+    private static class Resident {
+
+        final Map<String, ColumnSegment> segments;
+
+        final long bytes;
+
+        Resident(Map<String, ColumnSegment> segments, long bytes) {
+            this.segments = segments;
+            this.bytes = bytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.team.db.store;
+
+import com.team.db.QueryParam;
+import com.team.db.like.LikeMatcher;
+import com.team.db.metrics.QueryMetrics;
+
+/**
+ * 字典编码段上的查询条件：谓词按字典值求值，而不是按行求值。
+ *
+ *  - 比较条件：字典有序，>、<、= 对应一个编码区间，!= 对应区间之外，每行只需一次区间判断。
+ *  - like 条件：每个字典值最多求值一次，结果缓存在按编码索引的数组中。
+ *
+ * 两个条件的求值顺序由查询规划决定，默认先比较。
+ */
+public class DictionaryFilter {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final byte UNKNOWN = 0;
+
+    private static final byte MATCHED = 1;
+
+    private static final byte UNMATCHED = 2;
+
+    private final ColumnSegment segment;
+
+    /**
+     * 比较列，-1 表示不在本段上判断比较条件
+     */
+    private final int cmpCol;
+
+    /**
+     * 比较条件满足的编码区间 [cmpLow, cmpHigh)，${cmpNegate} 为 true 时取区间之外
+     */
+    private final int cmpLow;
+
+    private final int cmpHigh;
+
+    private final boolean cmpNegate;
+
+    /**
+     * like 匹配列，-1 表示不在本段上判断 like 条件
+     */
+    private final int likeCol;
+
+    private final LikeMatcher likeMatcher;
+
+    /**
+     * 每个字典值的 like 结果
+     */
+    private final byte[] likeResults;
+
+    /**
+     * 是否先判断 like 条件
+     */
+    private final boolean likeFirst;
+
+    public DictionaryFilter(ColumnSegment segment, int cmpCol, QueryParam.CompareType cmpType, byte[] cmpKey,
+                            int likeCol, LikeMatcher likeMatcher) {
+        this(segment, cmpCol, cmpType, cmpKey, likeCol, likeMatcher, false);
+    }
+
+    /**
+     * @param likeFirst 为 true 时先判断 like 条件，通过的行再比较
+     */
+    public DictionaryFilter(ColumnSegment segment, int cmpCol, QueryParam.CompareType cmpType, byte[] cmpKey,
+                            int likeCol, LikeMatcher likeMatcher, boolean likeFirst) {
+        this.segment = segment;
+        this.likeFirst = likeFirst;
+        this.cmpCol = cmpCol;
+        this.likeCol = likeCol;
+        this.likeMatcher = likeMatcher;
+        this.likeResults = likeCol < 0 ? null : new byte[segment.getDictionarySize(likeCol)];
+
+        if(cmpCol < 0) {
+            cmpLow = 0;
+            cmpHigh = 0;
+            cmpNegate = true;
+            return;
+        }
+        int dictSize = segment.getDictionarySize(cmpCol);
+        switch (cmpType) {
+            case greater:
+                cmpLow = segment.upperBound(cmpCol, cmpKey);
+                cmpHigh = dictSize;
+                cmpNegate = false;
+                break;
+            case less:
+                cmpLow = 0;
+                cmpHigh = segment.lowerBound(cmpCol, cmpKey);
+                cmpNegate = false;
+                break;
+            case equals:
+                cmpLow = segment.lowerBound(cmpCol, cmpKey);
+                cmpHigh = segment.upperBound(cmpCol, cmpKey);
+                cmpNegate = false;
+                break;
+            default:
+                cmpLow = segment.lowerBound(cmpCol, cmpKey);
+                cmpHigh = segment.upperBound(cmpCol, cmpKey);
+                cmpNegate = true;
+                break;
+        }
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 比较条件在本段上是否不可能满足。
+     */
+    public
+    boolean isEmpty() {
+        return !cmpNegate && cmpLow >= cmpHigh;
+    }
+
+    /**
+     * 某行是否满足条件。
+     */
+    public
+    boolean matches(int row) {
+        return likeFirst ? likeMatches(row) && compareMatches(row) : compareMatches(row) && likeMatches(row);
+    }
+
+    /**
+     * 统计 [fromRow, toRow) 中满足条件的行数。
+     */
+    public
+    int count(int fromRow, int toRow) {
+        if(isEmpty()) {
+            return 0;
+        }
+        int matchedCount = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            if(matches(row)) {
+                ++matchedCount;
+            }
+        }
+        return matchedCount;
+    }
+
+    /**
+     * 同 {@link #count(int, int)}，同时把每个谓词求值和通过的行数记录到查询指标中。
+     *
+     * @param metrics 为 null 时与 {@link #count(int, int)} 相同
+     */
+    public
+    int count(int fromRow, int toRow, QueryMetrics metrics) {
+        if(metrics == null) {
+            return count(fromRow, toRow);
+        }
+        if(isEmpty()) {
+            /* 比较条件由字典直接确定为全不满足，不需要扫描任何行。 */
+            return 0;
+        }
+        int matchedCount = 0;
+        int cmpEvaluated = 0, cmpPassed = 0, likeEvaluated = 0, likePassed = 0;
+        for (int row = fromRow; row < toRow; row++) {
+            if(!likeFirst && cmpCol >= 0) {
+                ++cmpEvaluated;
+                if(!compareMatches(row)) {
+                    continue;
+                }
+                ++cmpPassed;
+            }
+            if(likeCol >= 0) {
+                ++likeEvaluated;
+                if(!likeMatches(row)) {
+                    continue;
+                }
+                ++likePassed;
+            }
+            if(likeFirst && cmpCol >= 0) {
+                ++cmpEvaluated;
+                if(!compareMatches(row)) {
+                    continue;
+                }
+                ++cmpPassed;
+            }
+            ++matchedCount;
+        }
+        metrics.recordScan(Math.max(0, toRow - fromRow), 0, cmpEvaluated, cmpPassed, likeEvaluated, likePassed);
+        return matchedCount;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private
+    boolean compareMatches(int row) {
+        if(cmpCol < 0) {
+            return true;
+        }
+        int code = segment.getCode(cmpCol, row);
+        return (code >= cmpLow && code < cmpHigh) != cmpNegate;
+    }
+
+    private
+    boolean likeMatches(int row) {
+        if(likeCol < 0) {
+            return true;
+        }
+        int code = segment.getCode(likeCol, row);
+        byte result = likeResults[code];
+        if(result == UNKNOWN) {
+            result = likeMatcher.matches(segment.getDictionaryValue(likeCol, code)) ? MATCHED : UNMATCHED;
+            likeResults[code] = result;
+        }
+        return result == MATCHED;
+    }
+
+}
@@ -0,0 +1,371 @@
+package com.team.db.store;
+
+import com.team.util.ByteUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 基于内存映射的行扫描器，直接在映射的字节上查找 '|' 和 '\n'，只定位查询用到的列，
+ * 每行不产生任何对象。
+ *
+ * 分隔符以 SWAR 的方式查找：每次以小端序读入 8 个字节，用位运算一次得到其中所有 '|' 和 '\n' 的位置；
+ * 一个字长内结束的列都不需要时，以 bitCount 一次跳过，直接到达下一个需要的列。
+ *
+ * 用法：
+ *  try (MappedRowScanner scanner = new MappedRowScanner(file, cmpCol, likeCol)) {
+ *      while (scanner.next()) {
+ *          if(scanner.compare(0, cmpKey) > 0) { ... scanner.decode(1) ... }
+ *      }
+ *  }
+ *
+ * 也可以只扫描文件的一段 [start, end)：起始位置对齐到下一行行首，行首落在范围内的行都属于该段，
+ * 这样相邻的段恰好不重不漏地覆盖整个文件。
+ */
+public class MappedRowScanner implements Closeable {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 单次映射的窗口大小，超过该大小的文件分窗口映射。
+     */
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private static final long PIPES = ByteUtil.broadcast((byte) '|');
+
+    private static final long NEWLINES = ByteUtil.broadcast((byte) '\n');
+
+    private final FileChannel channel;
+
+    private final long fileSize;
+
+    /**
+     * 扫描范围的结束位置，行首不小于该位置的行不属于本次扫描
+     */
+    private final long rangeEnd;
+
+    /**
+     * 需要定位的列
+     */
+    private final int[] columns;
+
+    /**
+     * 需要扫描到的最大列
+     */
+    private final int maxColumn;
+
+    /**
+     * 不小于列号 c 的第一个需要列，c 取 [0, maxColumn]
+     */
+    private final int[] nextNeeded;
+
+    /**
+     * 当前行每个需要列的起止位置（窗口内）
+     */
+    private final int[] starts;
+
+    private final int[] ends;
+
+    /**
+     * 当前行内容（不含换行符）的起止位置（窗口内）
+     */
+    private int rowStart;
+
+    private int rowEnd;
+
+    private MappedByteBuffer window;
+
+    /**
+     * 当前窗口在文件中的起始位置
+     */
+    private long windowPos;
+
+    /**
+     * 窗口内下一行的起始位置
+     */
+    private int pos;
+
+    public MappedRowScanner(File file, int... columns) throws IOException {
+        this(file, 0, Long.MAX_VALUE, columns);
+    }
+
+    public MappedRowScanner(File file, long start, long end, int[] columns) throws IOException {
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+        this.fileSize = channel.size();
+        this.rangeEnd = Math.min(end, fileSize);
+        this.columns = columns;
+        int max = 0;
+        for (int column : columns) {
+            max = Math.max(max, column);
+        }
+        this.maxColumn = max;
+        this.nextNeeded = new int[max + 1];
+        for (int c = max, next = max; c >= 0; c--) {
+            for (int column : columns) {
+                if(column == c) {
+                    next = c;
+                }
+            }
+            nextNeeded[c] = next;
+        }
+        this.starts = new int[columns.length];
+        this.ends = new int[columns.length];
+        if(start <= 0 || start >= fileSize) {
+            map(Math.min(Math.max(start, 0), fileSize));
+        } else {
+            alignToRowStart(start);
+        }
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 移动到下一行，空行会被跳过。
+     *
+     * @return 没有更多行时返回 false
+     */
+    public
+    boolean next() throws IOException {
+        while (true) {
+            if(windowPos + pos >= rangeEnd) {
+                return false;
+            }
+            int limit = window.limit();
+            if(pos >= limit) {
+                if(windowPos + limit >= fileSize) {
+                    return false;
+                }
+                map(windowPos + pos);
+                continue;
+            }
+
+            int rowEnd = scanRow(pos, limit);
+            if(rowEnd < 0) {
+                /* 行跨越了窗口边界，从行首重新映射 */
+                if(windowPos + limit < fileSize) {
+                    if(pos == 0) {
+                        throw new IOException("Row larger than mapping window.");
+                    }
+                    map(windowPos + pos);
+                    continue;
+                }
+                rowEnd = limit;   /* 文件最后一行没有换行符 */
+                fillColumns(pos, rowEnd);
+            }
+
+            int rowStart = pos;
+            pos = rowEnd + 1;
+            int contentEnd = rowEnd > rowStart && window.get(rowEnd - 1) == '\r' ? rowEnd - 1 : rowEnd;
+            if(contentEnd == rowStart) {
+                continue;           /* 空行 */
+            }
+            this.rowStart = rowStart;
+            this.rowEnd = contentEnd;
+            if(contentEnd != rowEnd) {
+                for (int i = 0; i < columns.length; i++) {
+                    ends[i] = Math.min(ends[i], contentEnd);
+                    starts[i] = Math.min(starts[i], ends[i]);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 比较当前行的第 ${index} 个需要列与 ${key}，结果符号与 String.compareTo 一致。
+     */
+    public
+    int compare(int index, byte[] key) {
+        return ByteUtil.compare(window, starts[index], ends[index], key);
+    }
+
+    /**
+     * 当前行的第 ${index} 个需要列是否与 ${key} 相等。
+     */
+    public
+    boolean equals(int index, byte[] key) {
+        return ByteUtil.equals(window, starts[index], ends[index], key);
+    }
+
+    /**
+     * 解码当前行的第 ${index} 个需要列。
+     */
+    public
+    String decode(int index) {
+        return ByteUtil.decode(window, starts[index], ends[index]);
+    }
+
+    /**
+     * 解码当前行的全部内容（不含换行符）。
+     */
+    public
+    String decodeRow() {
+        return ByteUtil.decode(window, rowStart, rowEnd);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 定位到 ${start} 处或之后的第一个行首：${start} - 1 处是换行符时 ${start} 本身就是行首。
+     */
+    private
+    void alignToRowStart(long start) throws IOException {
+        map(start - 1);
+        while (true) {
+            int limit = window.limit();
+            for (; pos < limit; pos++) {
+                if(window.get(pos) == '\n') {
+                    ++pos;
+                    return;
+                }
+            }
+            if(windowPos + limit >= fileSize) {
+                return;
+            }
+            map(windowPos + limit);
+        }
+    }
+
+    private
+    void map(long position) throws IOException {
+        windowPos = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, fileSize - position));
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        pos = 0;
+    }
+
+    /**
+     * 从 ${from} 开始扫描一行，定位需要的列。
+     *
+     * @return 行尾 '\n' 的位置，窗口内没有行尾时返回 -1
+     */
+    private
+    int scanRow(int from, int limit) {
+        int col = 0;
+        int fieldStart = from;
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = window.getLong(i);
+            long newlines = ByteUtil.findBytes(word, NEWLINES);
+            long pipes = ByteUtil.findBytes(word, PIPES);
+            if(newlines != 0) {
+                pipes &= (newlines & -newlines) - 1;        /* 只看行尾之前的 '|' */
+            }
+            if(pipes != 0) {
+                int count = Long.bitCount(pipes);
+                if(nextNeeded[col] >= col + count) {
+                    /* 在这个字长内结束的列都不需要，直接跳到最后一个 '|' 之后 */
+                    col += count;
+                    fieldStart = i + ((63 - Long.numberOfLeadingZeros(pipes)) >>> 3) + 1;
+                } else {
+                    do {
+                        int end = i + (Long.numberOfTrailingZeros(pipes) >>> 3);
+                        setField(col, fieldStart, end);
+                        fieldStart = end + 1;
+                        pipes &= pipes - 1;
+                    } while (++col <= maxColumn && pipes != 0);
+                }
+            }
+            if(newlines != 0) {
+                int end = i + (Long.numberOfTrailingZeros(newlines) >>> 3);
+                if(col <= maxColumn) {
+                    setField(col, fieldStart, end);
+                    fillMissing(col + 1, end);
+                }
+                return end;
+            }
+            if(col > maxColumn) {
+                /* 需要的列都已定位，剩余部分只需找到行尾 */
+                return findNewline(i + Long.BYTES, limit);
+            }
+        }
+        /* 窗口末尾不足一个字长的部分逐字节处理 */
+        for (; i < limit; i++) {
+            byte b = window.get(i);
+            if(b == '|' || b == '\n') {
+                setField(col, fieldStart, i);
+                if(b == '\n') {
+                    fillMissing(col + 1, i);
+                    return i;
+                }
+                if(++col > maxColumn) {
+                    return findNewline(i + 1, limit);
+                }
+                fieldStart = i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 从 ${from} 开始查找 '\n'。
+     *
+     * @return '\n' 的位置，窗口内没有时返回 -1
+     */
+    private
+    int findNewline(int from, int limit) {
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long newlines = ByteUtil.findBytes(window.getLong(i), NEWLINES);
+            if(newlines != 0) {
+                return i + (Long.numberOfTrailingZeros(newlines) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            if(window.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 没有换行符结尾的最后一行，重新定位需要的列。
+     */
+    private
+    void fillColumns(int from, int limit) {
+        int col = 0;
+        int fieldStart = from;
+        for (int i = from; i < limit && col <= maxColumn; i++) {
+            if(window.get(i) == '|') {
+                setField(col++, fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        if(col <= maxColumn) {
+            setField(col, fieldStart, limit);
+            fillMissing(col + 1, limit);
+        }
+    }
+
+    private
+    void setField(int col, int start, int end) {
+        for (int i = 0; i < columns.length; i++) {
+            if(columns[i] == col) {
+                starts[i] = start;
+                ends[i] = end;
+            }
+        }
+    }
+
+    /**
+     * 本行缺失的列视为空值。
+     */
+    private
+    void fillMissing(int fromCol, int rowEnd) {
+        for (int col = fromCol; col <= maxColumn; col++) {
+            setField(col, rowEnd, rowEnd);
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.team.db.store;
+
+import com.team.db.QueryParam;
+import com.team.db.like.LikeMatcher;
+
+/**
+ * 区域统计：一个数据文件（或一个分区下所有文件）每列的最小值、最大值和总行数。
+ *
+ * 用于在不读取数据的情况下判断查询条件：
+ *  - NONE: 没有任何行能满足，整个文件 / 分区可以跳过；
+ *  - ALL:  所有行都满足，直接累加行数，不需要读取；
+ *  - SOME: 需要扫描。
+ */
+public class ZoneMap {
+
+    /* ====================================== Fields ====================================== */
+
+    public enum Verdict {
+        NONE,
+        SOME,
+        ALL
+    }
+
+    private final long rowCount;
+
+    private final String[] mins;
+
+    private final String[] maxs;
+
+    public ZoneMap(long rowCount, String[] mins, String[] maxs) {
+        this.rowCount = rowCount;
+        this.mins = mins;
+        this.maxs = maxs;
+    }
+
+    @Override
+    public String toString() {
+        return "ZoneMap{" +
+                "rowCount=" + rowCount +
+                ", columns=" + mins.length +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 从字典编码段直接得到区域统计：有序字典的首尾即最小值和最大值。
+     */
+    public static
+    ZoneMap of(ColumnSegment segment) {
+        int columnCount = segment.getColumnCount();
+        String[] mins = new String[columnCount];
+        String[] maxs = new String[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            int dictSize = segment.getDictionarySize(c);
+            mins[c] = dictSize == 0 ? null : segment.getDictionaryValue(c, 0);
+            maxs[c] = dictSize == 0 ? null : segment.getDictionaryValue(c, dictSize - 1);
+        }
+        return new ZoneMap(segment.getRowCount(), mins, maxs);
+    }
+
+    /**
+     * 合并两个区域统计，用于得到分区的统计。
+     */
+    public
+    ZoneMap merge(ZoneMap other) {
+        int columnCount = Math.max(mins.length, other.mins.length);
+        String[] newMins = new String[columnCount];
+        String[] newMaxs = new String[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            newMins[c] = min(getMin(c), other.getMin(c));
+            newMaxs[c] = max(getMax(c), other.getMax(c));
+        }
+        return new ZoneMap(rowCount + other.rowCount, newMins, newMaxs);
+    }
+
+    /**
+     * 列的最小值，没有行时返回 null，文件中不存在的列视为空串。
+     */
+    public
+    String getMin(int col) {
+        if(rowCount == 0) {
+            return null;
+        }
+        return col < mins.length ? mins[col] : "";
+    }
+
+    public
+    String getMax(int col) {
+        if(rowCount == 0) {
+            return null;
+        }
+        return col < maxs.length ? maxs[col] : "";
+    }
+
+    /**
+     * 判断比较条件。
+     */
+    public
+    Verdict compare(int col, QueryParam.CompareType cmpType, String cmpValue) {
+        String min = getMin(col), max = getMax(col);
+        if(min == null) {
+            return Verdict.NONE;
+        }
+        switch (cmpType) {
+            case greater:
+                if(max.compareTo(cmpValue) <= 0) {
+                    return Verdict.NONE;
+                }
+                return min.compareTo(cmpValue) > 0 ? Verdict.ALL : Verdict.SOME;
+            case less:
+                if(min.compareTo(cmpValue) >= 0) {
+                    return Verdict.NONE;
+                }
+                return max.compareTo(cmpValue) < 0 ? Verdict.ALL : Verdict.SOME;
+            case equals:
+                if(cmpValue.compareTo(min) < 0 || cmpValue.compareTo(max) > 0) {
+                    return Verdict.NONE;
+                }
+                return min.equals(max) ? Verdict.ALL : Verdict.SOME;
+            case notEquals:
+                if(cmpValue.compareTo(min) < 0 || cmpValue.compareTo(max) > 0) {
+                    return Verdict.ALL;
+                }
+                return min.equals(max) ? Verdict.NONE : Verdict.SOME;
+        }
+        throw new RuntimeException("!!!!" + cmpType.toString());
+    }
+
+    /**
+     * 判断 like 条件：只有整列只有一个值时才能确定。
+     */
+    public
+    Verdict like(int col, LikeMatcher likeMatcher) {
+        String min = getMin(col), max = getMax(col);
+        if(min == null) {
+            return Verdict.NONE;
+        }
+        if(!min.equals(max)) {
+            return Verdict.SOME;
+        }
+        return likeMatcher.matches(min) ? Verdict.ALL : Verdict.NONE;
+    }
+
+    /**
+     * 判断查询条件的组合：任意条件为 NONE 则为 NONE，所有条件为 ALL 才为 ALL。
+     *
+     * @param cmpCol 为 -1 表示比较条件不在此判断
+     * @param likeCol 为 -1 表示 like 条件不在此判断
+     */
+    public
+    Verdict evaluate(int cmpCol, QueryParam.CompareType cmpType, String cmpValue,
+                     int likeCol, LikeMatcher likeMatcher) {
+        Verdict verdict = Verdict.ALL;
+        if(cmpCol >= 0) {
+            verdict = compare(cmpCol, cmpType, cmpValue);
+            if(verdict == Verdict.NONE) {
+                return verdict;
+            }
+        }
+        if(likeCol >= 0) {
+            Verdict likeVerdict = like(likeCol, likeMatcher);
+            if(likeVerdict != Verdict.ALL) {
+                return likeVerdict;
+            }
+        }
+        return verdict;
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private static
+    String min(String a, String b) {
+        if(a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static
+    String max(String a, String b) {
+        if(a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+}
@@ -0,0 +1,441 @@
+package com.team.tool;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 可重复的合成数据集和查询生成器，同时由朴素的预言机（{@link NaiveOracle}）给出参考答案。
+ *
+ * 生成的目录结构与 DatabaseImpl.load 要求的一致：
+ *  dbDir/tableN/p0=00/p1=03/.../part-K     '|' 分隔的数据文件
+ * 表 i 的分区深度为 min(i, depth)，因此 table0 总是无分区表。分区键为 p0..p{depth-1}，
+ * 每级 ${fanOut} 个值；每个最终分区（无分区表为表目录）下 ${filesPerPartition} 个文件，
+ * 每个文件 ${rowsPerFile} 行，每行 ${columnCount} 列 column0..column{columnCount-1}。
+ *
+ * 每列取 ${cardinality} 个不同的值，值的编号服从指数为 ${skew} 的 Zipf 分布（0 为均匀分布）：
+ *  偶数列  定长的数字串，如 "000731"；
+ *  奇数列  单词加编号，如 "delta731"，部分单词为中文，用于检查 UTF-8 下的比较语义。
+ *
+ * 查询按 ${queryMix} 的权重覆盖 4 种组合：列比较 + 列 like、分区比较 + 列 like、
+ * 列比较 + 分区 like、分区比较 + 分区 like（无分区表只生成第一种）。
+ * like 模式有精确、前缀、后缀、包含和带 '_' 的一般形式，取自真实存在的值，保证有命中。
+ *
+ * 同样的参数和种子总是生成同样的数据、查询和答案。数据边生成边交给预言机计数，
+ * 不需要再读一遍，内存占用与数据量无关。
+ *
+ * Eg.
+ *  java -cp first_round.jar com.team.tool.DatasetGenerator --tables=4 --depth=3 --rowsPerFile=100000 \
+ *      /data/database /data/params.txt /data/answers.txt
+ */
+public class DatasetGenerator {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final String[] WORDS = {
+            "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel",
+            "india", "juliet", "kilo", "lima", "北京", "上海", "深圳", "杭州"
+    };
+
+    private static final String[] COMPARE_TYPES = {">", "<", "=", "!="};
+
+    private static final String[] LIKE_TYPES = {"ANY_LIKE", "ALL_LIKE", "NONE_LIKE"};
+
+    private long seed = 42;
+
+    private int tableCount = 2;
+
+    private int depth = 2;
+
+    private int fanOut = 4;
+
+    private int filesPerPartition = 1;
+
+    private int rowsPerFile = 10_000;
+
+    private int columnCount = 10;
+
+    private int cardinality = 1000;
+
+    private double skew = 0;
+
+    private int queryCount = 1000;
+
+    /**
+     * 4 种查询组合的权重：列比较 + 列 like、分区比较 + 列 like、列比较 + 分区 like、分区比较 + 分区 like
+     */
+    private int[] queryMix = {4, 2, 2, 1};
+
+    /**
+     * 每个 like 条件最多的模式数
+     */
+    private int maxLikeParams = 3;
+
+    /**
+     * Zipf 分布的累积概率，均匀分布时为 null
+     */
+    private double[] zipfCdf;
+
+    @Override
+    public String toString() {
+        return "DatasetGenerator{" +
+                "seed=" + seed +
+                ", tableCount=" + tableCount +
+                ", depth=" + depth +
+                ", fanOut=" + fanOut +
+                ", filesPerPartition=" + filesPerPartition +
+                ", rowsPerFile=" + rowsPerFile +
+                ", columnCount=" + columnCount +
+                ", cardinality=" + cardinality +
+                ", skew=" + skew +
+                ", queryCount=" + queryCount +
+                ", queryMix=" + Arrays.toString(queryMix) +
+                ", maxLikeParams=" + maxLikeParams +
+                '}';
+    }
+
+    public DatasetGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public DatasetGenerator setTableCount(int tableCount) {
+        this.tableCount = requirePositive("tableCount", tableCount);
+        return this;
+    }
+
+    public DatasetGenerator setDepth(int depth) {
+        if(depth < 0) {
+            throw new IllegalArgumentException("depth: " + depth);
+        }
+        this.depth = depth;
+        return this;
+    }
+
+    public DatasetGenerator setFanOut(int fanOut) {
+        this.fanOut = requirePositive("fanOut", fanOut);
+        return this;
+    }
+
+    public DatasetGenerator setFilesPerPartition(int filesPerPartition) {
+        this.filesPerPartition = requirePositive("filesPerPartition", filesPerPartition);
+        return this;
+    }
+
+    public DatasetGenerator setRowsPerFile(int rowsPerFile) {
+        this.rowsPerFile = requirePositive("rowsPerFile", rowsPerFile);
+        return this;
+    }
+
+    /**
+     * 列序号由列名最后一位数字得到，因此最多 10 列。
+     */
+    public DatasetGenerator setColumnCount(int columnCount) {
+        if(columnCount < 1 || columnCount > 10) {
+            throw new IllegalArgumentException("columnCount: " + columnCount);
+        }
+        this.columnCount = columnCount;
+        return this;
+    }
+
+    public DatasetGenerator setCardinality(int cardinality) {
+        this.cardinality = requirePositive("cardinality", cardinality);
+        return this;
+    }
+
+    public DatasetGenerator setSkew(double skew) {
+        if(skew < 0) {
+            throw new IllegalArgumentException("skew: " + skew);
+        }
+        this.skew = skew;
+        return this;
+    }
+
+    public DatasetGenerator setQueryCount(int queryCount) {
+        if(queryCount < 0) {
+            throw new IllegalArgumentException("queryCount: " + queryCount);
+        }
+        this.queryCount = queryCount;
+        return this;
+    }
+
+    public DatasetGenerator setQueryMix(int... queryMix) {
+        if(queryMix.length != 4 || Arrays.stream(queryMix).anyMatch(w -> w < 0) || queryMix[0] == 0) {
+            throw new IllegalArgumentException("queryMix: " + Arrays.toString(queryMix));
+        }
+        this.queryMix = queryMix.clone();
+        return this;
+    }
+
+    public DatasetGenerator setMaxLikeParams(int maxLikeParams) {
+        this.maxLikeParams = requirePositive("maxLikeParams", maxLikeParams);
+        return this;
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 生成数据集、查询文件和参考答案文件。
+     */
+    public
+    void generate(File dbDir, File paramsFile, File answerFile) throws IOException {
+        zipfCdf = skew == 0 ? null : zipfCdf(cardinality, skew);
+
+        /* 先生成查询（只依赖值域），再边生成数据边计数。 */
+        Random queryRandom = new Random(seed);
+        List<NaiveOracle.Query> queries = new ArrayList<>(queryCount);
+        for (int i = 0; i < queryCount; i++) {
+            queries.add(nextQuery(queryRandom));
+        }
+        NaiveOracle oracle = new NaiveOracle(queries);
+
+        for (int t = 0; t < tableCount; t++) {
+            generateTable(dbDir, "table" + t, Math.min(t, depth), oracle);
+        }
+
+        try (BufferedWriter params = newWriter(paramsFile); BufferedWriter answers = newWriter(answerFile)) {
+            for (NaiveOracle.Query query : queries) {
+                params.write(query.toString());
+                params.newLine();
+                answers.write(String.valueOf(query.getCount()));
+                answers.newLine();
+            }
+        }
+    }
+
+    /**
+     * DatasetGenerator [--name=value ...] dbDir paramsFile answerFile
+     *
+     * 参数名与 setter 对应，如 --tables=4 --depth=3 --fanOut=8 --rowsPerFile=1000000 --skew=1.1 --queryMix=4,2,2,1
+     */
+    public static
+    void main(String[] args) throws IOException {
+        DatasetGenerator generator = new DatasetGenerator();
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if(!arg.startsWith("--")) {
+                paths.add(arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if(eq < 0) {
+                throw new IllegalArgumentException("Expect --name=value: " + arg);
+            }
+            String name = arg.substring(2, eq), value = arg.substring(eq + 1);
+            switch (name) {
+                case "seed": generator.setSeed(Long.parseLong(value)); break;
+                case "tables": generator.setTableCount(Integer.parseInt(value)); break;
+                case "depth": generator.setDepth(Integer.parseInt(value)); break;
+                case "fanOut": generator.setFanOut(Integer.parseInt(value)); break;
+                case "filesPerPartition": generator.setFilesPerPartition(Integer.parseInt(value)); break;
+                case "rowsPerFile": generator.setRowsPerFile(Integer.parseInt(value)); break;
+                case "columns": generator.setColumnCount(Integer.parseInt(value)); break;
+                case "cardinality": generator.setCardinality(Integer.parseInt(value)); break;
+                case "skew": generator.setSkew(Double.parseDouble(value)); break;
+                case "queries": generator.setQueryCount(Integer.parseInt(value)); break;
+                case "queryMix":
+                    generator.setQueryMix(Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray());
+                    break;
+                case "maxLikeParams": generator.setMaxLikeParams(Integer.parseInt(value)); break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if(paths.size() != 3) {
+            System.err.println("Usage: DatasetGenerator [--name=value ...] dbDir paramsFile answerFile");
+            System.exit(-1);
+        }
+
+        long startNs = System.nanoTime();
+        generator.generate(new File(paths.get(0)), new File(paths.get(1)), new File(paths.get(2)));
+        System.out.println(generator + " generated in "
+                + (System.nanoTime() - startNs) / 1_000_000 + " ms");
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 生成一张表：按最终分区的编号依次生成，每个文件使用由种子和文件位置导出的独立随机数。
+     */
+    private
+    void generateTable(File dbDir, String table, int tableDepth, NaiveOracle oracle) throws IOException {
+        int leaves = 1;
+        for (int level = 0; level < tableDepth; level++) {
+            leaves = Math.multiplyExact(leaves, fanOut);
+        }
+        Map<String, String> partitionValues = new HashMap<>();
+        String[] row = new String[columnCount];
+        StringBuilder line = new StringBuilder(256);
+        for (int leaf = 0; leaf < leaves; leaf++) {
+            File partitionDir = new File(dbDir, table);
+            partitionValues.clear();
+            for (int level = 0, rest = leaf; level < tableDepth; level++, rest /= fanOut) {
+                String key = "p" + level, value = partitionValue(rest % fanOut);
+                partitionValues.put(key, value);
+                partitionDir = new File(partitionDir, key + "=" + value);
+            }
+            if(!partitionDir.exists() && !partitionDir.mkdirs()) {
+                throw new IOException("Can't create directory: " + partitionDir);
+            }
+
+            for (int f = 0; f < filesPerPartition; f++) {
+                Random random = new Random(seed * 1_000_003L + table.hashCode() * 7919L + leaf * 131L + f);
+                try (BufferedWriter writer = newWriter(new File(partitionDir, "part-" + f))) {
+                    for (int r = 0; r < rowsPerFile; r++) {
+                        line.setLength(0);
+                        for (int c = 0; c < columnCount; c++) {
+                            row[c] = columnValue(c, nextId(random));
+                            if(c > 0) {
+                                line.append('|');
+                            }
+                            line.append(row[c]);
+                        }
+                        writer.write(line.toString());
+                        writer.newLine();
+                        oracle.accept(table, partitionValues, row);
+                    }
+                }
+            }
+        }
+    }
+
+    private
+    NaiveOracle.Query nextQuery(Random random) {
+        int t = random.nextInt(tableCount);
+        int tableDepth = Math.min(t, depth);
+        int kind = 0;
+        if(tableDepth > 0) {
+            int total = 0;
+            for (int weight : queryMix) {
+                total += weight;
+            }
+            int pick = random.nextInt(total);
+            while (pick >= queryMix[kind]) {
+                pick -= queryMix[kind++];
+            }
+        }
+        boolean partitionCompare = kind == 1 || kind == 3;
+        boolean partitionLike = kind == 2 || kind == 3;
+
+        String cmpColumn, cmpValue;
+        if(partitionCompare) {
+            cmpColumn = "p" + random.nextInt(tableDepth);
+            cmpValue = partitionValue(random.nextInt(fanOut));
+        } else {
+            int c = random.nextInt(columnCount);
+            cmpColumn = "column" + c;
+            cmpValue = columnValue(c, nextId(random));
+        }
+
+        String likeColumn;
+        String[] likeParams = new String[1 + random.nextInt(maxLikeParams)];
+        if(partitionLike) {
+            likeColumn = "p" + random.nextInt(tableDepth);
+            for (int i = 0; i < likeParams.length; i++) {
+                likeParams[i] = likePattern(random, partitionValue(random.nextInt(fanOut)));
+            }
+        } else {
+            int c = random.nextInt(columnCount);
+            likeColumn = "column" + c;
+            for (int i = 0; i < likeParams.length; i++) {
+                likeParams[i] = likePattern(random, columnValue(c, nextId(random)));
+            }
+        }
+        return new NaiveOracle.Query("table" + t, cmpColumn, COMPARE_TYPES[random.nextInt(COMPARE_TYPES.length)],
+                cmpValue, likeColumn, LIKE_TYPES[random.nextInt(LIKE_TYPES.length)], likeParams);
+    }
+
+    /**
+     * 由一个真实存在的值构造 like 模式：精确、前缀、后缀、包含或带 '_' 的一般形式。
+     */
+    private static
+    String likePattern(Random random, String value) {
+        int n = value.length();
+        int k = 1 + random.nextInt(Math.max(1, n - 1));
+        switch (random.nextInt(5)) {
+            case 0:
+                return value;
+            case 1:
+                return value.substring(0, k) + "%";
+            case 2:
+                return "%" + value.substring(n - k);
+            case 3:
+                int from = random.nextInt(n - k + 1);
+                return "%" + value.substring(from, from + k) + "%";
+            default:
+                int at = random.nextInt(n);
+                return "%" + value.substring(0, at) + "_" + value.substring(at + 1) + "%";
+        }
+    }
+
+    private
+    String columnValue(int column, int id) {
+        if(column % 2 == 0) {
+            return pad(id, cardinality);
+        }
+        return WORDS[id % WORDS.length] + id;
+    }
+
+    private
+    String partitionValue(int id) {
+        return pad(id, Math.max(fanOut, 100));
+    }
+
+    /**
+     * 按 Zipf 分布（或均匀分布）抽取值的编号。
+     */
+    private
+    int nextId(Random random) {
+        if(zipfCdf == null) {
+            return random.nextInt(cardinality);
+        }
+        int index = Arrays.binarySearch(zipfCdf, random.nextDouble());
+        return Math.min(cardinality - 1, index < 0 ? -index - 1 : index);
+    }
+
+    private static
+    double[] zipfCdf(int cardinality, double skew) {
+        double[] cdf = new double[cardinality];
+        double sum = 0;
+        for (int i = 0; i < cardinality; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < cardinality; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    /**
+     * 补零到 ${bound - 1} 的位数，使字符串顺序与数值顺序一致。
+     */
+    private static
+    String pad(int id, int bound) {
+        String digits = String.valueOf(id);
+        int width = String.valueOf(Math.max(0, bound - 1)).length();
+        StringBuilder builder = new StringBuilder(width);
+        for (int i = digits.length(); i < width; i++) {
+            builder.append('0');
+        }
+        return builder.append(digits).toString();
+    }
+
+    private static
+    BufferedWriter newWriter(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Can't create directory: " + parent);
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static
+    int requirePositive(String name, int value) {
+        if(value < 1) {
+            throw new IllegalArgumentException(name + ": " + value);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.team.tool;
+
+import com.team.util.StringUtil;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 朴素的预言机：逐行、逐个查询地按定义求值，不使用任何索引、统计或缓存，作为正确性的参考。
+ *
+ * 语义与原始实现一致：比较使用 String.compareTo；like 模式按 StringUtil.likeMatchesStringToRegex
+ * 转换为正则后整串匹配，再按 StringUtil.anyLike/allLike/noneLike 组合。
+ * 列名含 "column" 时取最后一位数字为列序号，否则为分区键，取该行所在分区的值。
+ */
+final class NaiveOracle {
+
+    /* ====================================== Fields ====================================== */
+
+    /**
+     * 表名 -> 该表的所有查询
+     */
+    private final Map<String, List<Query>> tableQueries = new HashMap<>();
+
+    NaiveOracle(List<Query> queries) {
+        for (Query query : queries) {
+            tableQueries.computeIfAbsent(query.table, k -> new ArrayList<>()).add(query);
+        }
+    }
+
+    /**
+     * 一个查询及其计数。
+     */
+    static final class Query {
+
+        final String table;
+
+        final String cmpColumn;
+
+        final String cmpType;
+
+        final String cmpValue;
+
+        final String likeColumn;
+
+        final String likeType;
+
+        final String[] likeParams;
+
+        private final Pattern[] patterns;
+
+        private long count;
+
+        Query(String table, String cmpColumn, String cmpType, String cmpValue,
+              String likeColumn, String likeType, String[] likeParams) {
+            this.table = table;
+            this.cmpColumn = cmpColumn;
+            this.cmpType = cmpType;
+            this.cmpValue = cmpValue;
+            this.likeColumn = likeColumn;
+            this.likeType = likeType;
+            this.likeParams = likeParams;
+            this.patterns = new Pattern[likeParams.length];
+            for (int i = 0; i < likeParams.length; i++) {
+                patterns[i] = Pattern.compile(StringUtil.likeMatchesStringToRegex(likeParams[i]));
+            }
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * 查询文件中的一行，Eg. table0 column0 > '200000' column2 ANY_LIKE ['2017%','2018%']
+         */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(64)
+                    .append(table).append(' ')
+                    .append(cmpColumn).append(' ').append(cmpType).append(" '").append(cmpValue).append("' ")
+                    .append(likeColumn).append(' ').append(likeType).append(" [");
+            for (int i = 0; i < likeParams.length; i++) {
+                if(i > 0) {
+                    builder.append(',');
+                }
+                builder.append('\'').append(likeParams[i]).append('\'');
+            }
+            return builder.append(']').toString();
+        }
+
+    }
+
+    /* ====================================== Package ====================================== */
+
+    /**
+     * 对一行求值所有该表的查询。
+     *
+     * @param partitionValues 该行所在分区的 分区键 -> 值
+     */
+    void accept(String table, Map<String, String> partitionValues, String[] row) {
+        List<Query> queries = tableQueries.get(table);
+        if(queries == null) {
+            return;
+        }
+        for (Query query : queries) {
+            String checkValue = valueOf(query.cmpColumn, partitionValues, row);
+            String likeValue = valueOf(query.likeColumn, partitionValues, row);
+            if(checkValue == null || likeValue == null) {
+                continue;
+            }
+            if(compare(checkValue, query.cmpType, query.cmpValue) && like(likeValue, query.likeType, query.patterns)) {
+                ++query.count;
+            }
+        }
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private static
+    String valueOf(String column, Map<String, String> partitionValues, String[] row) {
+        if(column.contains("column")) {
+            int ordinal = column.charAt(column.length() - 1) - '0';
+            return ordinal < row.length ? row[ordinal] : "";
+        }
+        return partitionValues.get(column);
+    }
+
+    private static
+    boolean compare(String checkValue, String cmpType, String cmpValue) {
+        int cmp = checkValue.compareTo(cmpValue);
+        switch (cmpType) {
+            case ">":
+                return cmp > 0;
+            case "<":
+                return cmp < 0;
+            case "=":
+                return cmp == 0;
+            default:
+                return cmp != 0;
+        }
+    }
+
+    private static
+    boolean like(String value, String likeType, Pattern[] patterns) {
+        switch (likeType) {
+            case "ANY_LIKE":
+                return StringUtil.anyLike(value, patterns);
+            case "ALL_LIKE":
+                return StringUtil.allLike(value, patterns);
+            default:
+                return StringUtil.noneLike(value, patterns);
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+package com.team.tool;
+
+import com.team.db.Database;
+import com.team.db.DatabaseConfig;
+import com.team.db.impl.DatabaseImpl;
+import com.team.db.service.QueryService;
+import com.team.db.service.QueryServiceConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * QueryService 的并发浸泡测试：多个客户端线程以突发的方式持续提交随机查询，
+ * 每个结果都与参考答案核对，检查并发下的正确性以及拒绝、超时、取消和合并的行为。
+ *
+ * 每个客户端循环：一次提交 1..${burst} 个查询（一半取自前 ${hotQueries} 个查询，制造相同的在途查询），
+ * 其中 ${cancelPercent}% 随即取消，再等待全部结束；被拒绝的查询指数退避后重试，
+ * 两次突发之间随机停顿 0..${pauseMillis} 毫秒。
+ *
+ * 结束时打印统计，有结果与答案不符或查询失败时以非 0 状态退出。
+ *
+ * Eg.
+ *  java -cp first_round.jar com.team.tool.QuerySoak --clients=32 --seconds=60 --workers=8 --queue=64 \
+ *      --timeoutMillis=2000 --resultCacheSize=0 /data/database /data/params.txt /data/answers.txt
+ */
+public class QuerySoak {
+
+    /* ====================================== Fields ====================================== */
+
+    private int clients = 16;
+
+    private long seconds = 30;
+
+    private int burst = 8;
+
+    private int hotQueries = 16;
+
+    private int cancelPercent = 5;
+
+    private long pauseMillis = 20;
+
+    private long timeoutMillis = 5000;
+
+    private long seed = 42;
+
+    private final LongAdder verified = new LongAdder();
+
+    private final LongAdder mismatched = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder timedOut = new LongAdder();
+
+    private final LongAdder cancelled = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    /**
+     * 已打印的不符结果数，只打印前几个
+     */
+    private final AtomicLong reported = new AtomicLong();
+
+    @Override
+    public String toString() {
+        return "QuerySoak{" +
+                "clients=" + clients +
+                ", seconds=" + seconds +
+                ", burst=" + burst +
+                ", hotQueries=" + hotQueries +
+                ", cancelPercent=" + cancelPercent +
+                ", pauseMillis=" + pauseMillis +
+                ", timeoutMillis=" + timeoutMillis +
+                ", seed=" + seed +
+                '}';
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 以 ${clients} 个客户端线程运行 ${seconds} 秒。
+     *
+     * @return 结果与答案不符和失败的查询数
+     */
+    public
+    long run(QueryService service, List<String> params, List<String> answers) throws InterruptedException {
+        long deadlineNs = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Random random = new Random(seed + i);
+            Thread thread = new Thread(() -> client(service, params, answers, random, deadlineNs), "soak-client-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return mismatched.sum() + failed.sum();
+    }
+
+    /**
+     * QuerySoak [--name=value ...] dbDir paramsFile answerFile [storeDir]
+     *
+     * 客户端参数：--clients --seconds --burst --hotQueries --cancelPercent --pauseMillis --timeoutMillis --seed
+     * 服务参数：--workers --queue --coalesce=false
+     * 数据库参数：--parallelism --resultCacheSize --predicateCacheBytes
+     */
+    public static
+    void main(String[] args) throws IOException, InterruptedException {
+        QuerySoak soak = new QuerySoak();
+        QueryServiceConfig serviceConfig = new QueryServiceConfig();
+        DatabaseConfig databaseConfig = new DatabaseConfig();
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if(!arg.startsWith("--")) {
+                paths.add(arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if(eq < 0) {
+                throw new IllegalArgumentException("Expect --name=value: " + arg);
+            }
+            String name = arg.substring(2, eq), value = arg.substring(eq + 1);
+            switch (name) {
+                case "clients": soak.clients = requirePositive(name, Integer.parseInt(value)); break;
+                case "seconds": soak.seconds = requirePositive(name, Integer.parseInt(value)); break;
+                case "burst": soak.burst = requirePositive(name, Integer.parseInt(value)); break;
+                case "hotQueries": soak.hotQueries = requirePositive(name, Integer.parseInt(value)); break;
+                case "cancelPercent": soak.cancelPercent = Integer.parseInt(value); break;
+                case "pauseMillis": soak.pauseMillis = Long.parseLong(value); break;
+                case "timeoutMillis": soak.timeoutMillis = Long.parseLong(value); break;
+                case "seed": soak.seed = Long.parseLong(value); break;
+                case "workers": serviceConfig.setWorkers(Integer.parseInt(value)); break;
+                case "queue": serviceConfig.setQueueCapacity(Integer.parseInt(value)); break;
+                case "coalesce": serviceConfig.setCoalesce(Boolean.parseBoolean(value)); break;
+                case "parallelism": databaseConfig.setParallelism(Integer.parseInt(value)); break;
+                case "resultCacheSize": databaseConfig.setResultCacheSize(Integer.parseInt(value)); break;
+                case "predicateCacheBytes": databaseConfig.setPredicateCacheBytes(Long.parseLong(value)); break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if(paths.size() != 3 && paths.size() != 4) {
+            System.err.println("Usage: QuerySoak [--name=value ...] dbDir paramsFile answerFile [storeDir]");
+            System.exit(-1);
+        }
+        if(paths.size() == 4) {
+            databaseConfig.setStoreDir(new File(paths.get(3)));
+        }
+
+        List<String> params = Files.readAllLines(new File(paths.get(1)).toPath(), StandardCharsets.UTF_8);
+        List<String> answers = Files.readAllLines(new File(paths.get(2)).toPath(), StandardCharsets.UTF_8);
+        if(params.size() != answers.size()) {
+            throw new IllegalArgumentException("params and answers differ in size: "
+                    + params.size() + " != " + answers.size());
+        }
+        Database database = DatabaseImpl.load(paths.get(0), databaseConfig);
+        if(database == null) {
+            throw new IllegalArgumentException("Not a database directory: " + paths.get(0));
+        }
+
+        System.out.println(soak + " " + serviceConfig);
+        long errors;
+        try (QueryService service = new QueryService(database, serviceConfig)) {
+            errors = soak.run(service, params, answers);
+            System.out.println(service);
+        }
+        System.out.println("verified=" + soak.verified.sum()
+                + ", mismatched=" + soak.mismatched.sum()
+                + ", failed=" + soak.failed.sum()
+                + ", timedOut=" + soak.timedOut.sum()
+                + ", cancelled=" + soak.cancelled.sum()
+                + ", retries=" + soak.retries.sum());
+        System.exit(errors == 0 ? 0 : 1);
+    }
+
+    /* ====================================== Private ====================================== */
+
+    private
+    void client(QueryService service, List<String> params, List<String> answers, Random random, long deadlineNs) {
+        int hot = Math.min(hotQueries, params.size());
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(burst);
+        List<Integer> indexes = new ArrayList<>(burst);
+        try {
+            while (System.nanoTime() < deadlineNs) {
+                futures.clear();
+                indexes.clear();
+                int size = 1 + random.nextInt(burst);
+                for (int i = 0; i < size; i++) {
+                    int index = random.nextBoolean() ? random.nextInt(hot) : random.nextInt(params.size());
+                    CompletableFuture<Integer> future = submit(service, params.get(index), random);
+                    if(random.nextInt(100) < cancelPercent) {
+                        future.cancel(false);
+                    }
+                    futures.add(future);
+                    indexes.add(index);
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    check(futures.get(i), params.get(indexes.get(i)), answers.get(indexes.get(i)));
+                }
+                if(pauseMillis > 0) {
+                    Thread.sleep(random.nextInt((int) pauseMillis + 1));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 提交一个查询，被拒绝时指数退避后重试。
+     */
+    private
+    CompletableFuture<Integer> submit(QueryService service, String param, Random random) throws InterruptedException {
+        long backoffMillis = 1;
+        while (true) {
+            try {
+                return service.submit(param, timeoutMillis);
+            } catch (RejectedExecutionException e) {
+                retries.increment();
+                Thread.sleep(backoffMillis + random.nextInt((int) backoffMillis + 1));
+                backoffMillis = Math.min(backoffMillis * 2, 64);
+            }
+        }
+    }
+
+    private
+    void check(CompletableFuture<Integer> future, String param, String answer) throws InterruptedException {
+        try {
+            int count = future.get();
+            if(String.valueOf(count).equals(answer.trim())) {
+                verified.increment();
+            } else {
+                mismatched.increment();
+                if(reported.getAndIncrement() < 10) {
+                    System.err.println("Mismatch: " + param + " expected " + answer + " but " + count);
+                }
+            }
+        } catch (CancellationException e) {
+            cancelled.increment();
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof TimeoutException) {
+                timedOut.increment();
+            } else if(e.getCause() instanceof CancellationException) {
+                cancelled.increment();
+            } else {
+                failed.increment();
+                System.err.println("Failed: " + param + " " + e.getCause());
+            }
+        }
+    }
+
+    private static
+    int requirePositive(String name, int value) {
+        if(value < 1) {
+            throw new IllegalArgumentException(name + ": " + value);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,217 @@
+package com.team.tool;
+
+import com.team.db.DataFile;
+import com.team.db.DatabaseConfig;
+import com.team.db.impl.DatabaseImpl;
+import com.team.db.impl.TableImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * 数据文件变化后的回归检查：在临时目录中建一个小数据集，改动数据文件后重新加载（或等待后台检查），
+ * 核对查询结果是否反映了改动。每个场景打印 OK 或 FAIL，有失败时以非 0 状态退出。
+ *
+ * 场景：
+ *  rewriteInPlace  原地改写数据文件（文件名和目录不变），带目录快照和列式存储重启后查询
+ *  noCache         不配置任何缓存，表目录中新增文件后由后台检查发现
+ *  catalogOnClose  延迟加载时查询期间才得到的分区布局和文件行数，关闭时写入目录快照，重启后直接使用
+ *
+ * Eg.
+ *  java -cp first_round.jar com.team.tool.ReloadCheck [workDir]
+ */
+public class ReloadCheck {
+
+    /* ====================================== Fields ====================================== */
+
+    private static final String QUERY = "table0 column0 > 'a' column1 ANY_LIKE ['%']";
+
+    /**
+     * 两个条件都是分区键的查询，由分区的总行数回答
+     */
+    private static final String PARTITION_QUERY = "table0 key > '0' key ANY_LIKE ['%']";
+
+    /**
+     * 工作目录，每个场景使用其下独立的子目录
+     */
+    private final File workDir;
+
+    private int failures;
+
+    public ReloadCheck(File workDir) {
+        this.workDir = workDir;
+    }
+
+    /* ====================================== Public ====================================== */
+
+    /**
+     * 依次运行所有场景。
+     *
+     * @return 失败的场景数
+     */
+    public
+    int run() throws IOException, InterruptedException {
+        rewriteInPlace();
+        noCache();
+        catalogOnClose();
+        return failures;
+    }
+
+    /**
+     * ReloadCheck [workDir]，不指定时使用临时目录，结束后删除。
+     */
+    public static
+    void main(String[] args) throws IOException, InterruptedException {
+        File workDir = args.length > 0 ? new File(args[0])
+                : Files.createTempDirectory("reload-check").toFile();
+        int failures;
+        try {
+            failures = new ReloadCheck(workDir).run();
+        } finally {
+            if(args.length == 0) {
+                delete(workDir.toPath());
+            }
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /* ====================================== Private ====================================== */
+
+    /**
+     * 原地改写数据文件：大小不变、目录的修改时间不变，目录快照的目录校验仍然通过，
+     * 重启后必须发现文件已变，重新转换列式段文件。
+     */
+    private
+    void rewriteInPlace() throws IOException {
+        File dir = scenarioDir("rewriteInPlace");
+        File dataFile = writeDataFile(new File(dir, "db/table0"), "a|x\na|y\n");
+        DatabaseConfig config = new DatabaseConfig()
+                .setCatalogFile(new File(dir, "catalog.bin"))
+                .setStoreDir(new File(dir, "store"));
+
+        int before = query(dir, config);
+        long dirModified = dataFile.getParentFile().lastModified();
+        long fileModified = dataFile.lastModified();
+        Files.write(dataFile.toPath(), "b|x\nc|y\n".getBytes(StandardCharsets.UTF_8));
+        /* 文件系统的时间精度可能很粗，显式推后修改时间，目录的修改时间保持不变 */
+        dataFile.setLastModified(fileModified + 10_000);
+        dataFile.getParentFile().setLastModified(dirModified);
+        int after = query(dir, config);
+
+        check("rewriteInPlace", before == 0 && after == 2, "before=" + before + " after=" + after);
+    }
+
+    /**
+     * 结果缓存和位图缓存都关闭时，表文件的变化同样由后台检查发现，之后的查询看到新文件。
+     */
+    private
+    void noCache() throws IOException, InterruptedException {
+        File dir = scenarioDir("noCache");
+        File dataFile = writeDataFile(new File(dir, "db/table0"), "a|x\nb|y\n");
+        DatabaseConfig config = new DatabaseConfig()
+                .setResultCacheSize(0)
+                .setPredicateCacheBytes(0)
+                .setResultCacheValidateMillis(50);
+
+        DatabaseImpl database = (DatabaseImpl) DatabaseImpl.load(new File(dir, "db").getPath(), config);
+        try {
+            int before = database.matchesCount(QUERY);
+            Files.write(new File(dataFile.getParentFile(), "part-1").toPath(), "c|z\n".getBytes(StandardCharsets.UTF_8));
+            int after = before;
+            for (long deadline = System.currentTimeMillis() + 5000;
+                 after == before && System.currentTimeMillis() < deadline; ) {
+                Thread.sleep(50);
+                after = database.matchesCount(QUERY);
+            }
+            check("noCache", before == 1 && after == 2, "before=" + before + " after=" + after);
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * 延迟加载时启动不写快照；查询得到的布局和行数在关闭时写入，重启后布局取自快照，行数不必重新统计。
+     */
+    private
+    void catalogOnClose() throws IOException {
+        File dir = scenarioDir("catalogOnClose");
+        writeDataFile(new File(dir, "db/table0/key=1"), "a|x\nb|y\nc|z\n");
+        File catalogFile = new File(dir, "catalog.bin");
+        DatabaseConfig config = new DatabaseConfig().setCatalogFile(catalogFile).setLazyLoad(true);
+
+        int before = query(dir, config, PARTITION_QUERY);
+        DatabaseImpl database = (DatabaseImpl) DatabaseImpl.load(new File(dir, "db").getPath(), config);
+        try {
+            TableImpl table = (TableImpl) database.getTables().get("table0");
+            DataFile dataFile = table.getPartitions().get(0).getDataFiles().get(0);
+            boolean ok = before == 3 && table.isLoadedFromSnapshot() && dataFile.getRowCount() == 3;
+            check("catalogOnClose", ok, "count=" + before + " saved=" + catalogFile.isFile()
+                    + " fromSnapshot=" + table.isLoadedFromSnapshot() + " rowCount=" + dataFile.getRowCount());
+        } finally {
+            database.close();
+        }
+    }
+
+    private static
+    int query(File dir, DatabaseConfig config) {
+        return query(dir, config, QUERY);
+    }
+
+    /**
+     * 加载数据集，执行一次查询后关闭。
+     */
+    private static
+    int query(File dir, DatabaseConfig config, String param) {
+        DatabaseImpl database = (DatabaseImpl) DatabaseImpl.load(new File(dir, "db").getPath(), config);
+        try {
+            return database.matchesCount(param);
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * 在 ${dataDir} 下写一个数据文件。
+     *
+     * @return 数据文件
+     */
+    private static
+    File writeDataFile(File dataDir, String rows) throws IOException {
+        if(!dataDir.mkdirs()) {
+            throw new IOException("Can't create directory: " + dataDir);
+        }
+        File dataFile = new File(dataDir, "part-0");
+        Files.write(dataFile.toPath(), rows.getBytes(StandardCharsets.UTF_8));
+        return dataFile;
+    }
+
+    private
+    File scenarioDir(String name) throws IOException {
+        File dir = new File(workDir, name);
+        if(dir.exists()) {
+            delete(dir.toPath());
+        }
+        return dir;
+    }
+
+    private
+    void check(String name, boolean ok, String detail) {
+        System.out.println(name + ": " + detail + (ok ? " OK" : " FAIL"));
+        if(!ok) {
+            ++failures;
+        }
+    }
+
+    private static
+    void delete(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.team.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 字节实用程序，直接在 UTF-8 字节上完成与 String 语义一致的比较。
+ */
+public class ByteUtil {
+
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * 将 ${b} 复制到 long 的每个字节，作为 {@link #findBytes} 的模式。
+     */
+    public static
+    long broadcast(byte b) {
+        return 0x0101010101010101L * (b & 0xFF);
+    }
+
+    /**
+     * SWAR（一个寄存器内的 SIMD）：找出 ${word} 中与 ${pattern} 对应字节相等的所有字节，
+     * 返回的掩码中这些字节的最高位为 1，其余位全为 0。
+     *
+     * 与常见的 (x - 0x01..01) & ~x & 0x80..80 不同，这里没有借位，不会在真正的匹配之后产生误报，
+     * 因此可以用 mask &= mask - 1 依次取出每一个匹配。
+     * 以小端序读入的字长，第一个匹配的字节下标为 Long.numberOfTrailingZeros(mask) >>> 3。
+     */
+    public static
+    long findBytes(long word, long pattern) {
+        long x = word ^ pattern;
+        long y = (x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+        return ~(y | x | LOW_SEVEN_BITS);
+    }
+
+    /**
+     * 比较 ${buffer}[from, to) 与 ${key}，结果的符号与 String.compareTo 一致。
+     *
+     * UTF-8 字节序与码点序一致，只有增补字符（4 字节序列）与 U+E000..U+FFFF 之间的顺序
+     * 和 String 的 UTF-16 序相反，这种情况单独处理。
+     */
+    public static
+    int compare(ByteBuffer buffer, int from, int to, byte[] key) {
+        int len = to - from;
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int a = buffer.get(from + i) & 0xFF;
+            int b = key[i] & 0xFF;
+            if(a != b) {
+                return compareDiffByte(a, b);
+            }
+        }
+        return len - key.length;
+    }
+
+    /**
+     * ${buffer}[from, to) 是否与 ${key} 相等。
+     */
+    public static
+    boolean equals(ByteBuffer buffer, int from, int to, byte[] key) {
+        if(to - from != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if(buffer.get(from + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 将 ${buffer}[from, to) 解码为字符串。
+     */
+    public static
+    String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 比较第一个不同的字节。两个序列此前完全相同，因此不同的字节要么同为续字节（同一长度的字符，
+     * 字节序即码点序），要么同为首字节。
+     */
+    private static
+    int compareDiffByte(int a, int b) {
+        if(a < 0x80 && b < 0x80) {
+            return a - b;
+        }
+        /* 增补字符在 UTF-16 中以代理对 D800..DFFF 开头，排在 U+E000..U+FFFF（首字节 EE/EF）之前 */
+        if(a >= 0xF0 && (b == 0xEE || b == 0xEF)) {
+            return -1;
+        }
+        if(b >= 0xF0 && (a == 0xEE || a == 0xEF)) {
+            return 1;
+        }
+        return a - b;
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.team.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程实用程序。
+ */
+public class ThreadUtil {
+
+    /**
+     * 创建守护线程的工厂，线程依次命名为 ${prefix}1、${prefix}2……，不阻止 JVM 退出。
+     */
+    public static
+    ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}